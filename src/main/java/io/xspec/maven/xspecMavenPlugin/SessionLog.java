@@ -0,0 +1,144 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * The log of an engine. Entries logged by a thread that runs a session go to the log
+ * of this session ; others go to the log engine has been built with.
+ * @author cmarchand
+ */
+class SessionLog implements Log {
+  private final Log defaultLog;
+  private final ThreadLocal<Log> sessionLog = new ThreadLocal<>();
+
+  SessionLog(Log defaultLog) {
+    super();
+    this.defaultLog = defaultLog;
+  }
+
+  /**
+   * Binds a session log to current thread
+   * @param log The session log, or {@code null} to use the default log
+   * @return The log previously bound to current thread, or {@code null}
+   */
+  Log bind(Log log) {
+    Log previous = sessionLog.get();
+    if (log == null) {
+      sessionLog.remove();
+    } else {
+      sessionLog.set(log);
+    }
+    return previous;
+  }
+
+  private Log get() {
+    Log ret = sessionLog.get();
+    return ret != null ? ret : defaultLog;
+  }
+
+  @Override
+  public boolean isDebugEnabled() {
+    return get().isDebugEnabled();
+  }
+
+  @Override
+  public void debug(CharSequence content) {
+    get().debug(content);
+  }
+
+  @Override
+  public void debug(CharSequence content, Throwable error) {
+    get().debug(content, error);
+  }
+
+  @Override
+  public void debug(Throwable error) {
+    get().debug(error);
+  }
+
+  @Override
+  public boolean isInfoEnabled() {
+    return get().isInfoEnabled();
+  }
+
+  @Override
+  public void info(CharSequence content) {
+    get().info(content);
+  }
+
+  @Override
+  public void info(CharSequence content, Throwable error) {
+    get().info(content, error);
+  }
+
+  @Override
+  public void info(Throwable error) {
+    get().info(error);
+  }
+
+  @Override
+  public boolean isWarnEnabled() {
+    return get().isWarnEnabled();
+  }
+
+  @Override
+  public void warn(CharSequence content) {
+    get().warn(content);
+  }
+
+  @Override
+  public void warn(CharSequence content, Throwable error) {
+    get().warn(content, error);
+  }
+
+  @Override
+  public void warn(Throwable error) {
+    get().warn(error);
+  }
+
+  @Override
+  public boolean isErrorEnabled() {
+    return get().isErrorEnabled();
+  }
+
+  @Override
+  public void error(CharSequence content) {
+    get().error(content);
+  }
+
+  @Override
+  public void error(CharSequence content, Throwable error) {
+    get().error(content, error);
+  }
+
+  @Override
+  public void error(Throwable error) {
+    get().error(error);
+  }
+}
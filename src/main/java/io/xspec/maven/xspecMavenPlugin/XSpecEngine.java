@@ -0,0 +1,210 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin;
+
+import io.xspec.maven.xspecMavenPlugin.resources.SchematronImplResources;
+import io.xspec.maven.xspecMavenPlugin.resources.XSpecImplResources;
+import io.xspec.maven.xspecMavenPlugin.resources.XSpecPluginResources;
+import io.xspec.maven.xspecMavenPlugin.utils.LogProvider;
+import io.xspec.maven.xspecMavenPlugin.utils.RunnerOptions;
+import io.xspec.maven.xspecMavenPlugin.utils.XSpecPluginException;
+import io.xspec.maven.xspecMavenPlugin.utils.XmlStuff;
+import org.apache.maven.plugin.logging.Log;
+import top.marchand.maven.saxon.utils.SaxonOptions;
+
+import java.io.File;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Long-lived part of XSpec execution : Saxon processor, resource resolver, and compiled
+ * XSpec and Schematron implementations. An engine is built once, and may run many
+ * sessions, sequentially or concurrently ; each session is a {@link XSpecRunner} that
+ * holds its own options, results and reports.
+ * <p>
+ * Options used to build the engine are {@code catalogFile}, {@code keepGeneratedCatalog},
+ * {@code folding}, {@code sefCacheDir}, {@code eagerCompilation} and {@code daemon} ; a
+ * session can not change them.
+ * </p>
+ * <p>
+ * Engine messages logged while a session runs go to the log of this session.
+ * </p>
+ *
+ * @author cmarchand
+ */
+public class XSpecEngine implements LogProvider {
+  private final SessionLog log;
+  private final File baseDirectory;
+  private final XSpecImplResources xspecResources;
+  private final SchematronImplResources schResources;
+  private final XSpecPluginResources pluginResources;
+  private final SaxonOptions saxonOptions;
+  private final Properties executionProperties;
+  private final RunnerOptions options;
+  private final XmlStuff xmlStuff;
+
+  /**
+   * Builds the engine : Saxon processor is configured, catalog is generated, and XSpec
+   * implementation is compiled.
+   * @param log The log to use, when no session runs
+   * @param baseDirectory Project directory, in a maven use case. Sessions may have
+   * their own.
+   * @param xspecResources XSpec implementation resources
+   * @param schResources Schematron implementation resource
+   * @param pluginResources Plugin-specific implementation resources
+   * @param saxonOptions The saxonOptions to use
+   * @param executionProperties The properties provided by maven execution
+   * @param options Options used to build engine
+   * @throws XSpecPluginException If a error occurs during initialization
+   */
+  public XSpecEngine(
+      final Log log,
+      final File baseDirectory,
+      final XSpecImplResources xspecResources,
+      final SchematronImplResources schResources,
+      final XSpecPluginResources pluginResources,
+      final SaxonOptions saxonOptions,
+      final Properties executionProperties,
+      final RunnerOptions options) throws XSpecPluginException {
+    super();
+    this.log = new SessionLog(log);
+    this.baseDirectory = baseDirectory;
+    this.xspecResources = xspecResources;
+    this.schResources = schResources;
+    this.pluginResources = pluginResources;
+    this.saxonOptions = saxonOptions;
+    this.executionProperties = new Properties();
+    this.executionProperties.putAll(executionProperties);
+    this.options = options;
+    getLog().debug("Creating XmlStuff...");
+    try {
+      xmlStuff = new XmlStuff(
+          saxonOptions,
+          getLog(),
+          xspecResources,
+          pluginResources,
+          schResources,
+          baseDirectory,
+          options,
+          this.executionProperties
+      );
+    } catch (XSpecPluginException ex) {
+      getLog().error("Exception while creating XmlStuff", ex);
+      throw ex;
+    }
+  }
+
+  /**
+   * Creates a new session, that runs XSpecs with this engine. Session is initialized, and
+   * ready to {@link XSpecRunner#execute() }.
+   * @param log The log session writes to
+   * @param options Session options
+   * @return The new session
+   * @throws IllegalArgumentException If options are not compatible with engine
+   * @see #isCompatible(RunnerOptions)
+   */
+  public XSpecRunner newSession(final Log log, final RunnerOptions options) throws IllegalArgumentException {
+    return newSession(log, baseDirectory, options);
+  }
+
+  /**
+   * Creates a new session for another project, that runs XSpecs with this engine.
+   * @param log The log session writes to
+   * @param baseDirectory Project directory of session
+   * @param options Session options
+   * @return The new session
+   * @throws IllegalArgumentException If options are not compatible with engine
+   * @see #newSession(Log, RunnerOptions)
+   */
+  public XSpecRunner newSession(final Log log, final File baseDirectory, final RunnerOptions options)
+      throws IllegalArgumentException {
+    XSpecRunner runner = new XSpecRunner(log, baseDirectory);
+    runner.setResources(xspecResources, schResources, pluginResources);
+    runner.setEnvironment(executionProperties, options);
+    return runner.init(this);
+  }
+
+  /**
+   * Checks if a session with these options may run with this engine.
+   * @param options Session options
+   * @return {@code true} if options that engine depends on are the same
+   */
+  public boolean isCompatible(final RunnerOptions options) {
+    return Objects.equals(this.options.catalogFile, options.catalogFile)
+        && isTrue(this.options.keepGeneratedCatalog) == isTrue(options.keepGeneratedCatalog)
+        && isTrue(this.options.folding) == isTrue(options.folding)
+        && Objects.equals(this.options.sefCacheDir, options.sefCacheDir)
+        && isTrue(this.options.eagerCompilation) == isTrue(options.eagerCompilation)
+        && isTrue(this.options.daemon) == isTrue(options.daemon);
+  }
+
+  private static boolean isTrue(Boolean value) {
+    return Boolean.TRUE.equals(value);
+  }
+
+  /**
+   * Sends engine messages logged by current thread to a session log
+   * @param sessionLog The session log, or {@code null} to use the engine log
+   * @return The log previously bound to current thread, to restore it
+   */
+  Log bindLog(final Log sessionLog) {
+    return log.bind(sessionLog);
+  }
+
+  @Override
+  public Log getLog() {
+    return log;
+  }
+
+  public File getBaseDirectory() {
+    return baseDirectory;
+  }
+
+  public XSpecImplResources getXSpecResources() {
+    return xspecResources;
+  }
+
+  public SchematronImplResources getSchematronResources() {
+    return schResources;
+  }
+
+  public XSpecPluginResources getPluginResources() {
+    return pluginResources;
+  }
+
+  public SaxonOptions getSaxonOptions() {
+    return saxonOptions;
+  }
+
+  public Properties getExecutionProperties() {
+    return executionProperties;
+  }
+
+  public XmlStuff getXmlStuff() {
+    return xmlStuff;
+  }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin;
+
+import io.xspec.maven.xspecMavenPlugin.fork.OptionsCodec;
+import io.xspec.maven.xspecMavenPlugin.resources.SchematronImplResources;
+import io.xspec.maven.xspecMavenPlugin.resources.XSpecImplResources;
+import io.xspec.maven.xspecMavenPlugin.resources.XSpecPluginResources;
+import io.xspec.maven.xspecMavenPlugin.utils.RunnerOptions;
+import io.xspec.maven.xspecMavenPlugin.utils.XSpecPluginException;
+import org.apache.maven.plugin.logging.Log;
+import top.marchand.maven.saxon.utils.SaxonOptions;
+
+import java.io.File;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A cache of engines, shared by all executions of a build : executions and modules that
+ * use the same Saxon options, implementation resources, catalog and engine options run
+ * with the same engine, that is built once. Sessions have their own log and project
+ * directory, see {@link XSpecEngine}.
+ * <p>
+ * Catalog is part of the key, as the resource resolver is bound to the Saxon
+ * configuration ; compiled stylesheets of a processor can not be used with another one.
+ * </p>
+ * <p>
+ * When several executions require the same engine concurrently, it is built once, other
+ * executions wait for it.
+ * </p>
+ * @author cmarchand
+ */
+public class XSpecEngineCache {
+  private final ConcurrentHashMap<String, CompletableFuture<XSpecEngine>> entries;
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger misses = new AtomicInteger();
+
+  public XSpecEngineCache() {
+    super();
+    this.entries = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns an engine that runs sessions with these options. It is built if there is no
+   * such engine in cache.
+   * @param log The log to use when no session runs, if engine is built
+   * @param baseDirectory Directory engine resolves resources from, if engine is built.
+   * It should not depend on a module.
+   * @param xspecResources XSpec implementation resources
+   * @param schResources Schematron implementation resource
+   * @param pluginResources Plugin-specific implementation resources
+   * @param saxonOptions The saxonOptions to use
+   * @param executionProperties The properties provided by maven execution
+   * @param options Session options
+   * @return The engine
+   * @throws XSpecPluginException If engine can not be built
+   */
+  public XSpecEngine getEngine(
+      final Log log,
+      final File baseDirectory,
+      final XSpecImplResources xspecResources,
+      final SchematronImplResources schResources,
+      final XSpecPluginResources pluginResources,
+      final SaxonOptions saxonOptions,
+      final Properties executionProperties,
+      final RunnerOptions options) throws XSpecPluginException {
+    String key = getKey(xspecResources, schResources, pluginResources, saxonOptions, options);
+    CompletableFuture<XSpecEngine> entry = new CompletableFuture<>();
+    CompletableFuture<XSpecEngine> existing = entries.putIfAbsent(key, entry);
+    if (existing != null) {
+      hits.incrementAndGet();
+      log.debug("Reusing XSpec engine " + key);
+      return waitFor(existing);
+    }
+    misses.incrementAndGet();
+    try {
+      XSpecEngine ret = new XSpecEngine(
+          log,
+          baseDirectory,
+          xspecResources,
+          schResources,
+          pluginResources,
+          saxonOptions,
+          executionProperties,
+          options);
+      entry.complete(ret);
+      return ret;
+    } catch (XSpecPluginException | RuntimeException ex) {
+      // failure is not kept, next execution will try again
+      entries.remove(key, entry);
+      entry.completeExceptionally(ex);
+      throw ex;
+    }
+  }
+
+  /**
+   * Identifies what an engine depends on : Saxon options, implementation resources,
+   * user catalog, and options engine is built with.
+   * @see XSpecEngine#isCompatible(RunnerOptions)
+   */
+  static String getKey(
+      final XSpecImplResources xspecResources,
+      final SchematronImplResources schResources,
+      final XSpecPluginResources pluginResources,
+      final SaxonOptions saxonOptions,
+      final RunnerOptions options) {
+    Properties props = new Properties();
+    OptionsCodec.encode(saxonOptions, props, "saxon.");
+    OptionsCodec.encode(xspecResources, props, "xspecResources.");
+    OptionsCodec.encode(schResources, props, "schResources.");
+    OptionsCodec.encode(pluginResources, props, "pluginResources.");
+    if (options.catalogFile != null) {
+      // placeholders are resolved with execution properties, that are the same in a build
+      props.setProperty("catalog", options.catalogFile);
+    }
+    props.setProperty("keepGeneratedCatalog", String.valueOf(Boolean.TRUE.equals(options.keepGeneratedCatalog)));
+    props.setProperty("folding", String.valueOf(Boolean.TRUE.equals(options.folding)));
+    props.setProperty("eagerCompilation", String.valueOf(Boolean.TRUE.equals(options.eagerCompilation)));
+    props.setProperty("daemon", String.valueOf(Boolean.TRUE.equals(options.daemon)));
+    if (options.sefCacheDir != null) {
+      props.setProperty("sefCacheDir", options.sefCacheDir.getAbsolutePath());
+    }
+    return new TreeMap<>(props).toString();
+  }
+
+  private XSpecEngine waitFor(CompletableFuture<XSpecEngine> entry) throws XSpecPluginException {
+    try {
+      return entry.get();
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof XSpecPluginException) {
+        throw (XSpecPluginException) ex.getCause();
+      }
+      throw new XSpecPluginException(ex.getCause());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new XSpecPluginException("interrupted while waiting for XSpec engine", ex);
+    }
+  }
+
+  /**
+   * Returns the number of executions that reused an engine
+   * @return The number of cache hits
+   */
+  public int getHits() {
+    return hits.get();
+  }
+
+  /**
+   * Returns the number of engines that have been built
+   * @return The number of cache misses
+   */
+  public int getMisses() {
+    return misses.get();
+  }
+}
@@ -26,28 +26,23 @@
  */
 package io.xspec.maven.xspecMavenPlugin;
 
-import com.jenitennison.xslt.tests.XSLTCoverageTraceListener;
+import io.xspec.maven.xspecMavenPlugin.fork.DaemonClient;
+import io.xspec.maven.xspecMavenPlugin.fork.ForkConfiguration;
+import io.xspec.maven.xspecMavenPlugin.fork.ForkPool;
 import io.xspec.maven.xspecMavenPlugin.resolver.XSpecResourceResolver;
 import io.xspec.maven.xspecMavenPlugin.resources.SchematronImplResources;
 import io.xspec.maven.xspecMavenPlugin.resources.XSpecImplResources;
 import io.xspec.maven.xspecMavenPlugin.resources.XSpecPluginResources;
 import io.xspec.maven.xspecMavenPlugin.utils.*;
-import net.sf.saxon.lib.TraceListener;
 import net.sf.saxon.s9api.*;
 import net.sf.saxon.trans.UncheckedXPathException;
 import org.apache.commons.io.output.NullOutputStream;
 import org.apache.maven.plugin.logging.Log;
-import org.xml.sax.EntityResolver;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
 import top.marchand.maven.saxon.utils.SaxonOptions;
 
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.ErrorListener;
 import javax.xml.transform.Source;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamSource;
 import java.io.*;
 import java.net.MalformedURLException;
@@ -56,7 +51,16 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -84,10 +88,21 @@ public class XSpecRunner implements LogProvider {
   XmlStuff xmlStuff;
   private final Properties executionProperties;
   private RunnerOptions options;
+  private SaxonOptions saxonOptions;
+  private XSpecEngine engine;
 
   // internal state management
   private boolean initDone;
   private List<ProcessedFile> processedFiles;
+  private RunHistory runHistory;
+  /** Number of XSpecs whose results have been reused in incremental mode */
+  private int upToDateCount;
+  /** Identifies plugin configuration, for module up to date check */
+  private String moduleConfiguration;
+  private final AtomicInteger failedXSpecs = new AtomicInteger();
+  private final Set<File> finishedXSpecs = ConcurrentHashMap.newKeySet();
+  // in incremental mode, the files each XSpec depends on
+  private final Map<Path, List<String>> xspecDependencies = new ConcurrentHashMap<>();
   private XSpecCompiler xspecCompiler;
 
   public static final QName INITIAL_TEMPLATE_NAME = new QName(XSPEC_NS, "main");
@@ -102,7 +117,8 @@ public class XSpecRunner implements LogProvider {
   }
 
   /**
-   * Initalizes the runner. This method must be call before {@link #execute() }
+   * Initalizes the runner, with its own engine. This method must be call before
+   * {@link #execute() }, unless runner has been initialized with a shared engine.
    * @param saxonOptions The saxonOptions to use
    * @return This instance, to chain calls
    * @throws IllegalStateException If {@link #setResources(XSpecImplResources, SchematronImplResources, XSpecPluginResources) }
@@ -119,60 +135,562 @@ public class XSpecRunner implements LogProvider {
           "setResources(XSpecImplResources,SchematronImplResources,XSpecPluginResources) " +
               "must be call before init()");
     }
-    getLog().debug("Creating XmlStuff...");
     if (options == null) {
       getLog().debug("options was null, creating a new one.");
       options = new RunnerOptions(baseDirectory);
     }
-    try {
-      xmlStuff = new XmlStuff(
-          saxonOptions,
-          getLog(),
-          xspecResources,
-          pluginResources,
-          schResources,
-          baseDirectory,
-          options,
-          executionProperties
-      );
-    } catch (XSpecPluginException ex) {
-      getLog().error("Exception while creating XmlStuff", ex);
-      throw ex;
+    attach(new XSpecEngine(
+        getLog(),
+        baseDirectory,
+        xspecResources,
+        schResources,
+        pluginResources,
+        saxonOptions,
+        executionProperties,
+        options));
+    return this;
+  }
+
+  /**
+   * Initializes the runner with an already built engine, that may be shared with other
+   * runners. This method, or {@link #init(SaxonOptions) }, must be call before
+   * {@link #execute() }.
+   * @param engine The engine
+   * @return This instance, to chain calls
+   * @throws IllegalStateException If runner has already been initialized
+   * @throws IllegalArgumentException If runner options are not compatible with engine
+   * @see XSpecEngine#isCompatible(RunnerOptions)
+   */
+  public XSpecRunner init(XSpecEngine engine) throws IllegalStateException, IllegalArgumentException {
+    if (initDone) {
+      throw new IllegalStateException("runner has already been initialized");
+    }
+    if (options == null) {
+      options = new RunnerOptions(baseDirectory);
+    }
+    if (!engine.isCompatible(options)) {
+      throw new IllegalArgumentException(
+          "catalogFile, folding and sefCacheDir options must be the ones used to build engine");
     }
+    attach(engine);
+    return this;
+  }
+
+  /**
+   * Binds this runner to its engine. Compiler and caches of compiled XSpecs depend on
+   * runner options, so they belong to the runner.
+   */
+  private void attach(final XSpecEngine engine) {
+    this.engine = engine;
+    this.saxonOptions = engine.getSaxonOptions();
+    xmlStuff = engine.getXmlStuff();
     xspecCompiler = new XSpecCompiler(xmlStuff, options, log);
     initDone = true;
-    return this;
+  }
+
+  /**
+   * Returns the engine this runner runs with. It may be used to create other sessions,
+   * that share compiled XSpec implementation.
+   * @return The engine, or {@code null} if runner has not been initialized
+   */
+  public XSpecEngine getEngine() {
+    return engine;
+  }
+
+  /**
+   * In incremental mode, checks if nothing changed in the module since its last successful
+   * run : files in test directory, files XSpecs depend on, and configuration. This method
+   * may be call before {@link #init(SaxonOptions) }, to avoid initialization when reports
+   * of the last run can be kept as is. Configuration is recorded by {@link #execute() } if
+   * all XSpecs succeed.
+   * @param configuration Identifies plugin configuration, Saxon options and versions
+   * @return {@code true} if module is up to date
+   */
+  public boolean isModuleUpToDate(final String configuration) {
+    moduleConfiguration = configuration;
+    if (options == null || !Boolean.TRUE.equals(options.incremental) || Boolean.TRUE.equals(options.forceRerun)
+        || Sharding.isSharded(options)) {
+      return false;
+    }
+    if (!new File(options.reportDir, IndexGenerator.getIndexFileName(options)).isFile()) {
+      return false;
+    }
+    return RunHistory.load(options).isModuleUpToDate(configuration);
   }
 
   public void execute() throws XSpecPluginException {
+    // messages of a shared engine go to this runner's log
+    final Log previousLog = engine.bindLog(log);
+    try {
+      executeXSpecs();
+    } finally {
+      engine.bindLog(previousLog);
+    }
+  }
+
+  private void executeXSpecs() throws XSpecPluginException {
     getLog().debug("Looking for XSpecs in: " + options.testDir);
-    final List<File> xspecs = findAllXSpecs();
-    getLog().info("Found " + xspecs.size() + " XSpecs...");
-    boolean failed = false;
+    final List<File> allXSpecs = findAllXSpecs();
+    getLog().info("Found " + allXSpecs.size() + " XSpecs...");
+    runHistory = RunHistory.load(options);
+    // recorded again at the end, if all XSpecs succeed
+    runHistory.forgetModuleRun();
+    runHistory.setFingerprint(
+        xmlStuff.getEnvironmentFingerprint() + ";coverage=" + Boolean.TRUE.equals(options.coverage)
+        + ";folding=" + Boolean.TRUE.equals(options.folding));
+    if (Sharding.isBalancedOnDurations(options)) {
+      final int known = runHistory.countKnownDurations(allXSpecs);
+      if (known < allXSpecs.size()) {
+        getLog().warn("No run history for " + (allXSpecs.size() - known) + " of " + allXSpecs.size()
+            + " XSpecs in " + options.reportDir.getAbsolutePath()
+            + ", shards are balanced on estimations from file sizes");
+      }
+    }
+    final List<File> xspecs = Sharding.select(allXSpecs, options, runHistory);
+    if (Sharding.isSharded(options)) {
+      getLog().info("Running " + xspecs.size() + " XSpecs in shard " + options.shardIndex + " (" + options.shardCount + " shards)");
+    }
     initProcessedFiles(xspecs.size());
-    for (final File xspec : xspecs) {
-      try {
-        if (!processXSpec(xspec)) {
-          failed = true;
-        }
-      } catch (IOException | TransformerException | SaxonApiException | UncheckedXPathException ex) {
-        failed = true;
-        getLog().error("while processing " + xspec.getAbsolutePath(), ex);
+    failedXSpecs.set(0);
+    finishedXSpecs.clear();
+    xspecDependencies.clear();
+    upToDateCount = 0;
+    final boolean incremental = Boolean.TRUE.equals(options.incremental);
+    final List<File> changedXSpecs = incremental ? restoreUpToDateResults(xspecs) : xspecs;
+    final int threadCount = getThreadCount(changedXSpecs.size());
+    boolean failed;
+    if (Boolean.TRUE.equals(options.daemon) && !changedXSpecs.isEmpty()) {
+      failed = !executeInDaemon(changedXSpecs);
+    } else if (options.forkCount != null && options.forkCount > 0 && !changedXSpecs.isEmpty()) {
+      failed = !executeInForks(runHistory.sortLongestFirst(changedXSpecs));
+    } else if (threadCount > 1) {
+      getLog().info("Running XSpecs on " + threadCount + " threads");
+      // longest first, so the end of the run is made of short XSpecs
+      failed = !executeInParallel(runHistory.sortLongestFirst(changedXSpecs), threadCount);
+    } else {
+      failed = !executeSequentially(changedXSpecs);
+    }
+    if (incremental) {
+      recordRuns(changedXSpecs);
+      recordModuleRun(xspecs, failed);
+    } else {
+      // reports have been overwritten, recorded results do not match them anymore
+      for (final File xspec : xspecs) {
+        runHistory.forgetRun(xspec);
       }
     }
+    addNotRunFiles(xspecs);
+    sortProcessedFiles(xspecs);
+    try {
+      runHistory.save();
+    } catch (IOException ex) {
+      getLog().warn("Unable to save run history to " + RunHistory.getHistoryFile(options).getAbsolutePath(), ex);
+    }
 
     try {
       extractCssResource();
     } catch (IOException ex) {
       throw new XSpecPluginException("while extracting CSS", ex);
     }
+    logCacheStatistics(xspecs.size());
     if (failed) {
       throw new XSpecPluginException("Some XSpec tests failed or were missed!");
     }
   }
 
   /**
-   * Process a XSpec file
+   * Runs all XSpecs one after the other, in the calling thread.
+   * @return {@code true} if all XSpecs succeed
+   */
+  private boolean executeSequentially(final List<File> xspecs) {
+    boolean succeed = true;
+    for (final File xspec : xspecs) {
+      if (isFailureBudgetExhausted()) {
+        break;
+      }
+      if (!runXSpec(xspec)) {
+        succeed = false;
+      }
+    }
+    return succeed;
+  }
+
+  /**
+   * Runs all XSpecs on a pool of {@code threadCount} threads. When failure budget
+   * is exhausted, XSpecs that have not started are cancelled ; running ones are left
+   * to complete, as a transformation can not be safely interrupted.
+   * @return {@code true} if all XSpecs succeed
+   * @throws XSpecPluginException If execution is interrupted
+   */
+  private boolean executeInParallel(final List<File> xspecs, final int threadCount) throws XSpecPluginException {
+    final AtomicInteger threadNumber = new AtomicInteger();
+    final ExecutorService executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+      Thread thread = new Thread(() -> {
+        engine.bindLog(log);
+        runnable.run();
+      }, "xspec-runner-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    boolean succeed = true;
+    try {
+      final List<Future<Boolean>> results = new ArrayList<>(xspecs.size());
+      for (final File xspec : xspecs) {
+        results.add(executor.submit(() -> isFailureBudgetExhausted() || runXSpec(xspec)));
+      }
+      for (int i = 0; i < results.size(); i++) {
+        try {
+          if (!results.get(i).get()) {
+            succeed = false;
+          }
+        } catch (CancellationException ex) {
+          // failure budget exhausted, XSpec has not been run
+        } catch (ExecutionException ex) {
+          succeed = false;
+          getLog().error("while processing " + xspecs.get(i).getAbsolutePath(), ex.getCause());
+        }
+        if (isFailureBudgetExhausted()) {
+          for (int j = i + 1; j < results.size(); j++) {
+            results.get(j).cancel(false);
+          }
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new XSpecPluginException("XSpec execution has been interrupted", ex);
+    } finally {
+      executor.shutdownNow();
+    }
+    return succeed;
+  }
+
+  /**
+   * Runs all XSpecs in forked JVMs. When failure budget is exhausted, workers are
+   * killed, and XSpecs they were running are reported as not run.
+   * @return {@code true} if all XSpecs succeed
+   * @throws XSpecPluginException If workers can not be started
+   */
+  private boolean executeInForks(final List<File> xspecs) throws XSpecPluginException {
+    File forkDir = new File(options.reportDir, "fork");
+    forkDir.mkdirs();
+    File configurationFile = new File(forkDir, "worker-" + options.executionId + ".properties");
+    File argFile = new File(forkDir, "worker-" + options.executionId + ".args");
+    try {
+      createForkConfiguration().store(configurationFile);
+      final ForkPool pool = new ForkPool(getLog(), options, configurationFile, argFile);
+      return pool.run(
+          xspecs,
+          (xspec, pf, succeed, millis) -> {
+            addForkedResult(xspec, pf, succeed, millis);
+            if (!succeed && isFailureBudgetExhausted()) {
+              pool.cancel();
+            }
+          });
+    } catch (IOException ex) {
+      throw new XSpecPluginException("while writing forked worker configuration", ex);
+    } finally {
+      configurationFile.delete();
+      argFile.delete();
+    }
+  }
+
+  /**
+   * Runs all XSpecs in a daemon, that is started if it is not running. If daemon can
+   * not be used, XSpecs it has not run are run in this JVM.
+   * @return {@code true} if all XSpecs succeed
+   * @throws XSpecPluginException If daemon can not be configured
+   */
+  private boolean executeInDaemon(final List<File> xspecs) throws XSpecPluginException {
+    final DaemonClient client = new DaemonClient(getLog(), options, createForkConfiguration());
+    try {
+      return client.run(
+          xspecs,
+          (xspec, pf, succeed, millis) -> {
+            addForkedResult(xspec, pf, succeed, millis);
+            if (!succeed && isFailureBudgetExhausted()) {
+              client.cancel();
+            }
+          });
+    } catch (XSpecPluginException ex) {
+      getLog().warn(ex.getMessage() + ", running XSpecs in Maven JVM");
+      getLog().debug(ex);
+      final List<File> remaining = new ArrayList<>();
+      for (final File xspec : xspecs) {
+        if (!finishedXSpecs.contains(xspec)) {
+          remaining.add(xspec);
+        }
+      }
+      return executeSequentially(remaining) && failedXSpecs.get() == 0;
+    }
+  }
+
+  private ForkConfiguration createForkConfiguration() {
+    return ForkConfiguration.create(
+        baseDirectory,
+        options,
+        saxonOptions,
+        xspecResources,
+        pluginResources,
+        executionProperties,
+        getLog().isDebugEnabled());
+  }
+
+  /**
+   * Adds the result of a XSpec run by a forked worker or a daemon
+   */
+  private void addForkedResult(final File xspec, final ProcessedFile pf, final boolean succeed, final long millis) {
+    if (pf != null) {
+      processedFiles.add(pf);
+      if (pf.getDependencies() != null) {
+        xspecDependencies.put(getPath(xspec), pf.getDependencies());
+      }
+    }
+    finishedXSpecs.add(xspec);
+    runHistory.recordDuration(xspec, millis);
+    if (!succeed) {
+      failedXSpecs.incrementAndGet();
+    }
+  }
+
+  /**
+   * Runs a single XSpec, outside of {@link #execute()}. This is used by forked workers
+   * and daemons, and must not be called concurrently. Results are not kept by runner.
+   * @param xspec The XSpec file to run
+   * @return The processed file, with its results, or {@code null} if XSpec could not be run.
+   */
+  public ProcessedFile processSingleXSpec(final File xspec) {
+    if (processedFiles == null) {
+      initProcessedFiles(1);
+    }
+    final int previousSize = processedFiles.size();
+    runXSpec(xspec);
+    finishedXSpecs.remove(xspec);
+    if (processedFiles.size() == previousSize) {
+      return null;
+    }
+    ProcessedFile ret = processedFiles.remove(processedFiles.size() - 1);
+    ret.setDependencies(xspecDependencies.remove(getPath(xspec)));
+    return ret;
+  }
+
+  /**
+   * In incremental mode, restores results of XSpecs whose dependencies have not changed
+   * since their last successful run. Their reports are the ones of last run.
+   * @return The XSpecs to run
+   */
+  private List<File> restoreUpToDateResults(final List<File> xspecs) {
+    if (Boolean.TRUE.equals(options.forceRerun)) {
+      getLog().info("forceRerun is set, all XSpecs have to be run");
+      return xspecs;
+    }
+    final List<File> ret = new ArrayList<>(xspecs.size());
+    for (final File xspec : xspecs) {
+      final File htmlReport = xspecCompiler.getXSpecHtmlResultPath(options.reportDir, xspec);
+      final ProcessedFile pf = new ProcessedFile(options.testDir, xspec, options.reportDir, htmlReport);
+      if (runHistory.restoreResults(xspec, pf) && restoreReports(xspec, pf)) {
+        if (Boolean.TRUE.equals(options.coverage)) {
+          final File coverageReport = xspecCompiler.getCoverageFinalPath(options.reportDir, xspec);
+          if (coverageReport.isFile()) {
+            pf.setCoverageFile(coverageReport.toPath());
+          }
+        }
+        processedFiles.add(pf);
+        finishedXSpecs.add(xspec);
+      } else {
+        ret.add(xspec);
+      }
+    }
+    upToDateCount = xspecs.size() - ret.size();
+    getLog().info(upToDateCount + " XSpecs are up to date, " + ret.size() + " XSpecs have to be run");
+    return ret;
+  }
+
+  /**
+   * Checks that reports of an up to date XSpec are still in reportDir. XML report is
+   * required ; HTML and surefire reports are generated again from it if they are missing.
+   * @return {@code false} if XSpec has to be run again
+   */
+  private boolean restoreReports(final File xspec, final ProcessedFile pf) {
+    final File xmlReport = xspecCompiler.getXSpecXmlResultPath(options.reportDir, xspec);
+    if (!xmlReport.isFile()) {
+      return false;
+    }
+    final boolean htmlMissing = !pf.getReportFile().toFile().isFile();
+    final File surefireReport = xspecCompiler.getSurefireReportPath(xspec);
+    final boolean surefireMissing = surefireReport == null || !surefireReport.isFile();
+    if (!htmlMissing && !surefireMissing) {
+      return true;
+    }
+    try {
+      final XdmNode xspecResult = xmlStuff.getDocumentBuilder().build(xmlReport);
+      if (htmlMissing) {
+        writeHtmlReport(pf, xspecResult, null);
+      }
+      if (surefireMissing) {
+        writeSurefireReport(xspec, xspecResult, null);
+      }
+      getLog().debug("reports of " + xspec.getAbsolutePath() + " restored from " + xmlReport.getAbsolutePath());
+      return true;
+    } catch (SaxonApiException ex) {
+      getLog().debug("unable to restore reports of " + xspec.getAbsolutePath(), ex);
+      return false;
+    }
+  }
+
+  /**
+   * Logs how many results have been reused, and how caches of compiled XSpecs and
+   * Schematrons performed. When XSpecs are forked, workers caches are not counted.
+   */
+  private void logCacheStatistics(final int xspecCount) {
+    getLog().info("Up to date results reused: " + upToDateCount + "/" + xspecCount);
+    final CompiledXSpecCache xspecCache = xspecCompiler.getCompiledXSpecCache();
+    if (xspecCache != null) {
+      getLog().info("Compiled XSpec cache: " + xspecCache.getHits() + " hits, " + xspecCache.getMisses() + " misses");
+    }
+    final CompiledSchematronCache schematronCache = xspecCompiler.getCompiledSchematronCache();
+    if (schematronCache != null) {
+      getLog().info("Compiled Schematron cache: " + schematronCache.getHits() + " hits, " + schematronCache.getMisses() + " misses");
+    }
+  }
+
+  /**
+   * Records the module fingerprint if all XSpecs of the module succeed, so that next run
+   * may be skipped. Otherwise, next run checks XSpecs one by one.
+   */
+  private void recordModuleRun(final List<File> xspecs, final boolean failed) {
+    if (moduleConfiguration == null || failed || Sharding.isSharded(options) || !runHistory.hasRecordedRuns(xspecs)) {
+      return;
+    }
+    try {
+      runHistory.recordModuleRun(moduleConfiguration);
+    } catch (IOException ex) {
+      getLog().debug("unable to compute module fingerprint", ex);
+    }
+  }
+
+  /**
+   * In incremental mode, records results and dependencies of XSpecs that succeed.
+   * Other XSpecs will be run next time.
+   */
+  private void recordRuns(final List<File> xspecs) {
+    final Map<Path, ProcessedFile> results = new HashMap<>();
+    synchronized (processedFiles) {
+      for (ProcessedFile pf : processedFiles) {
+        results.put(pf.getSourceFile().normalize(), pf);
+      }
+    }
+    for (final File xspec : xspecs) {
+      final ProcessedFile pf = results.get(getPath(xspec));
+      final List<String> dependencies = xspecDependencies.get(getPath(xspec));
+      if (pf != null && dependencies != null && !pf.isNotRun() && pf.getFailed() + pf.getMissed() == 0) {
+        try {
+          runHistory.recordRun(xspec, dependencies, pf);
+          continue;
+        } catch (IOException ex) {
+          getLog().debug("unable to read dependencies of " + xspec.getAbsolutePath(), ex);
+        }
+      }
+      runHistory.forgetRun(xspec);
+    }
+  }
+
+  private static Path getPath(final File xspec) {
+    return xspec.getAbsoluteFile().toPath().normalize();
+  }
+
+  /**
+   * Process a XSpec file, and logs any error.
+   * @param xspec The XSpec file to run
+   * @return {@code true} if XSpec succeed, {@code false} otherwise.
+   */
+  private boolean runXSpec(final File xspec) {
+    final long start = System.nanoTime();
+    boolean succeed = false;
+    try {
+      succeed = processXSpec(xspec);
+      return succeed;
+    } catch (IOException | TransformerException | SaxonApiException | UncheckedXPathException ex) {
+      getLog().error("while processing " + xspec.getAbsolutePath(), ex);
+      return false;
+    } finally {
+      if (!succeed) {
+        failedXSpecs.incrementAndGet();
+      }
+      finishedXSpecs.add(xspec);
+      if (runHistory != null) {
+        runHistory.recordDuration(xspec, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      }
+    }
+  }
+
+  /**
+   * Computes the number of threads to use to run {@code xspecCount} XSpecs.
+   * {@code options.threads} lower than 1 means one thread per available processor.
+   */
+  int getThreadCount(final int xspecCount) {
+    int threads = options.threads == null ? 1 : options.threads;
+    if (threads < 1) {
+      threads = Runtime.getRuntime().availableProcessors();
+    }
+    return Math.max(1, Math.min(threads, xspecCount));
+  }
+
+  /**
+   * Computes the number of failed XSpecs after which no more XSpec is run.
+   * {@code 0} means there is no limit.
+   */
+  int getMaxFailures() {
+    if (Boolean.TRUE.equals(options.failFast)) {
+      return 1;
+    }
+    return options.maxFailures == null ? 0 : Math.max(0, options.maxFailures);
+  }
+
+  /**
+   * Checks if enough XSpecs have failed to stop running the other ones.
+   */
+  private boolean isFailureBudgetExhausted() {
+    final int maxFailures = getMaxFailures();
+    return maxFailures > 0 && failedXSpecs.get() >= maxFailures;
+  }
+
+  /**
+   * Adds a <i>not run</i> processed file for each XSpec that has not been run,
+   * because failure budget has been exhausted.
+   */
+  private void addNotRunFiles(final List<File> xspecs) {
+    int notRun = 0;
+    for (final File xspec : xspecs) {
+      if (!finishedXSpecs.contains(xspec)) {
+        ProcessedFile pf = new ProcessedFile(options.testDir, xspec, options.reportDir, xspecCompiler.getXSpecHtmlResultPath(options.reportDir, xspec));
+        pf.setNotRun(true);
+        processedFiles.add(pf);
+        notRun++;
+      }
+    }
+    if (notRun > 0) {
+      getLog().warn(failedXSpecs.get() + " XSpec(s) failed, " + notRun + " XSpec(s) have not been run");
+    }
+  }
+
+  /**
+   * Sorts processed files in the order XSpecs have been found, so index
+   * does not depend on the order XSpecs have completed.
+   */
+  private void sortProcessedFiles(final List<File> xspecs) {
+    final Map<Path, Integer> order = new HashMap<>();
+    for (int i = 0; i < xspecs.size(); i++) {
+      order.put(xspecs.get(i).getAbsoluteFile().toPath().normalize(), i);
+    }
+    synchronized (processedFiles) {
+      processedFiles.sort(Comparator.comparing(
+          (ProcessedFile pf) -> order.getOrDefault(pf.getSourceFile().normalize(), Integer.MAX_VALUE)));
+    }
+  }
+
+  /**
+   * Process a XSpec file. XSpec is parsed only once, its tree is used to detect its
+   * type, to count its tests, as compiler input, and as source of the compiled XSpec.
    * @param xspec
    * @return {@code true} if XSpec succeed, {@code false} otherwise.
    * @throws SaxonApiException
@@ -182,6 +700,14 @@ public class XSpecRunner implements LogProvider {
   final boolean processXSpec(final File xspec) throws SaxonApiException, TransformerException, IOException {
     getLog().info("Processing XSpec: " + xspec.getAbsolutePath());
     XdmNode xspecDocument = xmlStuff.getDocumentBuilder().build(xspec);
+    if (Boolean.TRUE.equals(options.incremental)) {
+      try {
+        xspecDependencies.put(getPath(xspec), xspecCompiler.findDependencies(xspecDocument));
+      } catch (SaxonApiException ex) {
+        // XSpec will be run next time
+        getLog().warn("Unable to compute dependencies of " + xspec.getAbsolutePath() + ": " + ex.getMessage());
+      }
+    }
     XSpecType type = xmlStuff.getXSpecType(xspecDocument);
     getLog().debug(xspec.getName() + " is a " + type.name() + " XSpec file");
     switch (type) {
@@ -198,8 +724,12 @@ public class XSpecRunner implements LogProvider {
 
   private boolean processSchematronXSpec(XdmNode xspecDocument) throws SaxonApiException, TransformerException, IOException {
     XdmNode compiledSchXSpec = xspecCompiler.prepareSchematronDocument(xspecDocument);
-    // it will have a problem in report with filename.
-    return processXsltXSpec(compiledSchXSpec);
+    try {
+      // it will have a problem in report with filename.
+      return processXsltXSpec(compiledSchXSpec, xspecDocument);
+    } finally {
+      xspecCompiler.releaseSchematronDocument(compiledSchXSpec);
+    }
   }
 
   /**
@@ -210,7 +740,7 @@ public class XSpecRunner implements LogProvider {
   private boolean processXQueryXSpec(XdmNode xspec) throws IOException {
     File sourceFile = new File(xspec.getBaseURI());
     /* compile the test stylesheet */
-    final CompiledXSpec compiledXSpec = xspecCompiler.compileXSpecForXQuery(sourceFile);
+    final CompiledXSpec compiledXSpec = xspecCompiler.compileXSpecForXQuery(xspec);
     if (compiledXSpec == null) {
       getLog().error("unable to compile " + sourceFile.getAbsolutePath());
       return false;
@@ -218,79 +748,31 @@ public class XSpecRunner implements LogProvider {
       getLog().debug("XQuery compiled XSpec is at " + compiledXSpec.getCompiledStylesheet().getAbsolutePath());
       /* execute the test stylesheet */
       final XSpecResultsHandler resultsHandler = new XSpecResultsHandler();
-      boolean processedFileAdded = false;
+      ProcessedFile pf = null;
       try {
-        final XQueryExecutable xeXSpec = xmlStuff.getXqueryCompiler().compile(Files.newInputStream(compiledXSpec.getCompiledStylesheet().toPath()));
+        final XQueryExecutable xeXSpec = xspecCompiler.compileXQuery(xspec, compiledXSpec);
         final XQueryEvaluator xtXSpec = xeXSpec.load();
 
         getLog().info("Executing XQuery XSpec: " + compiledXSpec.getCompiledStylesheet().getName());
 
-        //setup xml report output
         final File xspecXmlResult = xspecCompiler.getXSpecXmlResultPath(options.reportDir, sourceFile);
-        final Serializer xmlSerializer = xmlStuff.getProcessor().newSerializer();
-        xmlSerializer.setOutputProperty(Serializer.Property.METHOD, "xml");
-        xmlSerializer.setOutputProperty(Serializer.Property.INDENT, "yes");
-        xmlSerializer.setOutputFile(xspecXmlResult);
-
-        //setup html report output
         final File xspecHtmlResult = xspecCompiler.getXSpecHtmlResultPath(options.reportDir, sourceFile);
-        final Serializer htmlSerializer = xmlStuff.getProcessor().newSerializer();
-        htmlSerializer.setOutputProperty(Serializer.Property.METHOD, "html");
-        htmlSerializer.setOutputProperty(Serializer.Property.INDENT, "yes");
-        htmlSerializer.setOutputFile(xspecHtmlResult);
-        XsltTransformer reporter = xmlStuff.getReporter().load();
-        reporter.setBaseOutputURI(xspecHtmlResult.toURI().toString());
-        reporter.setDestination(htmlSerializer);
-
-
-        // setup surefire report output
-        Destination xtSurefire = null;
-        if (xmlStuff.getXeSurefire() != null) {
-          XsltTransformer xt = xmlStuff.getXeSurefire().load();
-          try {
-            xt.setParameter(new QName("baseDir"), new XdmAtomicValue(options.testDir.toURI().toURL().toExternalForm()));
-            xt.setParameter(new QName("outputDir"), new XdmAtomicValue(options.surefireReportDir.toURI().toURL().toExternalForm()));
-            xt.setParameter(new QName("xspecUri"), new XdmAtomicValue(sourceFile.toURI().toURL().toExternalForm()));
-            xt.setDestination(xmlStuff.newSerializer(NullOutputStream.INSTANCE));
-            xtSurefire = xt;
-          } catch (MalformedURLException ex) {
-            getLog().warn("Unable to generate surefire report", ex);
-          }
-        } else {
-          xtSurefire = xmlStuff.newSerializer(NullOutputStream.INSTANCE);
-        }
-        ProcessedFile pf = new ProcessedFile(options.testDir, sourceFile, options.reportDir, xspecHtmlResult);
+        pf = new ProcessedFile(options.testDir, sourceFile, options.reportDir, xspecHtmlResult);
         processedFiles.add(pf);
-        processedFileAdded = true;
-        String relativeCssPath =
-            (!pf.getRelativeCssPath().isEmpty() ? pf.getRelativeCssPath() + "/" : "") + XmlStuff.RESOURCES_TEST_REPORT_CSS;
-        reporter.setParameter(XmlStuff.QN_REPORT_CSS, new XdmAtomicValue(relativeCssPath));
-        //execute
 
-        final Destination destination =
-            new TeeDestination(
-                new TeeDestination(
-                    new SAXDestination(resultsHandler),
-                    new TeeDestination(
-                        xmlSerializer,
-                        xtSurefire)
-                ),
-                reporter);
-        Source xspecSource = new StreamSource(sourceFile);
-        xtXSpec.setSource(xspecSource);
+        //execute
+        final XdmDestination xspecResult = XmlStuff.newXdmDestination(xspecXmlResult.toURI());
+        xtXSpec.setContextItem(xspec);
         xtXSpec.setResourceResolver(xmlStuff.getResourceResolver());
-        XdmValue result = xtXSpec.evaluate();
-        if (result == null) {
-          getLog().debug("processXQueryXSpec result is null");
-        } else {
-          getLog().debug("processXQueryXSpec result : " + result.toString());
-          xmlStuff.getProcessor().writeXdmValue(result, destination);
-        }
+        // XML report is streamed while query runs ; HTML and surefire reporters need the tree
+        xtXSpec.run(newResultDestination(xspecResult, xspecXmlResult));
+        getLog().debug("XQuery XSpec run");
+        writeReports(sourceFile, pf, XmlStuff.getXdmNode(xspecResult), resultsHandler, null);
       } catch (final SaxonApiException te) {
         getLog().error(te.getMessage());
         getLog().debug(te);
-        if (!processedFileAdded) {
-          ProcessedFile pf = new ProcessedFile(options.testDir, sourceFile, options.reportDir, xspecCompiler.getXSpecHtmlResultPath(options.reportDir, sourceFile));
+        if (pf == null) {
+          pf = new ProcessedFile(options.testDir, sourceFile, options.reportDir, xspecCompiler.getXSpecHtmlResultPath(options.reportDir, sourceFile));
           processedFiles.add(pf);
         }
       }
@@ -306,8 +788,8 @@ public class XSpecRunner implements LogProvider {
           resultsHandler.getFailed(),
           missed,
           compiledXSpec.getTests());
-      if (!processedFiles.isEmpty()) {
-        processedFiles.get(processedFiles.size() - 1).setResults(
+      if (pf != null) {
+        pf.setResults(
             resultsHandler.getPassed(),
             resultsHandler.getPending(),
             resultsHandler.getFailed(),
@@ -330,10 +812,21 @@ public class XSpecRunner implements LogProvider {
    * @return true if all tests in XSpec pass, false otherwise
    */
   final boolean processXsltXSpec(XdmNode xspec) throws SaxonApiException, FileNotFoundException {
+    return processXsltXSpec(xspec, xspec);
+  }
+
+  /**
+   * Process an XSpec on XSLT Test
+   * @param xspec The XSpec to compile and run
+   * @param sourceDocument The XSpec as written by user, given as source to compiled
+   * XSpec. It differs from {@code xspec} for XSpec on Schematron.
+   * @return true if all tests in XSpec pass, false otherwise
+   */
+  private boolean processXsltXSpec(XdmNode xspec, XdmNode sourceDocument) throws SaxonApiException, FileNotFoundException {
     File actualSourceFile = new File(xspec.getBaseURI());
     // Try to determine where was the original XSpec file, in case of XSpec on schematron
     File sourceFile = actualSourceFile;
-    XPathSelector xps = xmlStuff.getXPathCompiler().compile("/x:description/@xspec-original-location").load();
+    XPathSelector xps = xmlStuff.getXpXSpecOriginalLocation().load();
     xps.setContextItem(xspec);
     XdmItem item = xps.evaluateSingle();
     if (item != null) {
@@ -349,8 +842,10 @@ public class XSpecRunner implements LogProvider {
     getLog().debug("sourceFile is " + sourceFile.getAbsolutePath());
 
     boolean wasItAnXSpecOnSchematron = !sourceFile.equals(actualSourceFile);
+    // only coverage requires the tracing compiler, which makes execution slower
+    boolean coverage = !wasItAnXSpecOnSchematron && Boolean.TRUE.equals(options.coverage);
     /* compile the test stylesheet */
-    final CompiledXSpec compiledXSpec = xspecCompiler.compileXSpecForXslt(actualSourceFile);
+    final CompiledXSpec compiledXSpec = xspecCompiler.compileXSpecForXslt(xspec);
     if (compiledXSpec == null) {
       return false;
     } else {
@@ -358,20 +853,19 @@ public class XSpecRunner implements LogProvider {
       /* execute the test stylesheet */
       try {
         final ErrorListener errorListener = new OwnErrorListener(getLog());
-        final XsltExecutable xeXSpec = xmlStuff.compileXsl(
-            new StreamSource(compiledXSpec.getCompiledStylesheet()));
+        final XsltExecutable xeXSpec = xmlStuff.compileXsl(compiledXSpec.getCompiledSource(), coverage);
         final XsltTransformer xtXSpec = xeXSpec.load();
         xtXSpec.setErrorListener(errorListener);
 
-        if (wasItAnXSpecOnSchematron || !options.coverage) {
+        if (!coverage) {
           getLog().info("coverage not activated for " + sourceFile.getName());
           getLog().debug("wasItAnXSpecOnSchematron: " + wasItAnXSpecOnSchematron);
           getLog().debug("options.coverage: " + options.coverage);
-          return runXsltXspecWithoutCoverage(sourceFile, actualSourceFile, xtXSpec, compiledXSpec, errorListener);
+          return runXsltXspecWithoutCoverage(sourceFile, sourceDocument, xtXSpec, compiledXSpec, errorListener);
         } else {
           getLog().info("coverage activated for " + sourceFile.getName());
 //                    File coverageFile = xspecCompiler.getCoverageTempPath(options.reportDir, sourceFile);
-          return runXsltXspecWithCoverage(sourceFile, actualSourceFile, xtXSpec, compiledXSpec, errorListener);
+          return runXsltXspecWithCoverage(sourceFile, sourceDocument, xtXSpec, compiledXSpec, errorListener);
         }
       } finally {
         // ben, rien !
@@ -381,98 +875,32 @@ public class XSpecRunner implements LogProvider {
 
   private boolean runXsltXspecWithoutCoverage(
       File sourceFile,
-      File actualSourceFile,
+      XdmNode sourceDocument,
       XsltTransformer xtXSpec,
       CompiledXSpec compiledXSpec,
       ErrorListener errorListener) {
-    boolean processedFileAdded = false;
+    ProcessedFile pf = null;
     final XSpecResultsHandler resultsHandler = new XSpecResultsHandler();
     try {
       xtXSpec.setInitialTemplate(INITIAL_TEMPLATE_NAME);
 
       getLog().info("Executing XSpec: " + compiledXSpec.getCompiledStylesheet().getName());
-
-      //setup xml report output
       final File xspecXmlResult = xspecCompiler.getXSpecXmlResultPath(options.reportDir, sourceFile);
-      final Serializer xmlSerializer = xmlStuff.getProcessor().newSerializer();
-      xmlSerializer.setOutputProperty(Serializer.Property.METHOD, "xml");
-      xmlSerializer.setOutputProperty(Serializer.Property.INDENT, "yes");
-      xmlSerializer.setOutputFile(xspecXmlResult);
-      getLog().debug("\txml report output set");
-
-      //setup html report output
       final File xspecHtmlResult = xspecCompiler.getXSpecHtmlResultPath(options.reportDir, sourceFile);
-      final Serializer htmlSerializer = xmlStuff.getProcessor().newSerializer();
-      htmlSerializer.setOutputProperty(Serializer.Property.METHOD, "html");
-      htmlSerializer.setOutputProperty(Serializer.Property.INDENT, "yes");
-      htmlSerializer.setOutputFile(xspecHtmlResult);
-      XsltTransformer reporter = xmlStuff.getReporter().load();
-      reporter.setErrorListener(errorListener);
-      reporter.setBaseOutputURI(xspecHtmlResult.toURI().toString());
-      reporter.setDestination(htmlSerializer);
-      getLog().debug("\thtml report output set");
-
-
-      // setup surefire report output
-      Destination xtSurefire = null;
-      if (xmlStuff.getXeSurefire() != null) {
-        XsltTransformer xt = xmlStuff.getXeSurefire().load();
-        xt.setErrorListener(errorListener);
-        try {
-          xt.setParameter(
-              new QName("baseDir"),
-              new XdmAtomicValue(options.testDir.toURI().toURL().toExternalForm()));
-          xt.setParameter(
-              new QName("outputDir"),
-              new XdmAtomicValue(options.surefireReportDir.toURI().toURL().toExternalForm()));
-          xt.setParameter(
-              new QName("xspecUri"),
-              new XdmAtomicValue(sourceFile.toURI().toURL().toExternalForm()));
-          xt.setDestination(xmlStuff.newSerializer(NullOutputStream.INSTANCE));
-          xtSurefire = xt;
-        } catch (MalformedURLException ex) {
-          getLog().warn("Unable to generate surefire report", ex);
-        }
-      } else {
-        xtSurefire = xmlStuff.newSerializer(NullOutputStream.INSTANCE);
-      }
-      getLog().debug("\tsurefire report output set");
-
-      getLog().debug("\tcreating PF");
-      ProcessedFile pf = new ProcessedFile(options.testDir, sourceFile, options.reportDir, xspecHtmlResult);
-      getLog().debug("\tadding PF to list");
+      pf = new ProcessedFile(options.testDir, sourceFile, options.reportDir, xspecHtmlResult);
       processedFiles.add(pf);
-      getLog().debug("\tprocessedFile processed");
-      String relativeCssPath =
-          (!pf.getRelativeCssPath().isEmpty() ? pf.getRelativeCssPath() + "/" : "") + XmlStuff.RESOURCES_TEST_REPORT_CSS;
-      getLog().debug("\trelativeCssPath: " + relativeCssPath);
-      // issue #36
-      reporter.setParameter(XmlStuff.QN_REPORT_CSS, new XdmAtomicValue(relativeCssPath));
 
       //execute
-      final Destination destination =
-          new TeeDestination(
-              new TeeDestination(
-                  new SAXDestination(resultsHandler),
-                  new TeeDestination(
-                      xmlSerializer,
-                      xtSurefire)
-              ),
-              reporter);
-      getLog().debug("\tdestination tree constructed");
-
-      XMLReader reader = XmlStuff.PARSER_FACTORY.newSAXParser().getXMLReader();
-      Source xspecSource = new SAXSource(reader, new InputSource(new FileInputStream(sourceFile)));
-      xspecSource.setSystemId(sourceFile.toURI().toString());
-      xtXSpec.setSource(xspecSource);
+      final XdmDestination xspecResult = XmlStuff.newXdmDestination(xspecXmlResult.toURI());
+      xtXSpec.setInitialContextNode(sourceDocument);
       xtXSpec.setResourceResolver(xmlStuff.getResourceResolver());
-      xtXSpec.setDestination(destination);
+      xtXSpec.setDestination(newResultDestination(xspecResult, xspecXmlResult));
       xtXSpec.setBaseOutputURI(xspecXmlResult.toURI().toString());
       getLog().debug("\tlaunching transform");
       xtXSpec.transform();
-
       getLog().debug("XSpec run");
-    } catch (final SaxonApiException | FileNotFoundException | ParserConfigurationException | SAXException te) {
+      writeReports(sourceFile, pf, XmlStuff.getXdmNode(xspecResult), resultsHandler, errorListener);
+    } catch (final SaxonApiException te) {
       getLog().error(te.getMessage());
       getLog().debug(te);
     }
@@ -488,8 +916,8 @@ public class XSpecRunner implements LogProvider {
         resultsHandler.getFailed(),
         missed,
         compiledXSpec.getTests());
-    if (!processedFiles.isEmpty()) {
-      processedFiles.get(processedFiles.size() - 1).setResults(
+    if (pf != null) {
+      pf.setResults(
           resultsHandler.getPassed(),
           resultsHandler.getPending(),
           resultsHandler.getFailed(),
@@ -505,116 +933,149 @@ public class XSpecRunner implements LogProvider {
     }
   }
 
+  /**
+   * Returns the destination of a XSpec run : the XML report is written while XSpec runs,
+   * and the result tree is built once for the other reports.
+   * @param xspecResult Builds the result tree
+   * @param xspecXmlResult The XML report
+   * @return The destination
+   */
+  private Destination newResultDestination(XdmDestination xspecResult, File xspecXmlResult) {
+    final Serializer xmlSerializer = xmlStuff.getProcessor().newSerializer();
+    xmlSerializer.setOutputProperty(Serializer.Property.METHOD, "xml");
+    xmlSerializer.setOutputProperty(Serializer.Property.INDENT, "yes");
+    xmlSerializer.setOutputFile(xspecXmlResult);
+    return new TeeDestination(xspecResult, xmlSerializer);
+  }
+
+  /**
+   * Reads test results from a XSpec result, and writes its HTML and surefire reports.
+   * The result tree is built once, each report is produced from it ; XML report has been
+   * written while XSpec ran, see {@link #newResultDestination(XdmDestination, File) }.
+   * @param sourceFile The XSpec file
+   * @param pf The processed file of the XSpec
+   * @param xspecResult The result of XSpec execution
+   * @param resultsHandler Receives test results
+   * @param errorListener Error listener of report transformations, or {@code null}
+   * @throws SaxonApiException If a report can not be written
+   */
+  private void writeReports(
+      File sourceFile,
+      ProcessedFile pf,
+      XdmNode xspecResult,
+      XSpecResultsHandler resultsHandler,
+      ErrorListener errorListener) throws SaxonApiException {
+    resultsHandler.readResults(xspecResult);
+    writeHtmlReport(pf, xspecResult, errorListener);
+    writeSurefireReport(sourceFile, xspecResult, errorListener);
+  }
+
+  /**
+   * Writes the HTML report of a XSpec from its XML result
+   * @param pf The processed file of the XSpec
+   * @param xspecResult The result of XSpec execution
+   * @param errorListener Error listener of report transformation, or {@code null}
+   * @throws SaxonApiException If report can not be written
+   */
+  private void writeHtmlReport(ProcessedFile pf, XdmNode xspecResult, ErrorListener errorListener) throws SaxonApiException {
+    final File xspecHtmlResult = pf.getReportFile().toFile();
+    final Serializer htmlSerializer = xmlStuff.getProcessor().newSerializer();
+    htmlSerializer.setOutputProperty(Serializer.Property.METHOD, "html");
+    htmlSerializer.setOutputProperty(Serializer.Property.INDENT, "yes");
+    htmlSerializer.setOutputFile(xspecHtmlResult);
+    XsltTransformer reporter = xmlStuff.getReporter().load();
+    if (errorListener != null) {
+      reporter.setErrorListener(errorListener);
+    }
+    reporter.setBaseOutputURI(xspecHtmlResult.toURI().toString());
+    // issue #36
+    reporter.setParameter(XmlStuff.QN_REPORT_CSS, new XdmAtomicValue(getRelativeCssPath(pf)));
+    reporter.setInitialContextNode(xspecResult);
+    reporter.setDestination(htmlSerializer);
+    reporter.transform();
+    getLog().debug("\thtml report written");
+  }
+
+  /**
+   * Writes the surefire report of a XSpec from its XML result, if surefire reports are generated
+   * @param sourceFile The XSpec file
+   * @param xspecResult The result of XSpec execution
+   * @param errorListener Error listener of report transformation, or {@code null}
+   * @throws SaxonApiException If report can not be written
+   */
+  private void writeSurefireReport(File sourceFile, XdmNode xspecResult, ErrorListener errorListener) throws SaxonApiException {
+    if (xmlStuff.getXeSurefire() != null) {
+      XsltTransformer xt = xmlStuff.getXeSurefire().load();
+      if (errorListener != null) {
+        xt.setErrorListener(errorListener);
+      }
+      try {
+        xt.setParameter(
+            new QName("baseDir"),
+            new XdmAtomicValue(options.testDir.toURI().toURL().toExternalForm()));
+        xt.setParameter(
+            new QName("outputDir"),
+            new XdmAtomicValue(options.surefireReportDir.toURI().toURL().toExternalForm()));
+        xt.setParameter(
+            new QName("xspecUri"),
+            new XdmAtomicValue(sourceFile.toURI().toURL().toExternalForm()));
+        xt.setInitialContextNode(xspecResult);
+        xt.setDestination(xmlStuff.newSerializer(NullOutputStream.INSTANCE));
+        xt.transform();
+        getLog().debug("\tsurefire report written");
+      } catch (MalformedURLException ex) {
+        getLog().warn("Unable to generate surefire report", ex);
+      }
+    }
+  }
+
+  /**
+   * Returns the path of report CSS, relative to the report of a XSpec
+   */
+  private static String getRelativeCssPath(ProcessedFile pf) {
+    return (!pf.getRelativeCssPath().isEmpty() ? pf.getRelativeCssPath() + "/" : "") + XmlStuff.RESOURCES_TEST_REPORT_CSS;
+  }
+
   private boolean runXsltXspecWithCoverage(
       File sourceFile,
-      File actualSourceFile,
+      XdmNode sourceDocument,
       XsltTransformer xtXSpec,
       CompiledXSpec compiledXSpec,
       ErrorListener errorListener) {
-    boolean processedFileAdded = false;
+    ProcessedFile pf = null;
     final XSpecResultsHandler resultsHandler = new XSpecResultsHandler();
     try {
       File coverageFile = xspecCompiler.getCoverageTempPath(options.reportDir, sourceFile);
       getLog().debug("coverage File: " + coverageFile.getAbsolutePath());
-      // WARNING : as System properties are used, a multi-threaded system can not be used !
-      System.setProperty(TRACE_SYS_PROP_IGNORE_DIR, compiledXSpec.getCompiledStylesheet().getParentFile().getAbsolutePath());
-      System.setProperty(TRACE_SYS_PROP_XSPEC_FILE, sourceFile.getAbsolutePath());
-      System.setProperty(TRACE_SYS_PROP_COVERAGE_FILE, coverageFile.getAbsolutePath());
-      try {
-        // need to set system properties
-        TraceListener tl = new XSLTCoverageTraceListener();
-        xtXSpec.setTraceListener(tl);
-        getLog().info("Trace listener is active");
-      } catch (Exception ex) {
-        getLog().error("while instanciating XSLTCoverageTraceListener", ex);
-      }
+      // each run has its own coverage context, so coverage runs may be concurrent
+      xtXSpec.setTraceListener(new CoverageTraceListener(
+          compiledXSpec.getCompiledStylesheet().getParentFile(),
+          sourceFile,
+          coverageFile));
+      getLog().info("Trace listener is active");
       xtXSpec.setInitialTemplate(INITIAL_TEMPLATE_NAME);
 
       getLog().info("Executing XSpec: " + compiledXSpec.getCompiledStylesheet().getName());
       final File xspecXmlResult = xspecCompiler.getXSpecXmlResultPath(options.reportDir, sourceFile);
 
-      XMLReader reader = XmlStuff.PARSER_FACTORY.newSAXParser().getXMLReader();
-      reader.setEntityResolver((EntityResolver) xmlStuff.getResourceResolver());
-      Source xspecSource = new SAXSource(reader, new InputSource(new FileInputStream(sourceFile)));
-      xspecSource.setSystemId(sourceFile.toURI().toString());
-      xtXSpec.setSource(xspecSource);
+      xtXSpec.setInitialContextNode(sourceDocument);
       xtXSpec.setResourceResolver(xmlStuff.getResourceResolver());
-      XdmDestination xspecResult = new XdmDestination();
-      xtXSpec.setDestination(xspecResult);
+      final XdmDestination xspecResult = XmlStuff.newXdmDestination(xspecXmlResult.toURI());
+      xtXSpec.setDestination(newResultDestination(xspecResult, xspecXmlResult));
       xtXSpec.setBaseOutputURI(xspecXmlResult.toURI().toString());
       getLog().debug("\tlaunching transform");
       xtXSpec.transform();
       getLog().debug("XSpec run");
 
-
-      //setup xml report output
-      final Serializer xmlSerializer = xmlStuff.getProcessor().newSerializer();
-      xmlSerializer.setOutputProperty(Serializer.Property.METHOD, "xml");
-      xmlSerializer.setOutputProperty(Serializer.Property.INDENT, "yes");
-      xmlSerializer.setOutputFile(xspecXmlResult);
-      getLog().debug("\txml report output set");
-
-      //setup html report output
       final File xspecHtmlResult = xspecCompiler.getXSpecHtmlResultPath(options.reportDir, sourceFile);
-      final Serializer htmlSerializer = xmlStuff.getProcessor().newSerializer();
-      htmlSerializer.setOutputProperty(Serializer.Property.METHOD, "html");
-      htmlSerializer.setOutputProperty(Serializer.Property.INDENT, "yes");
-      htmlSerializer.setOutputFile(xspecHtmlResult);
-      XsltTransformer reporter = xmlStuff.getReporter().load();
-      reporter.setErrorListener(errorListener);
-      reporter.setBaseOutputURI(xspecHtmlResult.toURI().toString());
-      reporter.setDestination(htmlSerializer);
-      getLog().debug("\thtml report output set");
-
-
-      // setup surefire report output
-      Destination xtSurefire = null;
-      if (xmlStuff.getXeSurefire() != null) {
-        XsltTransformer xt = xmlStuff.getXeSurefire().load();
-        xt.setErrorListener(errorListener);
-        try {
-          xt.setParameter(new QName("baseDir"), new XdmAtomicValue(options.testDir.toURI().toURL().toExternalForm()));
-          xt.setParameter(new QName("outputDir"), new XdmAtomicValue(options.surefireReportDir.toURI().toURL().toExternalForm()));
-          xt.setParameter(new QName("xspecUri"), new XdmAtomicValue(sourceFile.toURI().toURL().toExternalForm()));
-          xt.setDestination(xmlStuff.newSerializer(NullOutputStream.INSTANCE));
-          xtSurefire = xt;
-        } catch (MalformedURLException ex) {
-          getLog().warn("Unable to generate surefire report", ex);
-        }
-      } else {
-        xtSurefire = xmlStuff.newSerializer(NullOutputStream.INSTANCE);
-      }
-      getLog().debug("\tsurefire report output set");
-
-      getLog().debug("\tcreating PF");
-      ProcessedFile pf = new ProcessedFile(options.testDir, sourceFile, options.reportDir, xspecHtmlResult);
-      getLog().debug("\tadding PF to list");
+      pf = new ProcessedFile(options.testDir, sourceFile, options.reportDir, xspecHtmlResult);
       processedFiles.add(pf);
-      processedFileAdded = true;
-      getLog().debug("\tprocessedFile processed");
-      String relativeCssPath =
-          (!pf.getRelativeCssPath().isEmpty() ? pf.getRelativeCssPath() + "/" : "") + XmlStuff.RESOURCES_TEST_REPORT_CSS;
-      getLog().debug("\trelativeCssPath: " + relativeCssPath);
-      reporter.setParameter(XmlStuff.QN_REPORT_CSS, new XdmAtomicValue(relativeCssPath));
-
-      //execute
-      final Destination destination =
-          new TeeDestination(
-              new TeeDestination(
-                  new SAXDestination(resultsHandler),
-                  new TeeDestination(
-                      xmlSerializer,
-                      xtSurefire)
-              ),
-              reporter);
-      getLog().debug("\tdestination tree constructed");
-
-      // here, we process the XSpec result through all the destinations
-      xmlStuff.getProcessor().writeXdmValue(xspecResult.getXdmNode(), destination);
+      writeReports(sourceFile, pf, XmlStuff.getXdmNode(xspecResult), resultsHandler, errorListener);
 
       // coverage
-      if (xmlStuff.getCoverageReporter() != null) {
-        XsltTransformer coverage = xmlStuff.getCoverageReporter().load();
+      XsltExecutable coverageReporter = xmlStuff.getCoverageReporter();
+      if (coverageReporter != null) {
+        XsltTransformer coverage = coverageReporter.load();
         coverage.setErrorListener(errorListener);
         File coverageReportFile = xspecCompiler.getCoverageFinalPath(options.reportDir, sourceFile);
         pf.setCoverageFile(coverageReportFile.toPath());
@@ -627,7 +1088,7 @@ public class XSpecRunner implements LogProvider {
 //                getLog().info("coverage tests: "+relative.toString());
 //                coverage.setParameter(new QName("tests"), XdmAtomicValue.makeAtomicValue(relative.toString()));
         coverage.setParameter(INLINE_CSS, XdmAtomicValue.makeAtomicValue("false"));
-        coverage.setParameter(XmlStuff.QN_REPORT_CSS, new XdmAtomicValue(relativeCssPath));
+        coverage.setParameter(XmlStuff.QN_REPORT_CSS, new XdmAtomicValue(getRelativeCssPath(pf)));
         coverage.transform();
       } else {
         getLog().warn(COVERAGE_ERROR_MESSAGE);
@@ -636,13 +1097,10 @@ public class XSpecRunner implements LogProvider {
     } catch (final SaxonApiException te) {
       getLog().error(te.getMessage());
       getLog().debug(te);
-      if (!processedFileAdded) {
-        ProcessedFile pf = new ProcessedFile(options.testDir, sourceFile, options.reportDir, xspecCompiler.getXSpecHtmlResultPath(options.reportDir, sourceFile));
+      if (pf == null) {
+        pf = new ProcessedFile(options.testDir, sourceFile, options.reportDir, xspecCompiler.getXSpecHtmlResultPath(options.reportDir, sourceFile));
         processedFiles.add(pf);
       }
-    } catch (final FileNotFoundException | ParserConfigurationException | SAXException te) {
-      getLog().error(te.getMessage());
-      getLog().debug(te);
     }
 
     //missed tests come about when the XSLT processor aborts processing the XSpec due to an XSLT error
@@ -656,8 +1114,8 @@ public class XSpecRunner implements LogProvider {
         resultsHandler.getFailed(),
         missed,
         compiledXSpec.getTests());
-    if (!processedFiles.isEmpty()) {
-      processedFiles.get(processedFiles.size() - 1).setResults(
+    if (pf != null) {
+      pf.setResults(
           resultsHandler.getPassed(),
           resultsHandler.getPending(),
           resultsHandler.getFailed(),
@@ -718,6 +1176,37 @@ public class XSpecRunner implements LogProvider {
   }
 
 
+  /**
+   * Returns the directories of the files XSpecs of last execution depend on : XSpecs,
+   * tested code, imported modules... Only known in incremental mode.
+   * @return The directories
+   */
+  public Set<Path> getDependencyDirectories() {
+    final Set<String> dependencies = new HashSet<>();
+    if (runHistory != null) {
+      dependencies.addAll(runHistory.getRecordedDependencies());
+    }
+    // failed XSpecs are not recorded
+    for (List<String> xspecDependency : xspecDependencies.values()) {
+      dependencies.addAll(xspecDependency);
+    }
+    final Set<Path> ret = new HashSet<>();
+    for (String dependency : dependencies) {
+      try {
+        URI uri = new URI(dependency);
+        if ("file".equals(uri.getScheme())) {
+          Path parent = Paths.get(uri).getParent();
+          if (parent != null) {
+            ret.add(parent.normalize());
+          }
+        }
+      } catch (URISyntaxException | IllegalArgumentException ex) {
+        // not a file
+      }
+    }
+    return ret;
+  }
+
   /**
    * Package private to allow unit tests
    */
@@ -772,12 +1261,22 @@ public class XSpecRunner implements LogProvider {
     return xmlStuff;
   }
 
+  // for UT only
+  List<ProcessedFile> getProcessedFiles() {
+    return processedFiles;
+  }
+
+  // for UT only
+  int getUpToDateCount() {
+    return upToDateCount;
+  }
+
   /**
    * expose this to package to let unit tests initialize PF,
    * when running outside of {@link #execute()} method.
    */
   void initProcessedFiles(int size) {
-    processedFiles = new ArrayList<>(size);
+    processedFiles = Collections.synchronizedList(new ArrayList<>(size));
   }
 
 }
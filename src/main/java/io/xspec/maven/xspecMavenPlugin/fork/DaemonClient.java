@@ -0,0 +1,265 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.fork;
+
+import io.xspec.maven.xspecMavenPlugin.utils.LogProvider;
+import io.xspec.maven.xspecMavenPlugin.utils.RunnerOptions;
+import io.xspec.maven.xspecMavenPlugin.utils.XSpecPluginException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs XSpecs in a {@link XSpecDaemon}, that is kept alive between builds.
+ * <p>
+ * Daemons are identified by the fingerprint of their {@link ForkConfiguration}.
+ * Their files are kept in {@code xspec-maven-plugin-daemons}, under {@code ~/.m2}, in
+ * a directory only the user can access : configuration, classpath argument file, state
+ * file and log. If there is
+ * no running daemon for a configuration, a new one is started, and outlives the build.
+ * </p>
+ * @author cmarchand
+ */
+public class DaemonClient implements LogProvider {
+  private static final long START_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+  private static final long START_POLL_INTERVAL = 200;
+  private final Log log;
+  private final RunnerOptions options;
+  private final ForkConfiguration configuration;
+  private final File daemonDir;
+  private final String fingerprint;
+  private volatile boolean cancelled;
+
+  /**
+   * Creates a client
+   * @param log The log to forward daemon logs to
+   * @param options Runner options
+   * @param configuration The daemon configuration
+   * @throws XSpecPluginException If daemon classpath can not be computed
+   */
+  public DaemonClient(Log log, RunnerOptions options, ForkConfiguration configuration) throws XSpecPluginException {
+    this(log, options, configuration, getDaemonDir());
+  }
+
+  /**
+   * Creates a client, that keeps daemon files in {@code daemonDir}
+   */
+  DaemonClient(Log log, RunnerOptions options, ForkConfiguration configuration, File daemonDir) throws XSpecPluginException {
+    super();
+    this.log = log;
+    this.options = options;
+    this.configuration = configuration;
+    this.daemonDir = daemonDir;
+    this.fingerprint = configuration.getFingerprint(ForkPool.getWorkerClasspath());
+  }
+
+  /**
+   * Returns the directory where daemons files are kept
+   * @return The directory
+   */
+  public static File getDaemonDir() {
+    // not in the shared temporary directory : the state file grants access to daemon
+    return new File(System.getProperty("user.home"), ".m2/xspec-maven-plugin-daemons");
+  }
+
+  /**
+   * Runs all XSpecs in the daemon, starting it if needed.
+   * @param xspecs The XSpec files to run
+   * @param listener Receives results of each XSpec
+   * @return {@code true} if all XSpecs succeed
+   * @throws XSpecPluginException If daemon can not be started or reached, or dies. XSpecs
+   * that have not been reported to {@code listener} have not been run.
+   */
+  public boolean run(List<File> xspecs, ForkPool.ResultListener listener) throws XSpecPluginException {
+    boolean succeed = true;
+    try (Socket socket = connect()) {
+      Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      readUntil(in, ForkProtocol.READY);
+      for (File xspec : xspecs) {
+        if (cancelled) {
+          break;
+        }
+        final long start = System.nanoTime();
+        out.write(xspec.getAbsolutePath());
+        out.write('\n');
+        out.flush();
+        String[] result = readUntil(in, ForkProtocol.RESULT);
+        boolean xspecSucceed = ForkProtocol.STATUS_SUCCEED.equals(result[1]);
+        if (!xspecSucceed) {
+          succeed = false;
+        }
+        listener.xspecProcessed(
+            xspec,
+            result.length >= 10 ? ForkPool.toProcessedFile(options, result) : null,
+            xspecSucceed,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      }
+      out.write(ForkProtocol.EXIT);
+      out.write('\n');
+      out.flush();
+    } catch (IOException ex) {
+      // daemon is not usable, next build will start a new one
+      getFile(".state").delete();
+      throw new XSpecPluginException("XSpec daemon is not reachable, see " + getFile(".log").getAbsolutePath(), ex);
+    }
+    return succeed;
+  }
+
+  /**
+   * Stops running XSpecs : no more XSpec is sent to daemon. May be called from
+   * {@link ForkPool.ResultListener}.
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  /**
+   * Connects to the running daemon, or starts a new one and waits until it is ready.
+   */
+  private Socket connect() throws XSpecPluginException, IOException {
+    Socket ret = tryConnect();
+    if (ret != null) {
+      getLog().info("Running XSpecs in daemon " + fingerprint.substring(0, 8));
+      return ret;
+    }
+    Process process = startDaemon();
+    final long deadline = System.currentTimeMillis() + START_TIMEOUT;
+    try {
+      while (System.currentTimeMillis() < deadline) {
+        Thread.sleep(START_POLL_INTERVAL);
+        ret = tryConnect();
+        if (ret != null) {
+          return ret;
+        }
+        if (!process.isAlive()) {
+          throw new IOException("daemon exited with status " + process.exitValue());
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      process.destroy();
+      throw new XSpecPluginException("XSpec execution has been interrupted", ex);
+    }
+    process.destroy();
+    throw new IOException("daemon has not started in " + TimeUnit.MILLISECONDS.toSeconds(START_TIMEOUT) + "s");
+  }
+
+  /**
+   * Connects to the daemon of state file, if there is one, and sends the token
+   * @return The connection, or {@code null}
+   */
+  private Socket tryConnect() {
+    Properties state = XSpecDaemon.readState(getFile(".state"));
+    if (state == null) {
+      return null;
+    }
+    try {
+      Socket ret = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(state.getProperty(XSpecDaemon.KEY_PORT)));
+      ret.getOutputStream().write((state.getProperty(XSpecDaemon.KEY_TOKEN) + "\n").getBytes(StandardCharsets.UTF_8));
+      ret.getOutputStream().flush();
+      return ret;
+    } catch (IOException | NumberFormatException ex) {
+      getLog().debug("XSpec daemon " + fingerprint.substring(0, 8) + " is not running");
+      getFile(".state").delete();
+      return null;
+    }
+  }
+
+  /**
+   * Starts a daemon. Its output is written to its log file.
+   */
+  private Process startDaemon() throws XSpecPluginException, IOException {
+    XSpecDaemon.createPrivateDirectory(daemonDir);
+    File configurationFile = getFile(".properties");
+    File argFile = getFile(".args");
+    File logFile = getFile(".log");
+    configuration.store(configurationFile);
+    ForkPool.writeClasspath(argFile);
+    List<String> command = new ArrayList<>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    command.addAll(ForkPool.splitArgLine(options.forkArgLine));
+    command.add("@" + argFile.getAbsolutePath());
+    command.add(XSpecDaemon.class.getName());
+    command.add(configurationFile.getAbsolutePath());
+    command.add(getFile(".state").getAbsolutePath());
+    command.add(Integer.toString(options.daemonIdleTimeout == null ? 180 : options.daemonIdleTimeout));
+    getLog().info("Starting XSpec daemon " + fingerprint.substring(0, 8) + ", log is " + logFile.getAbsolutePath());
+    getLog().debug("daemon command: " + command);
+    Process process = new ProcessBuilder(command)
+        .redirectErrorStream(true)
+        .redirectOutput(logFile)
+        .start();
+    // daemon never reads stdin
+    process.getOutputStream().close();
+    return process;
+  }
+
+  private File getFile(String extension) {
+    return new File(daemonDir, fingerprint + extension);
+  }
+
+  @Override
+  public Log getLog() {
+    return log;
+  }
+
+  /**
+   * Reads daemon output, forwarding logs, until a message of {@code type} is received.
+   */
+  private String[] readUntil(BufferedReader in, String type) throws IOException {
+    String line = in.readLine();
+    while (line != null) {
+      if (ForkProtocol.isProtocolLine(line)) {
+        String[] message = ForkProtocol.parse(line);
+        if (type.equals(message[0])) {
+          return message;
+        } else if (ForkProtocol.LOG.equals(message[0]) && message.length == 3) {
+          ForkPool.forwardLog(getLog(), message[1], message[2]);
+        }
+      } else {
+        getLog().info("[daemon] " + line);
+      }
+      line = in.readLine();
+    }
+    throw new IOException("daemon closed connection unexpectedly");
+  }
+}
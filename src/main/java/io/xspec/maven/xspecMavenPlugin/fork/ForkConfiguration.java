@@ -0,0 +1,235 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.fork;
+
+import io.xspec.maven.xspecMavenPlugin.resources.SchematronImplResources;
+import io.xspec.maven.xspecMavenPlugin.resources.XSpecImplResources;
+import io.xspec.maven.xspecMavenPlugin.resources.XSpecPluginResources;
+import io.xspec.maven.xspecMavenPlugin.resources.impl.DefaultSchematronImplResources;
+import io.xspec.maven.xspecMavenPlugin.resources.impl.DefaultXSpecImplResources;
+import io.xspec.maven.xspecMavenPlugin.resources.impl.DefaultXSpecPluginResources;
+import io.xspec.maven.xspecMavenPlugin.utils.ContentHasher;
+import io.xspec.maven.xspecMavenPlugin.utils.RunnerOptions;
+import top.marchand.maven.saxon.utils.SaxonOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Everything a {@link ForkedWorker} needs to build its own {@code XSpecRunner}.
+ * It is written by parent process to a properties file, and read by worker.
+ * @author cmarchand
+ */
+public class ForkConfiguration {
+  private static final String KEY_BASE_DIR = "baseDir";
+  private static final String KEY_DEBUG = "debug";
+  private static final String PFX_OPTIONS = "options.";
+  private static final String PFX_SAXON = "saxon.";
+  private static final String PFX_ENV = "env.";
+  private static final String KEY_XSL_COMPILER = "resources.xspecXslCompiler";
+  private static final String KEY_XQUERY_COMPILER = "resources.xspecXQueryCompiler";
+  private static final String KEY_SCHUT = "resources.schSchut";
+  private static final String KEY_REPORTER = "resources.xspecReporter";
+  private static final String KEY_COVERAGE_REPORTER = "resources.coverageReporter";
+  private static final String KEY_CSS = "resources.testReportCss";
+  private static final String KEY_DEPENDENCY_SCANNER = "resources.dependencyScanner";
+
+  /**
+   * Options that do not change how a single XSpec is run, nor its results
+   */
+  public static final List<String> NOT_FINGERPRINTED_OPTIONS = Collections.unmodifiableList(Arrays.asList(
+      "threads", "forkCount", "forkRecycleAfter", "failFast", "maxFailures",
+      "shardCount", "shardIndex", "shardStrategy", "forceRerun",
+      "daemon", "daemonIdleTimeout"));
+
+  private final Properties props;
+
+  private ForkConfiguration(Properties props) {
+    super();
+    this.props = props;
+  }
+
+  /**
+   * Creates a configuration from parent runner settings
+   * @param baseDir Project base directory
+   * @param options Runner options
+   * @param saxonOptions Saxon options, may be {@code null}
+   * @param xspecResources XSpec implementation resources
+   * @param pluginResources Plugin resources
+   * @param environment Execution properties
+   * @param debug Says if workers should send debug logs
+   * @return The configuration
+   */
+  public static ForkConfiguration create(
+      File baseDir,
+      RunnerOptions options,
+      SaxonOptions saxonOptions,
+      XSpecImplResources xspecResources,
+      XSpecPluginResources pluginResources,
+      Properties environment,
+      boolean debug) {
+    Properties props = new Properties();
+    props.setProperty(KEY_BASE_DIR, baseDir.getAbsolutePath());
+    props.setProperty(KEY_DEBUG, Boolean.toString(debug));
+    OptionsCodec.encode(options, props, PFX_OPTIONS);
+    OptionsCodec.encode(saxonOptions, props, PFX_SAXON);
+    setIfNotNull(props, KEY_XSL_COMPILER, xspecResources.getXSpecXslCompilerUri());
+    setIfNotNull(props, KEY_XQUERY_COMPILER, xspecResources.getXSpecXQueryCompilerUri());
+    setIfNotNull(props, KEY_SCHUT, xspecResources.getSchematronSchutConverterUri());
+    setIfNotNull(props, KEY_REPORTER, xspecResources.getXSpecReporterUri(false));
+    setIfNotNull(props, KEY_COVERAGE_REPORTER, xspecResources.getXSpecCoverageReporterUri());
+    setIfNotNull(props, KEY_CSS, xspecResources.getXSpecCssReportUri());
+    setIfNotNull(props, KEY_DEPENDENCY_SCANNER, pluginResources.getDependencyScannerUri());
+    for (String name : environment.stringPropertyNames()) {
+      props.setProperty(PFX_ENV + name, environment.getProperty(name));
+    }
+    return new ForkConfiguration(props);
+  }
+
+  /**
+   * Reads a configuration written by {@link #store(File)}
+   * @param file The configuration file
+   * @return The configuration
+   * @throws IOException In case of I/O error
+   */
+  public static ForkConfiguration load(File file) throws IOException {
+    Properties props = new Properties();
+    try (InputStream is = Files.newInputStream(file.toPath())) {
+      props.load(is);
+    }
+    return new ForkConfiguration(props);
+  }
+
+  /**
+   * Writes this configuration
+   * @param file The file to write to
+   * @throws IOException In case of I/O error
+   */
+  public void store(File file) throws IOException {
+    try (OutputStream os = Files.newOutputStream(file.toPath())) {
+      props.store(os, "xspec-maven-plugin forked worker configuration");
+    }
+  }
+
+  /**
+   * Identifies a configuration, so that builds with the same configuration share the
+   * same daemon. Execution properties, and options that do not change how a single
+   * XSpec is run, are ignored.
+   * @param classpath The worker classpath
+   * @return The fingerprint
+   */
+  public String getFingerprint(List<String> classpath) {
+    ContentHasher hasher = new ContentHasher();
+    for (String name : new TreeSet<>(props.stringPropertyNames())) {
+      if (name.startsWith(PFX_ENV)
+          || (name.startsWith(PFX_OPTIONS) && NOT_FINGERPRINTED_OPTIONS.contains(name.substring(PFX_OPTIONS.length())))) {
+        continue;
+      }
+      hasher.add(name).add(props.getProperty(name));
+    }
+    for (String entry : classpath) {
+      // a rebuilt jar has the same path
+      hasher.add(entry).add(Long.toString(new File(entry).lastModified()));
+    }
+    return hasher.getHash();
+  }
+
+  public File getBaseDir() {
+    return new File(props.getProperty(KEY_BASE_DIR));
+  }
+
+  public boolean isDebug() {
+    return Boolean.parseBoolean(props.getProperty(KEY_DEBUG));
+  }
+
+  public RunnerOptions getRunnerOptions() {
+    return OptionsCodec.decode(new RunnerOptions(getBaseDir()), props, PFX_OPTIONS);
+  }
+
+  public SaxonOptions getSaxonOptions() {
+    return OptionsCodec.decode(new SaxonOptions(), props, PFX_SAXON);
+  }
+
+  public XSpecImplResources getXSpecResources() {
+    DefaultXSpecImplResources ret = new DefaultXSpecImplResources();
+    if (props.containsKey(KEY_XSL_COMPILER)) {
+      ret.setXSpecXslCompilerUri(props.getProperty(KEY_XSL_COMPILER));
+    }
+    if (props.containsKey(KEY_XQUERY_COMPILER)) {
+      ret.setXSpecXQueryCompiler(props.getProperty(KEY_XQUERY_COMPILER));
+    }
+    if (props.containsKey(KEY_SCHUT)) {
+      ret.setSchematronSchutConverter(props.getProperty(KEY_SCHUT));
+    }
+    if (props.containsKey(KEY_REPORTER)) {
+      ret.setXSpecReporter(props.getProperty(KEY_REPORTER));
+    }
+    if (props.containsKey(KEY_COVERAGE_REPORTER)) {
+      ret.setXSpecCoverageReporter(props.getProperty(KEY_COVERAGE_REPORTER));
+    }
+    if (props.containsKey(KEY_CSS)) {
+      ret.setTestReportCss(props.getProperty(KEY_CSS));
+    }
+    return ret;
+  }
+
+  public SchematronImplResources getSchematronResources() {
+    return new DefaultSchematronImplResources();
+  }
+
+  public XSpecPluginResources getPluginResources() {
+    DefaultXSpecPluginResources ret = new DefaultXSpecPluginResources();
+    if (props.containsKey(KEY_DEPENDENCY_SCANNER)) {
+      ret.setDependencyScanner(props.getProperty(KEY_DEPENDENCY_SCANNER));
+    }
+    return ret;
+  }
+
+  public Properties getEnvironment() {
+    Properties ret = new Properties();
+    for (String name : props.stringPropertyNames()) {
+      if (name.startsWith(PFX_ENV)) {
+        ret.setProperty(name.substring(PFX_ENV.length()), props.getProperty(name));
+      }
+    }
+    return ret;
+  }
+
+  private static void setIfNotNull(Properties props, String key, String value) {
+    if (value != null) {
+      props.setProperty(key, value);
+    }
+  }
+}
@@ -0,0 +1,428 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.fork;
+
+import io.xspec.maven.xspecMavenPlugin.utils.LogProvider;
+import io.xspec.maven.xspecMavenPlugin.utils.ProcessedFile;
+import io.xspec.maven.xspecMavenPlugin.utils.RunnerOptions;
+import io.xspec.maven.xspecMavenPlugin.utils.XSpecPluginException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs XSpecs in a pool of {@code forkCount} child JVMs.
+ * <p>
+ * Each child runs a {@link ForkedWorker}, that initializes Saxon once and runs XSpecs
+ * one after the other. A child is replaced by a fresh one after {@code forkRecycleAfter}
+ * XSpecs, or if it dies.
+ * </p>
+ * @author cmarchand
+ */
+public class ForkPool implements LogProvider {
+  private static final Pattern ARG_PATTERN = Pattern.compile("\"([^\"]*)\"|(\\S+)");
+  private final Log log;
+  private final RunnerOptions options;
+  private final File configurationFile;
+  private final File argFile;
+  private final Set<Worker> activeWorkers = ConcurrentHashMap.newKeySet();
+  private volatile boolean cancelled;
+
+  /**
+   * Creates a pool.
+   * @param log The log to forward workers logs to
+   * @param options Runner options, where fork options are read
+   * @param configurationFile The worker configuration file, already written
+   * @param argFile A file where worker classpath is written, for JVM command line
+   * @throws XSpecPluginException If worker classpath can not be computed
+   */
+  public ForkPool(Log log, RunnerOptions options, File configurationFile, File argFile) throws XSpecPluginException {
+    super();
+    this.log = log;
+    this.options = options;
+    this.configurationFile = configurationFile;
+    this.argFile = argFile;
+    writeClasspath(argFile);
+  }
+
+  /**
+   * Runs all XSpecs.
+   * @param xspecs The XSpec files to run
+   * @param listener Receives results of each XSpec.
+   * @return {@code true} if all XSpecs succeed
+   * @throws XSpecPluginException If a worker can not be started, or if execution is interrupted
+   */
+  public boolean run(List<File> xspecs, ResultListener listener) throws XSpecPluginException {
+    final Queue<File> queue = new ConcurrentLinkedQueue<>(xspecs);
+    final int forkCount = Math.max(1, Math.min(options.forkCount, xspecs.size()));
+    getLog().info("Running XSpecs in " + forkCount + " forked JVM(s)");
+    final AtomicInteger threadNumber = new AtomicInteger();
+    final ExecutorService executor = Executors.newFixedThreadPool(forkCount, runnable -> {
+      Thread thread = new Thread(runnable, "xspec-fork-pool-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    boolean succeed = true;
+    try {
+      List<Future<Boolean>> slots = new ArrayList<>(forkCount);
+      for (int i = 0; i < forkCount; i++) {
+        final int slot = i + 1;
+        slots.add(executor.submit(() -> runSlot(slot, queue, listener)));
+      }
+      for (Future<Boolean> slot : slots) {
+        try {
+          if (!slot.get()) {
+            succeed = false;
+          }
+        } catch (ExecutionException ex) {
+          queue.clear();
+          if (ex.getCause() instanceof XSpecPluginException) {
+            throw (XSpecPluginException) ex.getCause();
+          }
+          throw new XSpecPluginException("while running forked XSpecs", ex.getCause());
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new XSpecPluginException("XSpec execution has been interrupted", ex);
+    } finally {
+      executor.shutdownNow();
+    }
+    return succeed;
+  }
+
+  /**
+   * Stops running XSpecs: no more XSpec is sent to workers, and running workers are
+   * killed. XSpecs that were running are not reported to listener. May be called
+   * from {@link ResultListener}.
+   */
+  public void cancel() {
+    cancelled = true;
+    for (Worker worker : activeWorkers) {
+      worker.kill();
+    }
+  }
+
+  /**
+   * Runs XSpecs from queue in one worker slot, until queue is empty or pool is cancelled.
+   */
+  private boolean runSlot(int slot, Queue<File> queue, ResultListener listener) throws XSpecPluginException {
+    boolean succeed = true;
+    Worker worker = null;
+    try {
+      File xspec = cancelled ? null : queue.poll();
+      while (xspec != null) {
+        if (worker != null && options.forkRecycleAfter > 0 && worker.runCount >= options.forkRecycleAfter) {
+          getLog().debug("[fork-" + slot + "] recycling worker after " + worker.runCount + " XSpecs");
+          worker.stop();
+          worker = null;
+        }
+        if (worker == null) {
+          try {
+            worker = new Worker(slot);
+          } catch (XSpecPluginException ex) {
+            if (cancelled) {
+              break;
+            }
+            throw ex;
+          }
+        }
+        final long start = System.nanoTime();
+        try {
+          String[] result = worker.run(xspec);
+          boolean xspecSucceed = ForkProtocol.STATUS_SUCCEED.equals(result[1]);
+          if (!xspecSucceed) {
+            succeed = false;
+          }
+          listener.xspecProcessed(
+              xspec,
+              result.length >= 10 ? toProcessedFile(options, result) : null,
+              xspecSucceed,
+              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException ex) {
+          if (cancelled) {
+            getLog().debug("[fork-" + slot + "] worker killed while processing " + xspec.getAbsolutePath());
+          } else {
+            succeed = false;
+            getLog().error("[fork-" + slot + "] worker died while processing " + xspec.getAbsolutePath(), ex);
+            listener.xspecProcessed(xspec, null, false, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+          }
+          worker.kill();
+          worker = null;
+        }
+        xspec = cancelled ? null : queue.poll();
+      }
+    } finally {
+      if (worker != null) {
+        worker.stop();
+      }
+    }
+    return succeed;
+  }
+
+  /**
+   * Builds the processed file of a {@link ForkProtocol#RESULT} message
+   * @param options Runner options
+   * @param result The message, with at least 10 fields
+   * @return The processed file
+   */
+  static ProcessedFile toProcessedFile(RunnerOptions options, String[] result) {
+    ProcessedFile pf = new ProcessedFile(
+        options.testDir,
+        new File(result[2]),
+        options.reportDir,
+        new File(result[3]));
+    if (!result[4].isEmpty()) {
+      pf.setCoverageFile(Paths.get(result[4]));
+    }
+    pf.setResults(
+        Integer.parseInt(result[5]),
+        Integer.parseInt(result[6]),
+        Integer.parseInt(result[7]),
+        Integer.parseInt(result[8]),
+        Integer.parseInt(result[9]));
+    if (result.length >= 11 && !result[10].isEmpty()) {
+      pf.setDependencies(Arrays.asList(result[10].split("\n")));
+    }
+    return pf;
+  }
+
+  /**
+   * Writes {@code -cp <classpath>} to argument file, so command line does not exceed
+   * OS limits.
+   */
+  static void writeClasspath(File argFile) throws XSpecPluginException {
+    StringBuilder sb = new StringBuilder();
+    for (String entry : getWorkerClasspath()) {
+      if (sb.length() > 0) {
+        sb.append(File.pathSeparatorChar);
+      }
+      sb.append(entry);
+    }
+    String classpath = sb.toString().replace("\\", "\\\\").replace("\"", "\\\"");
+    try {
+      Files.write(
+          argFile.toPath(),
+          ("-cp \"" + classpath + "\"" + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+    } catch (IOException ex) {
+      throw new XSpecPluginException("while writing worker classpath to " + argFile.getAbsolutePath(), ex);
+    }
+  }
+
+  /**
+   * Computes worker classpath: plugin classpath, plus the jar that provides maven Log.
+   */
+  static List<String> getWorkerClasspath() throws XSpecPluginException {
+    Set<String> ret = new LinkedHashSet<>();
+    try {
+      ClassLoader cl = ForkPool.class.getClassLoader();
+      if (cl instanceof URLClassLoader) {
+        for (URL url : ((URLClassLoader) cl).getURLs()) {
+          if ("file".equals(url.getProtocol())) {
+            ret.add(Paths.get(url.toURI()).toString());
+          }
+        }
+      }
+      if (ret.isEmpty()) {
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+          if (!entry.isEmpty()) {
+            ret.add(entry);
+          }
+        }
+      }
+      URL logLocation = Log.class.getProtectionDomain().getCodeSource().getLocation();
+      ret.add(Paths.get(logLocation.toURI()).toString());
+    } catch (URISyntaxException | NullPointerException ex) {
+      throw new XSpecPluginException("unable to compute forked worker classpath", ex);
+    }
+    return new ArrayList<>(ret);
+  }
+
+  /**
+   * Splits a JVM argument line. Double quotes may be used to protect spaces.
+   */
+  static List<String> splitArgLine(String argLine) {
+    List<String> ret = new ArrayList<>();
+    if (argLine == null) {
+      return ret;
+    }
+    Matcher matcher = ARG_PATTERN.matcher(argLine);
+    while (matcher.find()) {
+      ret.add(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+    }
+    return ret;
+  }
+
+  @Override
+  public Log getLog() {
+    return log;
+  }
+
+  /**
+   * Writes a {@link ForkProtocol#LOG} message to {@code log}
+   */
+  static void forwardLog(Log log, String level, String message) {
+    switch (level) {
+      case ForkProtocol.LEVEL_DEBUG:
+        log.debug(message);
+        break;
+      case ForkProtocol.LEVEL_WARN:
+        log.warn(message);
+        break;
+      case ForkProtocol.LEVEL_ERROR:
+        log.error(message);
+        break;
+      default:
+        log.info(message);
+    }
+  }
+
+  /**
+   * Receives results of XSpecs run by workers. Called from pool threads.
+   */
+  public interface ResultListener {
+    /**
+     * Called once per XSpec
+     * @param xspec The XSpec file
+     * @param processedFile The processed file, or {@code null} if XSpec could not be run
+     * @param succeed {@code true} if XSpec succeed
+     * @param millis XSpec wall time, in milliseconds
+     */
+    void xspecProcessed(File xspec, ProcessedFile processedFile, boolean succeed, long millis);
+  }
+
+  /**
+   * A running worker JVM
+   */
+  private class Worker {
+    private final int slot;
+    private final Process process;
+    private final Writer stdin;
+    private final BufferedReader stdout;
+    private int runCount;
+
+    private Worker(int slot) throws XSpecPluginException {
+      super();
+      this.slot = slot;
+      List<String> command = new ArrayList<>();
+      command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+      command.addAll(splitArgLine(options.forkArgLine));
+      command.add("@" + argFile.getAbsolutePath());
+      command.add(ForkedWorker.class.getName());
+      command.add(configurationFile.getAbsolutePath());
+      getLog().debug("[fork-" + slot + "] starting worker: " + command);
+      try {
+        process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        stdout = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        activeWorkers.add(this);
+        readUntil(ForkProtocol.READY);
+      } catch (IOException ex) {
+        throw new XSpecPluginException("[fork-" + slot + "] unable to start worker", ex);
+      }
+    }
+
+    private String[] run(File xspec) throws IOException {
+      runCount++;
+      stdin.write(xspec.getAbsolutePath());
+      stdin.write('\n');
+      stdin.flush();
+      return readUntil(ForkProtocol.RESULT);
+    }
+
+    /**
+     * Reads worker output, forwarding logs, until a message of {@code type} is received.
+     */
+    private String[] readUntil(String type) throws IOException {
+      String line = stdout.readLine();
+      while (line != null) {
+        if (ForkProtocol.isProtocolLine(line)) {
+          String[] message = ForkProtocol.parse(line);
+          if (type.equals(message[0])) {
+            return message;
+          } else if (ForkProtocol.LOG.equals(message[0]) && message.length == 3) {
+            forwardLog(getLog(), message[1], message[2]);
+          }
+        } else {
+          getLog().info("[fork-" + slot + "] " + line);
+        }
+        line = stdout.readLine();
+      }
+      throw new IOException("worker exited unexpectedly");
+    }
+
+    private void stop() {
+      activeWorkers.remove(this);
+      try {
+        stdin.write(ForkProtocol.EXIT);
+        stdin.write('\n');
+        stdin.close();
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+          kill();
+        }
+      } catch (IOException ex) {
+        kill();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        kill();
+      }
+    }
+
+    private void kill() {
+      activeWorkers.remove(this);
+      process.destroyForcibly();
+    }
+  }
+}
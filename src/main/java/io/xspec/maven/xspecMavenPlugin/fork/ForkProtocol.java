@@ -0,0 +1,135 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.fork;
+
+/**
+ * Line protocol between {@link ForkPool} and {@link ForkedWorker}.
+ * <p>
+ * Parent writes one XSpec absolute path per line on worker's stdin, or {@link #EXIT}.
+ * Worker answers on stdout with lines starting with {@link #PREFIX}: one {@link #READY}
+ * line once initialized, {@link #LOG} lines, and one {@link #RESULT} line per XSpec.
+ * All other lines written to stdout are forwarded to the parent log.
+ * </p>
+ * @author cmarchand
+ */
+public final class ForkProtocol {
+  public static final String PREFIX = "@@xspec-fork@@ ";
+  public static final String READY = "ready";
+  public static final String LOG = "log";
+  public static final String RESULT = "result";
+  public static final String EXIT = PREFIX + "exit";
+
+  public static final String LEVEL_DEBUG = "debug";
+  public static final String LEVEL_INFO = "info";
+  public static final String LEVEL_WARN = "warn";
+  public static final String LEVEL_ERROR = "error";
+
+  /** Result status : XSpec has been run, and all tests passed */
+  public static final String STATUS_SUCCEED = "succeed";
+  /** Result status : XSpec has been run, some tests failed or were missed */
+  public static final String STATUS_FAILED = "failed";
+  /** Result status : XSpec could not be run */
+  public static final String STATUS_ERROR = "error";
+
+  private static final String SEPARATOR = "\t";
+
+  private ForkProtocol() {
+    super();
+  }
+
+  /**
+   * Builds a protocol line
+   * @param type The message type
+   * @param fields The message fields
+   * @return The line to write, without line terminator
+   */
+  public static String line(String type, String... fields) {
+    StringBuilder sb = new StringBuilder(PREFIX).append(type);
+    for (String field : fields) {
+      sb.append(SEPARATOR).append(escape(field));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Says if {@code line} is a protocol line
+   * @param line The line read
+   * @return {@code true} if it starts with {@link #PREFIX}
+   */
+  public static boolean isProtocolLine(String line) {
+    return line.startsWith(PREFIX);
+  }
+
+  /**
+   * Splits a protocol line. First element is message type.
+   * @param line The protocol line
+   * @return The message type, followed by the unescaped fields
+   */
+  public static String[] parse(String line) {
+    String[] ret = line.substring(PREFIX.length()).split(SEPARATOR, -1);
+    for (int i = 1; i < ret.length; i++) {
+      ret[i] = unescape(ret[i]);
+    }
+    return ret;
+  }
+
+  static String escape(String value) {
+    if (value == null) {
+      return "";
+    }
+    StringBuilder sb = new StringBuilder(value.length());
+    for (char c : value.toCharArray()) {
+      switch (c) {
+        case '\\': sb.append("\\\\"); break;
+        case '\n': sb.append("\\n"); break;
+        case '\r': sb.append("\\r"); break;
+        case '\t': sb.append("\\t"); break;
+        default: sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  static String unescape(String value) {
+    StringBuilder sb = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '\\' && i + 1 < value.length()) {
+        char next = value.charAt(++i);
+        switch (next) {
+          case 'n': sb.append('\n'); break;
+          case 'r': sb.append('\r'); break;
+          case 't': sb.append('\t'); break;
+          default: sb.append(next);
+        }
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.fork;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * A Log used in forked workers, that sends all log entries to parent process
+ * as {@link ForkProtocol#LOG} lines.
+ * @author cmarchand
+ */
+class ForkedLog implements Log {
+  private volatile PrintStream out;
+  private final boolean debugEnabled;
+
+  ForkedLog(PrintStream out, boolean debugEnabled) {
+    super();
+    this.out = out;
+    this.debugEnabled = debugEnabled;
+  }
+
+  /**
+   * Changes the stream log entries are sent to. A daemon sends them to the build
+   * it is running XSpecs for.
+   * @param out The stream to write to
+   */
+  void setOut(PrintStream out) {
+    this.out = out;
+  }
+
+  private void log(String level, CharSequence content, Throwable error) {
+    StringBuilder sb = new StringBuilder();
+    if (content != null) {
+      sb.append(content);
+    }
+    if (error != null) {
+      StringWriter sw = new StringWriter();
+      error.printStackTrace(new PrintWriter(sw));
+      if (sb.length() > 0) {
+        sb.append('\n');
+      }
+      sb.append(sw.toString());
+    }
+    PrintStream current = out;
+    synchronized (current) {
+      current.println(ForkProtocol.line(ForkProtocol.LOG, level, sb.toString()));
+      current.flush();
+    }
+  }
+
+  @Override
+  public boolean isDebugEnabled() {
+    return debugEnabled;
+  }
+
+  @Override
+  public void debug(CharSequence content) {
+    if (debugEnabled) {
+      log(ForkProtocol.LEVEL_DEBUG, content, null);
+    }
+  }
+
+  @Override
+  public void debug(CharSequence content, Throwable error) {
+    if (debugEnabled) {
+      log(ForkProtocol.LEVEL_DEBUG, content, error);
+    }
+  }
+
+  @Override
+  public void debug(Throwable error) {
+    if (debugEnabled) {
+      log(ForkProtocol.LEVEL_DEBUG, null, error);
+    }
+  }
+
+  @Override
+  public boolean isInfoEnabled() {
+    return true;
+  }
+
+  @Override
+  public void info(CharSequence content) {
+    log(ForkProtocol.LEVEL_INFO, content, null);
+  }
+
+  @Override
+  public void info(CharSequence content, Throwable error) {
+    log(ForkProtocol.LEVEL_INFO, content, error);
+  }
+
+  @Override
+  public void info(Throwable error) {
+    log(ForkProtocol.LEVEL_INFO, null, error);
+  }
+
+  @Override
+  public boolean isWarnEnabled() {
+    return true;
+  }
+
+  @Override
+  public void warn(CharSequence content) {
+    log(ForkProtocol.LEVEL_WARN, content, null);
+  }
+
+  @Override
+  public void warn(CharSequence content, Throwable error) {
+    log(ForkProtocol.LEVEL_WARN, content, error);
+  }
+
+  @Override
+  public void warn(Throwable error) {
+    log(ForkProtocol.LEVEL_WARN, null, error);
+  }
+
+  @Override
+  public boolean isErrorEnabled() {
+    return true;
+  }
+
+  @Override
+  public void error(CharSequence content) {
+    log(ForkProtocol.LEVEL_ERROR, content, null);
+  }
+
+  @Override
+  public void error(CharSequence content, Throwable error) {
+    log(ForkProtocol.LEVEL_ERROR, content, error);
+  }
+
+  @Override
+  public void error(Throwable error) {
+    log(ForkProtocol.LEVEL_ERROR, null, error);
+  }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.fork;
+
+import io.xspec.maven.xspecMavenPlugin.XSpecRunner;
+import io.xspec.maven.xspecMavenPlugin.utils.ProcessedFile;
+import io.xspec.maven.xspecMavenPlugin.utils.RunnerOptions;
+import io.xspec.maven.xspecMavenPlugin.utils.XSpecPluginException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Main class of forked worker JVMs.
+ * <p>
+ * A worker builds its own {@link XSpecRunner} once, from the {@link ForkConfiguration}
+ * file given as first argument, then runs XSpecs received on stdin, until stdin is
+ * closed or {@link ForkProtocol#EXIT} is received. See {@link ForkProtocol}.
+ * </p>
+ * @author cmarchand
+ */
+public class ForkedWorker {
+
+  private ForkedWorker() {
+    super();
+  }
+
+  public static void main(String[] args) {
+    PrintStream out = new PrintStream(System.out, true, StandardCharsets.UTF_8);
+    int status = 0;
+    try {
+      ForkConfiguration configuration = ForkConfiguration.load(new File(args[0]));
+      XSpecRunner runner = createRunner(configuration, new ForkedLog(out, configuration.isDebug()));
+      serve(runner, new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), out);
+    } catch (IOException | XSpecPluginException | RuntimeException ex) {
+      ex.printStackTrace(out);
+      status = 1;
+    }
+    out.flush();
+    // Saxon or SUT extension functions may have started non daemon threads
+    System.exit(status);
+  }
+
+  /**
+   * Creates and initializes the runner of a worker or a daemon
+   * @param configuration The worker configuration
+   * @param log The log, that sends entries to parent process
+   * @return The runner, ready to run XSpecs
+   * @throws XSpecPluginException If runner can not be initialized
+   */
+  static XSpecRunner createRunner(ForkConfiguration configuration, ForkedLog log) throws XSpecPluginException {
+    RunnerOptions options = configuration.getRunnerOptions();
+    // a worker runs one XSpec at a time, and never forks
+    options.threads = 1;
+    options.forkCount = 0;
+    options.daemon = false;
+    XSpecRunner runner = new XSpecRunner(log, configuration.getBaseDir());
+    runner.setResources(
+        configuration.getXSpecResources(),
+        configuration.getSchematronResources(),
+        configuration.getPluginResources());
+    runner.setEnvironment(configuration.getEnvironment(), options);
+    runner.init(configuration.getSaxonOptions());
+    return runner;
+  }
+
+  /**
+   * Sends {@link ForkProtocol#READY}, then runs XSpecs read from {@code in}, until
+   * {@code in} is closed or {@link ForkProtocol#EXIT} is received.
+   * @param runner The initialized runner
+   * @param in Where XSpecs are read from
+   * @param out Where results are written to
+   * @throws IOException If {@code in} can not be read
+   */
+  static void serve(XSpecRunner runner, BufferedReader in, PrintStream out) throws IOException {
+    synchronized (out) {
+      out.println(ForkProtocol.line(ForkProtocol.READY));
+      out.flush();
+    }
+    String line = in.readLine();
+    while (line != null && !ForkProtocol.EXIT.equals(line)) {
+      if (!line.isEmpty()) {
+        String result = runXSpec(runner, new File(line));
+        synchronized (out) {
+          out.println(result);
+          out.flush();
+        }
+      }
+      line = in.readLine();
+    }
+  }
+
+  private static String runXSpec(XSpecRunner runner, File xspec) {
+    ProcessedFile pf = runner.processSingleXSpec(xspec);
+    if (pf == null) {
+      return ForkProtocol.line(ForkProtocol.RESULT, ForkProtocol.STATUS_ERROR, xspec.getAbsolutePath());
+    }
+    boolean succeed = pf.getFailed() + pf.getMissed() == 0;
+    return ForkProtocol.line(
+        ForkProtocol.RESULT,
+        succeed ? ForkProtocol.STATUS_SUCCEED : ForkProtocol.STATUS_FAILED,
+        pf.getSourceFile().toString(),
+        pf.getReportFile().toString(),
+        pf.getCoverageFile() == null ? "" : pf.getCoverageFile().toString(),
+        Integer.toString(pf.getPassed()),
+        Integer.toString(pf.getPending()),
+        Integer.toString(pf.getFailed()),
+        Integer.toString(pf.getMissed()),
+        Integer.toString(pf.getTotal()),
+        pf.getDependencies() == null ? "" : String.join("\n", pf.getDependencies()));
+  }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.fork;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Encodes simple option beans (RunnerOptions, SaxonOptions) to Properties, and back.
+ * <p>
+ * All non static, non transient fields are written, whatever their visibility.
+ * Supported field types are {@code String}, {@code File}, booleans, ints, longs,
+ * and {@code List<String>}. Fields of other types are ignored.
+ * </p>
+ * @author cmarchand
+ */
+public class OptionsCodec {
+
+  private OptionsCodec() {
+    super();
+  }
+
+  /**
+   * Writes all fields of {@code bean} to {@code props}, each key being prefixed by {@code prefix}.
+   * Fields with a {@code null} value are not written.
+   * @param bean The bean to encode. If {@code null}, nothing is written.
+   * @param props The properties to write to
+   * @param prefix The key prefix
+   */
+  public static void encode(Object bean, Properties props, String prefix) {
+    if (bean == null) {
+      return;
+    }
+    for (Field field : getFields(bean.getClass())) {
+      try {
+        Object value = field.get(bean);
+        if (value == null) {
+          continue;
+        }
+        String key = prefix + field.getName();
+        if (value instanceof List) {
+          List<?> list = (List<?>) value;
+          props.setProperty(key + ".size", Integer.toString(list.size()));
+          for (int i = 0; i < list.size(); i++) {
+            props.setProperty(key + "." + i, String.valueOf(list.get(i)));
+          }
+        } else if (value instanceof File) {
+          props.setProperty(key, ((File) value).getAbsolutePath());
+        } else {
+          props.setProperty(key, value.toString());
+        }
+      } catch (IllegalAccessException ex) {
+        // can not happen, field is accessible
+      }
+    }
+  }
+
+  /**
+   * Sets all fields of {@code bean} found in {@code props}.
+   * @param bean The bean to fill
+   * @param props The properties to read from
+   * @param prefix The key prefix
+   * @param <T> The bean type
+   * @return The bean, to chain calls
+   */
+  public static <T> T decode(T bean, Properties props, String prefix) {
+    for (Field field : getFields(bean.getClass())) {
+      String key = prefix + field.getName();
+      Class<?> type = field.getType();
+      try {
+        if (List.class.isAssignableFrom(type)) {
+          String size = props.getProperty(key + ".size");
+          if (size != null && isStringList(field)) {
+            List<String> list = new ArrayList<>();
+            for (int i = 0; i < Integer.parseInt(size); i++) {
+              list.add(props.getProperty(key + "." + i));
+            }
+            field.set(bean, list);
+          }
+          continue;
+        }
+        String value = props.getProperty(key);
+        if (value == null) {
+          continue;
+        }
+        if (type == String.class) {
+          field.set(bean, value);
+        } else if (type == File.class) {
+          field.set(bean, new File(value));
+        } else if (type == Boolean.class || type == boolean.class) {
+          field.set(bean, Boolean.valueOf(value));
+        } else if (type == Integer.class || type == int.class) {
+          field.set(bean, Integer.valueOf(value));
+        } else if (type == Long.class || type == long.class) {
+          field.set(bean, Long.valueOf(value));
+        }
+      } catch (IllegalAccessException ex) {
+        // can not happen, field is accessible
+      }
+    }
+    return bean;
+  }
+
+  private static List<Field> getFields(Class<?> clazz) {
+    List<Field> ret = new ArrayList<>();
+    for (Field field : clazz.getDeclaredFields()) {
+      int modifiers = field.getModifiers();
+      if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || Modifier.isFinal(modifiers)) {
+        continue;
+      }
+      Class<?> type = field.getType();
+      if (type == String.class || type == File.class || List.class.isAssignableFrom(type)
+          || type == Boolean.class || type == boolean.class
+          || type == Integer.class || type == int.class
+          || type == Long.class || type == long.class) {
+        field.setAccessible(true);
+        ret.add(field);
+      }
+    }
+    return ret;
+  }
+
+  private static boolean isStringList(Field field) {
+    if (field.getGenericType() instanceof ParameterizedType) {
+      ParameterizedType type = (ParameterizedType) field.getGenericType();
+      return type.getActualTypeArguments().length == 1
+          && type.getActualTypeArguments()[0] == String.class;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.fork;
+
+import io.xspec.maven.xspecMavenPlugin.XSpecRunner;
+import io.xspec.maven.xspecMavenPlugin.utils.XSpecPluginException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Main class of daemon JVMs.
+ * <p>
+ * A daemon builds its own {@link XSpecRunner} once, from the {@link ForkConfiguration}
+ * file given as first argument, then listens on a loopback port. Port and an access
+ * token are written to the state file given as second argument, that only the owner
+ * can read : anyone who can read it can run XSpecs as this user. Each connection is a
+ * build : it starts with the token, then follows {@link ForkProtocol}, as a
+ * {@link ForkedWorker} does on stdin and stdout. Builds are served one after the other.
+ * </p>
+ * <p>
+ * Daemon exits when no build has connected for the number of minutes given as third
+ * argument.
+ * </p>
+ * @author cmarchand
+ */
+public class XSpecDaemon {
+  static final String KEY_PORT = "port";
+  static final String KEY_TOKEN = "token";
+  private static final Set<PosixFilePermission> OWNER_ONLY_DIRECTORY = PosixFilePermissions.fromString("rwx------");
+  private static final Set<PosixFilePermission> OWNER_ONLY_FILE = PosixFilePermissions.fromString("rw-------");
+
+  private XSpecDaemon() {
+    super();
+  }
+
+  public static void main(String[] args) {
+    PrintStream console = new PrintStream(System.out, true, StandardCharsets.UTF_8);
+    File stateFile = new File(args[1]);
+    int status = 0;
+    try {
+      ForkConfiguration configuration = ForkConfiguration.load(new File(args[0]));
+      long idleTimeout = TimeUnit.MINUTES.toMillis(Integer.parseInt(args[2]));
+      ForkedLog log = new ForkedLog(console, configuration.isDebug());
+      XSpecRunner runner = ForkedWorker.createRunner(configuration, log);
+      String token = UUID.randomUUID().toString();
+      try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+        server.setSoTimeout((int) Math.min(Integer.MAX_VALUE, Math.max(1, idleTimeout)));
+        writeState(stateFile, server.getLocalPort(), token);
+        console.println("XSpec daemon listening on port " + server.getLocalPort());
+        boolean idle = false;
+        while (!idle) {
+          try (Socket socket = server.accept()) {
+            serveBuild(socket, runner, log, token);
+          } catch (SocketTimeoutException ex) {
+            console.println("No build since " + args[2] + " minutes, exiting");
+            idle = true;
+          } catch (IOException ex) {
+            // build has gone, wait for the next one
+            ex.printStackTrace(console);
+          } finally {
+            log.setOut(console);
+          }
+        }
+      }
+    } catch (IOException | XSpecPluginException | RuntimeException ex) {
+      ex.printStackTrace(console);
+      status = 1;
+    } finally {
+      stateFile.delete();
+    }
+    console.flush();
+    // Saxon or SUT extension functions may have started non daemon threads
+    System.exit(status);
+  }
+
+  /**
+   * Runs the XSpecs of one build. Logs are sent to this build while it is connected.
+   */
+  private static void serveBuild(Socket socket, XSpecRunner runner, ForkedLog log, String token) throws IOException {
+    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    PrintStream out = new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+    if (!token.equals(in.readLine())) {
+      return;
+    }
+    log.setOut(out);
+    ForkedWorker.serve(runner, in, out);
+  }
+
+  /**
+   * Writes port and token. State file is written at once, so that a build never reads
+   * a partial one.
+   */
+  static void writeState(File stateFile, int port, String token) throws IOException {
+    Properties props = new Properties();
+    props.setProperty(KEY_PORT, Integer.toString(port));
+    props.setProperty(KEY_TOKEN, token);
+    createPrivateDirectory(stateFile.getParentFile());
+    Path tmp = new File(stateFile.getParentFile(), stateFile.getName() + ".tmp").toPath();
+    Files.deleteIfExists(tmp);
+    if (isPosix()) {
+      // token must not be readable by other users, even for a moment
+      Files.createFile(tmp, PosixFilePermissions.asFileAttribute(OWNER_ONLY_FILE));
+    }
+    try (OutputStream os = Files.newOutputStream(tmp)) {
+      props.store(os, "xspec-maven-plugin daemon");
+    }
+    Files.move(tmp, stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Creates a directory only its owner can access, if file system supports POSIX
+   * permissions. Permissions of an existing directory are restricted too.
+   * @param dir The directory
+   * @throws IOException If directory can not be created, or its permissions can not be set
+   */
+  static void createPrivateDirectory(File dir) throws IOException {
+    Path path = dir.toPath();
+    if (!isPosix()) {
+      Files.createDirectories(path);
+      return;
+    }
+    Files.createDirectories(path, PosixFilePermissions.asFileAttribute(OWNER_ONLY_DIRECTORY));
+    // umask may have widened permissions, and directory may exist
+    Files.setPosixFilePermissions(path, OWNER_ONLY_DIRECTORY);
+  }
+
+  private static boolean isPosix() {
+    return FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+  }
+
+  /**
+   * Reads the state file of a daemon
+   * @param stateFile The state file
+   * @return Port and token, or {@code null} if there is no running daemon
+   */
+  static Properties readState(File stateFile) {
+    if (!stateFile.isFile()) {
+      return null;
+    }
+    Properties props = new Properties();
+    try (InputStream is = Files.newInputStream(stateFile.toPath())) {
+      props.load(is);
+    } catch (IOException ex) {
+      return null;
+    }
+    return props.containsKey(KEY_PORT) && props.containsKey(KEY_TOKEN) ? props : null;
+  }
+}
@@ -2,25 +2,33 @@ package io.xspec.maven.xspecMavenPlugin.resolver;
 
 import net.sf.saxon.Configuration;
 import net.sf.saxon.lib.*;
+import net.sf.saxon.s9api.XdmNode;
 import net.sf.saxon.trans.XPathException;
 import org.apache.maven.plugin.logging.Log;
 import org.xmlresolver.ResolverFeature;
 
 import javax.xml.transform.Source;
 import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.Collections;
+import java.util.Map;
 import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class XSpecResourceResolver implements ResourceResolver {
   private final CpResolver first;
   private final CatalogResourceResolver second;
   private final ResourceResolver third;
   private final Log logger;
+  // documents built in memory, by system ID
+  private final Map<String, Registration> documents;
 
   //private final ChainedResourceResolver chainedResourceResolver;
 
   public XSpecResourceResolver(Configuration configuration, File catalog, Log logger) {
     this.logger=logger;
+    documents = new ConcurrentHashMap<>();
     first = new CpResolver(logger);
     second = new CatalogResourceResolver();
     second.setFeature(
@@ -34,6 +42,11 @@ public class XSpecResourceResolver implements ResourceResolver {
   @Override
   public Source resolve(ResourceRequest resourceRequest) throws XPathException {
     logger.debug("resolve("+toString(resourceRequest)+")");
+    XdmNode document = findDocument(resourceRequest);
+    if (document != null) {
+      logger.debug("   resolved in memory -> "+document.getUnderlyingNode().getSystemId());
+      return document.asSource();
+    }
     Source ret = first.resolve(resourceRequest);
     if (ret != null) {
       logger.debug("   resolved by CP -> "+ret.getSystemId());
@@ -56,6 +69,67 @@ public class XSpecResourceResolver implements ResourceResolver {
     return null;
   }
 
+  /**
+   * Registers a document built in memory. It is then resolved from its system ID, as
+   * if it had been written there.
+   * @param document The document, with an absolute system ID
+   */
+  public void registerDocument(XdmNode document) {
+    documents.compute(
+        normalize(document.getUnderlyingNode().getSystemId()),
+        (systemId, registration) -> new Registration(document, registration == null ? 1 : registration.count + 1));
+  }
+
+  /**
+   * Unregisters a document built in memory. A document registered several times is
+   * resolved from memory until it has been unregistered as many times.
+   * @param document The document, as registered
+   */
+  public void unregisterDocument(XdmNode document) {
+    documents.computeIfPresent(
+        normalize(document.getUnderlyingNode().getSystemId()),
+        (systemId, registration) -> registration.count <= 1 ? null : new Registration(registration.document, registration.count - 1));
+  }
+
+  /**
+   * Returns the number of documents registered in memory
+   * @return The number of documents
+   */
+  public int getDocumentCount() {
+    return documents.size();
+  }
+
+  private XdmNode findDocument(ResourceRequest resourceRequest) {
+    if (documents.isEmpty() || resourceRequest.uri == null) {
+      return null;
+    }
+    String uri = resourceRequest.uri;
+    try {
+      if (resourceRequest.baseUri != null && !new URI(uri).isAbsolute()) {
+        uri = new URI(resourceRequest.baseUri).resolve(uri).toString();
+      }
+    } catch (URISyntaxException | IllegalArgumentException ex) {
+      return null;
+    }
+    Registration registration = documents.get(normalize(uri));
+    return registration == null ? null : registration.document;
+  }
+
+  /**
+   * Normalizes a URI, so that {@code file:/a} and {@code file:///a} are equal
+   */
+  private static String normalize(String uri) {
+    try {
+      URI ret = new URI(uri).normalize();
+      if ("file".equals(ret.getScheme())) {
+        return new File(ret).toURI().toString();
+      }
+      return ret.toString();
+    } catch (URISyntaxException | IllegalArgumentException ex) {
+      return uri;
+    }
+  }
+
   private String toString(ResourceRequest resourceRequest) {
     StringJoiner j = new StringJoiner(",","{","}");
     if(resourceRequest.uri!=null) j.add("uri: " + resourceRequest.uri);
@@ -68,6 +142,16 @@ public class XSpecResourceResolver implements ResourceResolver {
     return j.toString();
   }
 
+  private static class Registration {
+    private final XdmNode document;
+    private final int count;
+
+    private Registration(XdmNode document, int count) {
+      this.document = document;
+      this.count = count;
+    }
+  }
+
   public static ResourceRequest buildRequest(String href, String base) {
     ResourceRequest resourceRequest = new ResourceRequest();
     resourceRequest.uri = href;
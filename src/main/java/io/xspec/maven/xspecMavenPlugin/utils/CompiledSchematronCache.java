@@ -0,0 +1,230 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.Serializer;
+import net.sf.saxon.s9api.XdmNode;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A cache of compiled Schematrons, shared by all XSpecs of a run, and optionally
+ * kept on disk across runs.
+ * <p>
+ * Entries are identified by a key, computed from the schema, its includes and the
+ * Schematron implementation. Each key has a single location, which is the system ID
+ * of the compiled Schematron ; it is a file of the disk cache, or a location that is
+ * never written when there is no disk cache.
+ * </p>
+ * <p>
+ * When several XSpecs require the same Schematron concurrently, it is compiled once,
+ * other XSpecs wait for it.
+ * </p>
+ * <p>
+ * The number of entries in memory is bounded, as a long-lived runner (daemon, watch
+ * mode) gets a new key at each schema change ; oldest entries are dropped first.
+ * </p>
+ * @author cmarchand
+ */
+public class CompiledSchematronCache {
+  private final Processor processor;
+  private final File cacheDir;
+  private final File memoryDir;
+  private final Log log;
+  private final ConcurrentHashMap<String, CompletableFuture<XdmNode>> entries;
+  private final Queue<String> keys = new ConcurrentLinkedQueue<>();
+  static final int MAX_ENTRIES = 64;
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger misses = new AtomicInteger();
+
+  /**
+   * Creates a cache
+   * @param processor Processor used to read and write cache files
+   * @param cacheDir Directory where compiled Schematrons are kept across runs, or
+   * {@code null} to keep them only in memory
+   * @param memoryDir Directory used to build locations when there is no disk cache
+   * @param log Log
+   */
+  public CompiledSchematronCache(Processor processor, File cacheDir, File memoryDir, Log log) {
+    super();
+    this.processor = processor;
+    this.cacheDir = cacheDir;
+    this.memoryDir = memoryDir;
+    this.log = log;
+    this.entries = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns the location of a compiled Schematron. It is the system ID of the compiled
+   * Schematron, and a file only if there is a disk cache.
+   * @param key The entry key
+   * @return The compiled Schematron location
+   */
+  public File getLocation(String key) {
+    return new File(cacheDir != null ? cacheDir : memoryDir, key + ".xslt");
+  }
+
+  /**
+   * Returns a compiled Schematron. It is read from memory, then from disk, and is
+   * compiled if it is not found.
+   * @param key The entry key
+   * @param compilation Compiles the Schematron, with {@link #getLocation(String)} as
+   * system ID
+   * @return The compiled Schematron
+   * @throws SaxonApiException If Schematron can not be compiled
+   */
+  public XdmNode get(String key, Compilation compilation) throws SaxonApiException {
+    CompletableFuture<XdmNode> entry = new CompletableFuture<>();
+    CompletableFuture<XdmNode> existing = entries.putIfAbsent(key, entry);
+    if (existing != null) {
+      hits.incrementAndGet();
+      return waitFor(existing);
+    }
+    keys.add(key);
+    while (keys.size() > MAX_ENTRIES) {
+      String oldest = keys.poll();
+      if (oldest != null) {
+        entries.remove(oldest);
+      }
+    }
+    try {
+      XdmNode ret = load(key);
+      if (ret == null) {
+        misses.incrementAndGet();
+        ret = compilation.compile(getLocation(key));
+        store(key, ret);
+      } else {
+        hits.incrementAndGet();
+      }
+      entry.complete(ret);
+      return ret;
+    } catch (SaxonApiException | RuntimeException ex) {
+      // failure is not kept, next XSpec will try again
+      entries.remove(key, entry);
+      entry.completeExceptionally(ex);
+      throw ex;
+    }
+  }
+
+  private XdmNode waitFor(CompletableFuture<XdmNode> entry) throws SaxonApiException {
+    try {
+      return entry.get();
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof SaxonApiException) {
+        throw (SaxonApiException) ex.getCause();
+      }
+      throw new SaxonApiException(ex.getCause());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new SaxonApiException("interrupted while waiting for Schematron compilation", ex);
+    }
+  }
+
+  private XdmNode load(String key) {
+    File file = getLocation(key);
+    if (cacheDir == null || !file.isFile()) {
+      return null;
+    }
+    try {
+      XdmNode ret = processor.newDocumentBuilder().build(file);
+      log.debug("Using cached compiled Schematron " + file.getAbsolutePath());
+      return ret;
+    } catch (SaxonApiException ex) {
+      log.debug("unable to read " + file.getAbsolutePath() + ", Schematron will be compiled again", ex);
+      return null;
+    }
+  }
+
+  /**
+   * Writes a compiled Schematron to disk cache. Errors are only logged, as this is only
+   * an optimization.
+   */
+  private void store(String key, XdmNode compiledSchematron) {
+    if (cacheDir == null) {
+      return;
+    }
+    File file = getLocation(key);
+    try {
+      cacheDir.mkdirs();
+      File tmp = File.createTempFile(key, ".tmp", cacheDir);
+      try {
+        Serializer serializer = processor.newSerializer(tmp);
+        processor.writeXdmValue(compiledSchematron, serializer);
+        serializer.close();
+      } catch (SaxonApiException | RuntimeException ex) {
+        Files.deleteIfExists(tmp.toPath());
+        throw ex;
+      }
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException | SaxonApiException | RuntimeException ex) {
+      log.debug("unable to write " + file.getAbsolutePath(), ex);
+    }
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  public File getCacheDir() {
+    return cacheDir;
+  }
+
+  /**
+   * Returns the number of compiled Schematrons found in memory or on disk
+   * @return The number of cache hits
+   */
+  public int getHits() {
+    return hits.get();
+  }
+
+  /**
+   * Returns the number of Schematrons that have been compiled
+   * @return The number of cache misses
+   */
+  public int getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Compiles a Schematron
+   */
+  @FunctionalInterface
+  public interface Compilation {
+    XdmNode compile(File location) throws SaxonApiException;
+  }
+}
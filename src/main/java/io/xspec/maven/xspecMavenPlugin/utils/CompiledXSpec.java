@@ -27,6 +27,9 @@
 package io.xspec.maven.xspecMavenPlugin.utils;
 
 import java.io.File;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import net.sf.saxon.s9api.XdmNode;
 
 /**
  * Simple class holding the results of compiling an XSpec
@@ -38,11 +41,25 @@ public class CompiledXSpec {
     private final int tests;
     private final int pendingTests;
     private final File compiledStylesheet;
+    private final XdmNode compiledTree;
 
     public CompiledXSpec(final int tests, final int pendingTests, final File compiledStylesheet) {
+        this(tests, pendingTests, compiledStylesheet, null);
+    }
+
+    /**
+     * Creates a compiled XSpec that is held in memory
+     * @param tests The number of tests
+     * @param pendingTests The number of pending tests
+     * @param compiledStylesheet The compiled XSpec location. File may not exist, it is
+     * the base URI of {@code compiledTree}
+     * @param compiledTree The compiled XSpec
+     */
+    public CompiledXSpec(final int tests, final int pendingTests, final File compiledStylesheet, final XdmNode compiledTree) {
         this.tests = tests;
         this.pendingTests = pendingTests;
         this.compiledStylesheet = compiledStylesheet;
+        this.compiledTree = compiledTree;
     }
 
     /**
@@ -72,4 +89,22 @@ public class CompiledXSpec {
     public File getCompiledStylesheet() {
         return compiledStylesheet;
     }
+
+    /**
+     * The compiled XSpec, if it is held in memory
+     *
+     * @return The compiled XSpec tree, or {@code null} if it is only on disk
+     */
+    public XdmNode getCompiledTree() {
+        return compiledTree;
+    }
+
+    /**
+     * The compiled XSpec as a source, read from memory if possible, from disk otherwise
+     *
+     * @return The compiled XSpec source
+     */
+    public Source getCompiledSource() {
+        return compiledTree != null ? compiledTree.asSource() : new StreamSource(compiledStylesheet);
+    }
 }
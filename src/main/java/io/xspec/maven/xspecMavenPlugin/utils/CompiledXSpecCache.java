@@ -0,0 +1,193 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An on-disk cache of compiled XSpecs, shared by all builds of a project.
+ * <p>
+ * Entries are identified by a hash of everything the compiled stylesheet depends on
+ * (see {@link #computeKey(File, Iterable, String)}). An entry is made of the compiled
+ * stylesheet, {@code <key>.xsl}, and of the tests counts, {@code <key>.properties}.
+ * Entries are written to temporary files, then moved, so that concurrent builds and
+ * threads never read a partial entry.
+ * </p>
+ * @author cmarchand
+ */
+public class CompiledXSpecCache {
+  private static final String TESTS = "tests";
+  private static final String PENDING_TESTS = "pendingTests";
+  private final File cacheDir;
+  private final String implementationFingerprint;
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger misses = new AtomicInteger();
+
+  /**
+   * Creates a cache
+   * @param cacheDir The cache directory
+   * @param implementationFingerprint Identifies XSpec implementation and Saxon version :
+   * an entry is never reused if they change
+   */
+  public CompiledXSpecCache(File cacheDir, String implementationFingerprint) {
+    super();
+    this.cacheDir = cacheDir;
+    this.implementationFingerprint = implementationFingerprint;
+  }
+
+  /**
+   * Computes the key of a compiled XSpec
+   * @param xspec The XSpec file
+   * @param importedSystemIds System IDs of XSpecs imported, directly or not, by {@code xspec}
+   * @param compilerUri The URI of the XSpec compiler used
+   * @return The key
+   * @throws IOException If a file can not be read
+   */
+  public String computeKey(File xspec, Iterable<String> importedSystemIds, String compilerUri) throws IOException {
+    ContentHasher hasher = new ContentHasher()
+        .add(implementationFingerprint)
+        .add(compilerUri)
+        .add(xspec);
+    return computeKey(hasher, importedSystemIds);
+  }
+
+  /**
+   * Computes the key of a compiled XSpec that has been generated in memory, as XSpecs
+   * on Schematron
+   * @param xspecUri The XSpec system ID
+   * @param xspecContent The serialized XSpec
+   * @param importedSystemIds System IDs of XSpecs imported, directly or not, by the XSpec
+   * @param compilerUri The URI of the XSpec compiler used
+   * @return The key
+   * @throws IOException If a file can not be read
+   */
+  public String computeKey(String xspecUri, String xspecContent, Iterable<String> importedSystemIds, String compilerUri) throws IOException {
+    ContentHasher hasher = new ContentHasher()
+        .add(implementationFingerprint)
+        .add(compilerUri)
+        .add(xspecUri)
+        .add(xspecContent);
+    return computeKey(hasher, importedSystemIds);
+  }
+
+  private String computeKey(ContentHasher hasher, Iterable<String> importedSystemIds) throws IOException {
+    for (String systemId : importedSystemIds) {
+      hasher.addSystemId(systemId);
+    }
+    return hasher.getHash();
+  }
+
+  /**
+   * Gets a compiled XSpec from cache.
+   * @param key The entry key
+   * @param target Where the compiled stylesheet is copied to
+   * @return The compiled XSpec, or {@code null} if cache does not contain it
+   * @throws IOException In case of I/O error
+   */
+  public CompiledXSpec get(String key, File target) throws IOException {
+    File stylesheet = getStylesheetFile(key);
+    File counts = getCountsFile(key);
+    if (!stylesheet.isFile() || !counts.isFile()) {
+      misses.incrementAndGet();
+      return null;
+    }
+    Properties props = new Properties();
+    try (InputStream is = Files.newInputStream(counts.toPath())) {
+      props.load(is);
+    }
+    try {
+      int tests = Integer.parseInt(props.getProperty(TESTS));
+      int pendingTests = Integer.parseInt(props.getProperty(PENDING_TESTS));
+      target.getParentFile().mkdirs();
+      Files.copy(stylesheet.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      hits.incrementAndGet();
+      return new CompiledXSpec(tests, pendingTests, target);
+    } catch (NumberFormatException ex) {
+      // corrupted entry, it will be overwritten
+      misses.incrementAndGet();
+      return null;
+    }
+  }
+
+  /**
+   * Puts a compiled XSpec into cache
+   * @param key The entry key
+   * @param compiledXSpec The compiled XSpec
+   * @throws IOException In case of I/O error
+   */
+  public void put(String key, CompiledXSpec compiledXSpec) throws IOException {
+    cacheDir.mkdirs();
+    File stylesheet = getStylesheetFile(key);
+    File tmpStylesheet = File.createTempFile(key, ".tmp", cacheDir);
+    Files.copy(compiledXSpec.getCompiledStylesheet().toPath(), tmpStylesheet.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    Files.move(tmpStylesheet.toPath(), stylesheet.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    // counts are written last : an entry is complete when its counts file exists
+    Properties props = new Properties();
+    props.setProperty(TESTS, Integer.toString(compiledXSpec.getTests()));
+    props.setProperty(PENDING_TESTS, Integer.toString(compiledXSpec.getPendingTests()));
+    File tmpCounts = File.createTempFile(key, ".tmp", cacheDir);
+    try (OutputStream os = Files.newOutputStream(tmpCounts.toPath())) {
+      props.store(os, null);
+    }
+    Files.move(tmpCounts.toPath(), getCountsFile(key).toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  public File getCacheDir() {
+    return cacheDir;
+  }
+
+  /**
+   * Returns the number of compiled XSpecs read from cache
+   * @return The number of cache hits
+   */
+  public int getHits() {
+    return hits.get();
+  }
+
+  /**
+   * Returns the number of compiled XSpecs not found in cache
+   * @return The number of cache misses
+   */
+  public int getMisses() {
+    return misses.get();
+  }
+
+  private File getStylesheetFile(String key) {
+    return new File(cacheDir, key + ".xsl");
+  }
+
+  private File getCountsFile(String key) {
+    return new File(cacheDir, key + ".properties");
+  }
+}
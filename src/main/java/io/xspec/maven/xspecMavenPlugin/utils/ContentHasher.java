@@ -0,0 +1,153 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes a SHA-256 hash of strings and files contents, to build cache keys.
+ * <p>
+ * Each value is prefixed with its length, so that {@code ("ab","c")} and
+ * {@code ("a","bc")} do not give the same hash.
+ * </p>
+ * @author cmarchand
+ */
+public class ContentHasher {
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+  private final MessageDigest digest;
+
+  public ContentHasher() {
+    super();
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException ex) {
+      // SHA-256 is required on all Java platforms
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  /**
+   * Adds a string
+   * @param value The string to add. {@code null} is allowed.
+   * @return This instance, to chain calls
+   */
+  public ContentHasher add(String value) {
+    if (value == null) {
+      addLength(-1);
+    } else {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      addLength(bytes.length);
+      digest.update(bytes);
+    }
+    return this;
+  }
+
+  /**
+   * Adds a file path and its content. A file that does not exist is hashed as
+   * an empty content, with a marker.
+   * @param file The file to add
+   * @return This instance, to chain calls
+   * @throws IOException If file can not be read
+   */
+  public ContentHasher add(File file) throws IOException {
+    add(file.getAbsolutePath());
+    if (!file.isFile()) {
+      addLength(-1);
+      return this;
+    }
+    try (InputStream is = Files.newInputStream(file.toPath())) {
+      return add(is);
+    }
+  }
+
+  /**
+   * Adds the content of a stream. Stream is read until its end, but not closed.
+   * @param is The stream to read
+   * @return This instance, to chain calls
+   * @throws IOException If stream can not be read
+   */
+  public ContentHasher add(InputStream is) throws IOException {
+    byte[] buffer = new byte[8192];
+    long length = 0;
+    int read = is.read(buffer);
+    while (read >= 0) {
+      digest.update(buffer, 0, read);
+      length += read;
+      read = is.read(buffer);
+    }
+    // length is written after content, as it is not known before
+    addLength(length);
+    return this;
+  }
+
+  /**
+   * Adds a resource identified by a system ID. File resources are added with their
+   * content, others only with their system ID.
+   * @param systemId The resource system ID
+   * @return This instance, to chain calls
+   * @throws IOException If file can not be read
+   */
+  public ContentHasher addSystemId(String systemId) throws IOException {
+    try {
+      URI uri = new URI(systemId);
+      if ("file".equals(uri.getScheme())) {
+        return add(new File(uri));
+      }
+    } catch (URISyntaxException | IllegalArgumentException ex) {
+      // not a file, only its identifier is hashed
+    }
+    return add(systemId);
+  }
+
+  /**
+   * Returns the hash, as an hexadecimal string. This instance must not be used after.
+   * @return The hash
+   */
+  public String getHash() {
+    byte[] hash = digest.digest();
+    char[] ret = new char[hash.length * 2];
+    for (int i = 0; i < hash.length; i++) {
+      ret[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+      ret[i * 2 + 1] = HEX[hash[i] & 0xF];
+    }
+    return new String(ret);
+  }
+
+  private void addLength(long length) {
+    for (int i = 7; i >= 0; i--) {
+      digest.update((byte) (length >>> (i * 8)));
+    }
+  }
+}
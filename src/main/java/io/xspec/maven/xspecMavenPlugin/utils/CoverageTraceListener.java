@@ -0,0 +1,166 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.utils;
+
+import com.jenitennison.xslt.tests.XSLTCoverageTraceListener;
+import io.xspec.maven.xspecMavenPlugin.XSpecRunner;
+import net.sf.saxon.Controller;
+import net.sf.saxon.expr.XPathContext;
+import net.sf.saxon.lib.Logger;
+import net.sf.saxon.lib.TraceListener;
+import net.sf.saxon.om.Item;
+import net.sf.saxon.trace.Traceable;
+import net.sf.saxon.trans.SimpleMode;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * A coverage trace listener bound to a single XSpec run.
+ * <p>
+ * {@link XSLTCoverageTraceListener} reads its ignore dir, XSpec file and coverage
+ * file from System properties when it is created and opened. This class holds
+ * these values for one run, and publishes them only while the underlying listener
+ * is initialized, under a global lock. Once opened, each listener writes to its
+ * own coverage file, so XSpecs can be run concurrently with coverage.
+ * </p>
+ * @author cmarchand
+ */
+public class CoverageTraceListener implements TraceListener {
+  private static final Object SYSTEM_PROPERTIES_LOCK = new Object();
+
+  private final File ignoreDir;
+  private final File xspecFile;
+  private final File coverageFile;
+  private Logger outputDestination;
+  private TraceListener delegate;
+
+  /**
+   * Creates a coverage listener for one XSpec run
+   * @param ignoreDir Directory where compiled XSpec is, not to be included in coverage
+   * @param xspecFile The XSpec file
+   * @param coverageFile The file where coverage trace will be written
+   */
+  public CoverageTraceListener(File ignoreDir, File xspecFile, File coverageFile) {
+    super();
+    this.ignoreDir = ignoreDir;
+    this.xspecFile = xspecFile;
+    this.coverageFile = coverageFile;
+  }
+
+  @Override
+  public void setOutputDestination(Logger stream) {
+    outputDestination = stream;
+    if (delegate != null) {
+      delegate.setOutputDestination(stream);
+    }
+  }
+
+  @Override
+  public void open(Controller controller) {
+    synchronized (SYSTEM_PROPERTIES_LOCK) {
+      String previousIgnoreDir = System.getProperty(XSpecRunner.TRACE_SYS_PROP_IGNORE_DIR);
+      String previousXSpecFile = System.getProperty(XSpecRunner.TRACE_SYS_PROP_XSPEC_FILE);
+      String previousCoverageFile = System.getProperty(XSpecRunner.TRACE_SYS_PROP_COVERAGE_FILE);
+      System.setProperty(XSpecRunner.TRACE_SYS_PROP_IGNORE_DIR, ignoreDir.getAbsolutePath());
+      System.setProperty(XSpecRunner.TRACE_SYS_PROP_XSPEC_FILE, xspecFile.getAbsolutePath());
+      System.setProperty(XSpecRunner.TRACE_SYS_PROP_COVERAGE_FILE, coverageFile.getAbsolutePath());
+      try {
+        delegate = new XSLTCoverageTraceListener();
+        if (outputDestination != null) {
+          delegate.setOutputDestination(outputDestination);
+        }
+        delegate.open(controller);
+      } finally {
+        restoreProperty(XSpecRunner.TRACE_SYS_PROP_IGNORE_DIR, previousIgnoreDir);
+        restoreProperty(XSpecRunner.TRACE_SYS_PROP_XSPEC_FILE, previousXSpecFile);
+        restoreProperty(XSpecRunner.TRACE_SYS_PROP_COVERAGE_FILE, previousCoverageFile);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    if (delegate != null) {
+      delegate.close();
+    }
+  }
+
+  @Override
+  public void enter(Traceable instruction, Map<String, Object> properties, XPathContext context) {
+    if (delegate != null) {
+      delegate.enter(instruction, properties, context);
+    }
+  }
+
+  @Override
+  public void leave(Traceable instruction) {
+    if (delegate != null) {
+      delegate.leave(instruction);
+    }
+  }
+
+  @Override
+  public void startCurrentItem(Item currentItem) {
+    if (delegate != null) {
+      delegate.startCurrentItem(currentItem);
+    }
+  }
+
+  @Override
+  public void endCurrentItem(Item currentItem) {
+    if (delegate != null) {
+      delegate.endCurrentItem(currentItem);
+    }
+  }
+
+  @Override
+  public void startRuleSearch() {
+    if (delegate != null) {
+      delegate.startRuleSearch();
+    }
+  }
+
+  @Override
+  public void endRuleSearch(Object rule, SimpleMode mode, Item item) {
+    if (delegate != null) {
+      delegate.endRuleSearch(rule, mode, item);
+    }
+  }
+
+  public File getCoverageFile() {
+    return coverageFile;
+  }
+
+  private static void restoreProperty(String name, String value) {
+    if (value == null) {
+      System.clearProperty(name);
+    } else {
+      System.setProperty(name, value);
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Watches directories for changes, with a {@link WatchService}.
+ * <p>
+ * Trees are watched with all their sub-directories, including the ones created while
+ * watching. Other directories are watched without their sub-directories. Changes in
+ * ignored directories, where reports are written for example, are not reported.
+ * </p>
+ * @author cmarchand
+ */
+public class FileWatcher implements Closeable, LogProvider {
+  private final WatchService watchService;
+  private final Log log;
+  private final List<Path> ignoredDirs;
+  private final List<Path> trees;
+  private final Map<WatchKey, Path> keys;
+
+  /**
+   * Creates a watcher
+   * @param log Log
+   * @param ignoredDirs Directories where changes are not reported
+   * @throws IOException If file system can not be watched
+   */
+  public FileWatcher(Log log, Collection<Path> ignoredDirs) throws IOException {
+    super();
+    this.log = log;
+    this.watchService = FileSystems.getDefault().newWatchService();
+    this.ignoredDirs = ignoredDirs.stream().map(FileWatcher::normalize).collect(Collectors.toList());
+    this.trees = new ArrayList<>();
+    this.keys = new HashMap<>();
+  }
+
+  /**
+   * Watches a directory and all its sub-directories
+   * @param root The directory
+   * @throws IOException If a directory can not be watched
+   */
+  public void watchTree(Path root) throws IOException {
+    Path normalized = normalize(root);
+    if (!Files.isDirectory(normalized)) {
+      return;
+    }
+    if (!trees.contains(normalized)) {
+      trees.add(normalized);
+    }
+    try (Stream<Path> dirs = Files.walk(normalized)) {
+      for (Path dir : dirs.filter(Files::isDirectory).collect(Collectors.toList())) {
+        watch(dir);
+      }
+    }
+  }
+
+  /**
+   * Watches directories, without their sub-directories. Directories that are already
+   * watched, ignored or that do not exist are skipped.
+   * @param dirs The directories
+   * @throws IOException If a directory can not be watched
+   */
+  public void watch(Collection<Path> dirs) throws IOException {
+    for (Path dir : dirs) {
+      watch(dir);
+    }
+  }
+
+  private void watch(Path dir) throws IOException {
+    Path normalized = normalize(dir);
+    if (!Files.isDirectory(normalized) || isIgnored(normalized) || keys.containsValue(normalized)) {
+      return;
+    }
+    keys.put(
+        normalized.register(
+            watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE),
+        normalized);
+    getLog().debug("watching " + normalized);
+  }
+
+  /**
+   * Waits until files change. Once a change is detected, waits until no file has changed
+   * for {@code quietMillis}, as editors and builds often write several files, or a file
+   * several times.
+   * @param quietMillis Delay without change before returning
+   * @return The files that have changed
+   * @throws InterruptedException If thread is interrupted while waiting
+   * @throws IOException If a new directory can not be watched
+   */
+  public Set<Path> waitForChanges(long quietMillis) throws InterruptedException, IOException {
+    final Set<Path> ret = new TreeSet<>();
+    try {
+      WatchKey key = watchService.take();
+      while (key != null) {
+        collectChanges(key, ret);
+        key = ret.isEmpty() ? watchService.take() : watchService.poll(quietMillis, TimeUnit.MILLISECONDS);
+      }
+    } catch (ClosedWatchServiceException ex) {
+      // watcher has been closed, return what has been collected
+    }
+    return ret;
+  }
+
+  private void collectChanges(WatchKey key, Set<Path> changes) throws IOException {
+    Path dir = keys.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (dir == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        continue;
+      }
+      Path changed = dir.resolve((Path) event.context());
+      if (isIgnored(changed)) {
+        continue;
+      }
+      if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed) && isInTree(changed)) {
+        watchTree(changed);
+      }
+      changes.add(changed);
+    }
+    if (!key.reset()) {
+      keys.remove(key);
+    }
+  }
+
+  private boolean isIgnored(Path path) {
+    return ignoredDirs.stream().anyMatch(path::startsWith);
+  }
+
+  private boolean isInTree(Path path) {
+    return trees.stream().anyMatch(path::startsWith);
+  }
+
+  private static Path normalize(Path path) {
+    return path.toAbsolutePath().normalize();
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+  }
+
+  @Override
+  public Log getLog() {
+    return log;
+  }
+}
@@ -65,7 +65,7 @@ public class IndexGenerator {
      * @throws XSpecPluginException In case of any error
      */
     public void generateIndex() throws XSpecPluginException {
-        File index = new File(options.reportDir, "index.html");
+        File index = new File(options.reportDir, getIndexFileName(options));
         try {
             if(!options.reportDir.exists()) options.reportDir.mkdirs();
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -81,6 +81,7 @@ public class IndexGenerator {
                   sw.writeCharacters("\ttr.title {background-color: lightgrey; }\n");
                   sw.writeCharacters("\ttd,th {border: solid black 1px; }\n");
                   sw.writeCharacters("\ttd:not(:first-child) {text-align: right; }\n");
+                  sw.writeCharacters("\ttr.not-run {color: grey; font-style: italic; }\n");
                 sw.writeEndElement();
                 sw.writeEmptyElement("link");
                   sw.writeAttribute("rel", "stylesheet");
@@ -122,6 +123,16 @@ public class IndexGenerator {
         }        
     }
     
+    /**
+     * Returns the name of the index file. Each shard has its own index, so shards
+     * reports can be merged.
+     * @param options Runner options
+     * @return Index file name
+     */
+    public static String getIndexFileName(RunnerOptions options) {
+        return Sharding.isSharded(options) ? "index-shard-" + options.shardIndex + ".html" : "index.html";
+    }
+    
     /**
      * Writes the table
      * @param sw
@@ -171,6 +182,10 @@ public class IndexGenerator {
                       sw.writeEndElement();
                       lastRootDir = rootDir;
                 }
+                if(pf.isNotRun()) {
+                    writeNotRunRow(sw, pf);
+                    continue;
+                }
                 int errorCount = pf.getFailed()+pf.getMissed();
                 sw.writeStartElement("tr");
                 if(errorCount!=0) {
@@ -207,6 +222,23 @@ public class IndexGenerator {
         sw.writeEndElement();   // table
     }
     
+    /**
+     * Writes the row of a XSpec that has not been run. There is no report to link to.
+     * @param sw
+     * @param pf
+     * @throws XMLStreamException 
+     */
+    private void writeNotRunRow(XMLStreamWriter sw, ProcessedFile pf) throws XMLStreamException {
+        sw.writeStartElement("tr");
+          sw.writeAttribute("class", "not-run");
+          writeCell(sw, "td", pf.getRelativeSourcePath());
+          sw.writeStartElement("td");
+            sw.writeAttribute("colspan", options.coverage ? "6" : "5");
+            sw.writeCharacters("not run");
+          sw.writeEndElement();
+        sw.writeEndElement();   // tr
+    }
+    
     /**
      * Writes a td that contains an integer value. If the value is 0,
      * adds a class named <tt>zero</tt>
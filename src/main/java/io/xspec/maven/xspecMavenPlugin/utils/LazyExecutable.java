@@ -0,0 +1,98 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.utils;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XsltExecutable;
+
+/**
+ * Holds a stylesheet that is compiled the first time it is used. A stylesheet only
+ * needed by some XSpec types (Schematron, XQuery) or by coverage is therefore never
+ * compiled if there is no such XSpec.
+ * <p>
+ * This class is thread-safe : stylesheet is compiled only once, even if requested
+ * concurrently. If compilation fails, it is tried again on next request.
+ * </p>
+ * @author cmarchand
+ */
+public class LazyExecutable {
+  private final String name;
+  private final Compilation compilation;
+  private volatile XsltExecutable executable;
+
+  /**
+   * Creates a holder
+   * @param name Stylesheet description, used in error messages
+   * @param compilation Compiles the stylesheet
+   */
+  public LazyExecutable(String name, Compilation compilation) {
+    super();
+    this.name = name;
+    this.compilation = compilation;
+  }
+
+  /**
+   * Returns the stylesheet, compiling it if this is the first call.
+   * @return The compiled stylesheet
+   * @throws SaxonApiException If stylesheet can not be compiled
+   */
+  public XsltExecutable get() throws SaxonApiException {
+    XsltExecutable ret = executable;
+    if (ret == null) {
+      synchronized (this) {
+        ret = executable;
+        if (ret == null) {
+          try {
+            ret = compilation.compile();
+          } catch (XSpecPluginException | IOException | URISyntaxException ex) {
+            throw new SaxonApiException("while compiling " + name, ex);
+          }
+          executable = ret;
+        }
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Says if stylesheet has already been compiled
+   * @return {@code true} if {@link #get()} has already succeed
+   */
+  public boolean isCompiled() {
+    return executable != null;
+  }
+
+  /**
+   * Compiles a stylesheet
+   */
+  @FunctionalInterface
+  public interface Compilation {
+    XsltExecutable compile() throws SaxonApiException, XSpecPluginException, IOException, URISyntaxException;
+  }
+}
@@ -29,6 +29,7 @@ package io.xspec.maven.xspecMavenPlugin.utils;
 import java.io.File;
 import java.io.Serializable;
 import java.nio.file.Path;
+import java.util.List;
 
 /**
  * This class is used to carry informations on a processed file.
@@ -59,6 +60,14 @@ public class ProcessedFile implements Serializable {
     private final String relativeReportPath, relativeCssPath;
     
     private int passed, pending, failed, missed, total;
+    /**
+     * {@code true} if XSpec has not been run, because failure budget was exhausted
+     */
+    private boolean notRun;
+    /**
+     * System IDs of the files XSpec depends on, if they have been computed
+     */
+    private List<String> dependencies;
     
     public ProcessedFile(final File rootSourceDir, final File sourceFile, final File outputDir, final File reportFile) {
         super();
@@ -155,6 +164,19 @@ public class ProcessedFile implements Serializable {
         this.total=total;
     }
 
+    /**
+     * Says if this XSpec has not been run, because too many XSpecs had
+     * already failed (see {@code failFast} and {@code maxFailures})
+     * @return {@code true} if XSpec has not been run
+     */
+    public boolean isNotRun() {
+        return notRun;
+    }
+
+    public void setNotRun(boolean notRun) {
+        this.notRun = notRun;
+    }
+
     public Path getCoverageFile() {
         return coverageFile;
     }
@@ -162,5 +184,17 @@ public class ProcessedFile implements Serializable {
     public void setCoverageFile(Path coverageFile) {
         this.coverageFile = coverageFile;
     }
+
+    /**
+     * Returns the files this XSpec depends on, recorded in incremental mode
+     * @return System IDs of XSpec dependencies, or {@code null} if they are unknown
+     */
+    public List<String> getDependencies() {
+        return dependencies;
+    }
+
+    public void setDependencies(List<String> dependencies) {
+        this.dependencies = dependencies;
+    }
     
 }
@@ -0,0 +1,535 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps informations about previous runs of each XSpec file, in a properties file
+ * under report directory. XSpec files are identified by their path relative to test
+ * directory.
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ * @author cmarchand
+ */
+public class RunHistory {
+  private static final String DURATION_SUFFIX = ".duration";
+  private static final String DEPENDENCIES_SUFFIX = ".dependencies";
+  private static final String DEPENDENCIES_HASH_SUFFIX = ".dependenciesHash";
+  private static final String RESULTS_SUFFIX = ".results";
+  private static final String LIST_SEPARATOR = "\n";
+  private static final String HISTORY_FILE_PREFIX = "xspec-history-";
+  private static final String HISTORY_FILE_SHARD = "-shard";
+  private static final String HISTORY_FILE_SUFFIX = ".properties";
+  private static final String MODULE_FINGERPRINT_KEY = "module.fingerprint";
+
+  private final File historyFile;
+  private final Path testDir;
+  private final Map<String, Long> durations;
+  /**
+   * Durations of this history and of the other shards of the execution, used for estimations
+   */
+  private final Map<String, Long> knownDurations;
+  private final Map<String, LastRun> lastRuns;
+  /**
+   * Hash of each dependency, computed once per execution
+   */
+  private final Map<String, String> dependencyHashes;
+  private String fingerprint = "";
+  /**
+   * Fingerprint of the whole module, when its last run succeeded
+   */
+  private String moduleFingerprint;
+
+  private RunHistory(File historyFile, File testDir) {
+    super();
+    this.historyFile = historyFile;
+    this.testDir = testDir.getAbsoluteFile().toPath().normalize();
+    this.durations = new ConcurrentHashMap<>();
+    this.knownDurations = new ConcurrentHashMap<>();
+    this.lastRuns = new ConcurrentHashMap<>();
+    this.dependencyHashes = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns the history file of an execution. Each shard has its own history file, so
+   * that shards sharing a report directory do not overwrite each other's history.
+   * @param options Runner options
+   * @return The history file, in report directory
+   */
+  public static File getHistoryFile(RunnerOptions options) {
+    if (Sharding.isSharded(options)) {
+      final int shardIndex = options.shardIndex == null ? 0 : options.shardIndex;
+      return new File(options.reportDir,
+          HISTORY_FILE_PREFIX + options.executionId + HISTORY_FILE_SHARD + shardIndex + HISTORY_FILE_SUFFIX);
+    }
+    return new File(options.reportDir, HISTORY_FILE_PREFIX + options.executionId + HISTORY_FILE_SUFFIX);
+  }
+
+  /**
+   * Loads history of an execution. If history file does not exist, or can not be
+   * read, history is empty. In a sharded run, durations recorded by all shards of the
+   * execution are also loaded, so that all shards compute the same estimations.
+   * @param options Runner options
+   * @return The history
+   */
+  public static RunHistory load(RunnerOptions options) {
+    RunHistory ret = new RunHistory(getHistoryFile(options), options.testDir);
+    if (Sharding.isSharded(options)) {
+      for (File shardFile : getExecutionHistoryFiles(options)) {
+        try {
+          readDurations(readProperties(shardFile), ret.knownDurations);
+        } catch (IOException ex) {
+          // other shard history is only used to estimate durations
+        }
+      }
+    }
+    if (ret.historyFile.isFile()) {
+      try {
+        Properties props = readProperties(ret.historyFile);
+        ret.moduleFingerprint = props.getProperty(MODULE_FINGERPRINT_KEY);
+        readDurations(props, ret.durations);
+        for (String key : props.stringPropertyNames()) {
+          if (key.endsWith(RESULTS_SUFFIX)) {
+            String xspecKey = key.substring(0, key.length() - RESULTS_SUFFIX.length());
+            LastRun lastRun = LastRun.parse(
+                props.getProperty(key),
+                props.getProperty(xspecKey + DEPENDENCIES_SUFFIX),
+                props.getProperty(xspecKey + DEPENDENCIES_HASH_SUFFIX));
+            if (lastRun != null) {
+              ret.lastRuns.put(xspecKey, lastRun);
+            }
+          }
+        }
+      } catch (IOException ex) {
+        ret.durations.clear();
+        ret.lastRuns.clear();
+        ret.moduleFingerprint = null;
+      }
+    }
+    if (!Sharding.isSharded(options)) {
+      ret.knownDurations.putAll(ret.durations);
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the history files of all shards of an execution, and the one of a non
+   * sharded run, in shard order.
+   */
+  private static List<File> getExecutionHistoryFiles(RunnerOptions options) {
+    final List<File> ret = new ArrayList<>();
+    final String prefix = HISTORY_FILE_PREFIX + options.executionId;
+    final File notSharded = new File(options.reportDir, prefix + HISTORY_FILE_SUFFIX);
+    if (notSharded.isFile()) {
+      ret.add(notSharded);
+    }
+    final Pattern shardPattern = Pattern.compile(
+        Pattern.quote(prefix + HISTORY_FILE_SHARD) + "(\\d+)" + Pattern.quote(HISTORY_FILE_SUFFIX));
+    final Map<Integer, File> shardFiles = new TreeMap<>();
+    final File[] files = options.reportDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        Matcher matcher = shardPattern.matcher(file.getName());
+        if (matcher.matches() && file.isFile()) {
+          try {
+            shardFiles.put(Integer.valueOf(matcher.group(1)), file);
+          } catch (NumberFormatException ex) {
+            // not a shard index
+          }
+        }
+      }
+    }
+    ret.addAll(shardFiles.values());
+    return ret;
+  }
+
+  private static Properties readProperties(File file) throws IOException {
+    Properties props = new Properties();
+    try (InputStream is = Files.newInputStream(file.toPath())) {
+      props.load(is);
+    }
+    return props;
+  }
+
+  private static void readDurations(Properties props, Map<String, Long> durations) {
+    for (String key : props.stringPropertyNames()) {
+      if (key.endsWith(DURATION_SUFFIX)) {
+        try {
+          durations.put(
+              key.substring(0, key.length() - DURATION_SUFFIX.length()),
+              Long.valueOf(props.getProperty(key)));
+        } catch (NumberFormatException ex) {
+          // ignore corrupted entry
+        }
+      }
+    }
+  }
+
+  /**
+   * Saves history. Entries of XSpec files that have not been run are kept.
+   * @throws IOException In case of I/O error
+   */
+  public void save() throws IOException {
+    Properties props = new Properties();
+    for (Map.Entry<String, Long> entry : durations.entrySet()) {
+      props.setProperty(entry.getKey() + DURATION_SUFFIX, entry.getValue().toString());
+    }
+    for (Map.Entry<String, LastRun> entry : lastRuns.entrySet()) {
+      entry.getValue().store(props, entry.getKey());
+    }
+    if (moduleFingerprint != null) {
+      props.setProperty(MODULE_FINGERPRINT_KEY, moduleFingerprint);
+    }
+    historyFile.getParentFile().mkdirs();
+    File tmp = new File(historyFile.getParentFile(), historyFile.getName() + ".tmp");
+    try (OutputStream os = Files.newOutputStream(tmp.toPath())) {
+      props.store(os, "xspec-maven-plugin run history");
+    }
+    Files.move(tmp.toPath(), historyFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Records the wall time of an XSpec run
+   * @param xspec The XSpec file
+   * @param millis Duration, in milliseconds
+   */
+  public void recordDuration(File xspec, long millis) {
+    durations.put(getKey(xspec), millis);
+    knownDurations.put(getKey(xspec), millis);
+  }
+
+  /**
+   * Returns the last recorded duration of an XSpec
+   * @param xspec The XSpec file
+   * @return Duration in milliseconds, or {@code null} if unknown
+   */
+  public Long getDuration(File xspec) {
+    return knownDurations.get(getKey(xspec));
+  }
+
+  /**
+   * Counts XSpec files whose duration is known
+   * @param xspecs The XSpec files
+   * @return The number of XSpec files with a recorded duration
+   */
+  public int countKnownDurations(List<File> xspecs) {
+    int ret = 0;
+    for (File xspec : xspecs) {
+      if (getDuration(xspec) != null) {
+        ret++;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Records results of an XSpec run, and the files it depends on, so that it is not run
+   * again while these files do not change.
+   * @param xspec The XSpec file
+   * @param dependencies System IDs of the files XSpec depends on
+   * @param processedFile The XSpec results
+   * @throws IOException If a dependency can not be read
+   */
+  public void recordRun(File xspec, List<String> dependencies, ProcessedFile processedFile) throws IOException {
+    lastRuns.put(getKey(xspec), new LastRun(
+        new int[]{
+            processedFile.getPassed(),
+            processedFile.getPending(),
+            processedFile.getFailed(),
+            processedFile.getMissed(),
+            processedFile.getTotal()},
+        dependencies,
+        computeDependenciesHash(dependencies)));
+  }
+
+  /**
+   * Forgets the results of an XSpec, so that it is run next time.
+   * @param xspec The XSpec file
+   */
+  public void forgetRun(File xspec) {
+    lastRuns.remove(getKey(xspec));
+  }
+
+  /**
+   * Checks if the files an XSpec depends on have changed since its last run, and if
+   * not, sets its results to the ones of its last run.
+   * @param xspec The XSpec file
+   * @param processedFile The processed file to set results to
+   * @return {@code true} if XSpec is up to date, and results have been restored
+   */
+  public boolean restoreResults(File xspec, ProcessedFile processedFile) {
+    LastRun lastRun = lastRuns.get(getKey(xspec));
+    if (lastRun == null) {
+      return false;
+    }
+    try {
+      if (!lastRun.dependenciesHash.equals(computeDependenciesHash(lastRun.dependencies))) {
+        return false;
+      }
+    } catch (IOException ex) {
+      return false;
+    }
+    processedFile.setResults(
+        lastRun.results[0],
+        lastRun.results[1],
+        lastRun.results[2],
+        lastRun.results[3],
+        lastRun.results[4]);
+    processedFile.setDependencies(lastRun.dependencies);
+    return true;
+  }
+
+  /**
+   * Sets what XSpec results depend on, but XSpec dependencies : XSpec, Saxon and plugin
+   * versions, options... Results recorded with another fingerprint are not restored.
+   * @param fingerprint The fingerprint of this execution
+   */
+  public void setFingerprint(String fingerprint) {
+    this.fingerprint = fingerprint;
+  }
+
+  /**
+   * Returns the files recorded XSpecs depend on
+   * @return System IDs of all recorded dependencies
+   */
+  public Set<String> getRecordedDependencies() {
+    Set<String> ret = new TreeSet<>();
+    for (LastRun lastRun : lastRuns.values()) {
+      ret.addAll(lastRun.dependencies);
+    }
+    return ret;
+  }
+
+  /**
+   * Checks if nothing changed in the module since its last successful run : files in
+   * test directory, files XSpecs depend on, and configuration.
+   * @param configuration Everything but files the results depend on
+   * @return {@code true} if module is up to date
+   */
+  public boolean isModuleUpToDate(String configuration) {
+    if (moduleFingerprint == null || lastRuns.isEmpty()) {
+      return false;
+    }
+    try {
+      return moduleFingerprint.equals(computeModuleFingerprint(configuration));
+    } catch (IOException ex) {
+      return false;
+    }
+  }
+
+  /**
+   * Records that the whole module has been run successfully with this configuration.
+   * All its XSpecs must have been recorded with {@link #recordRun(File, List, ProcessedFile)}.
+   * @param configuration Everything but files the results depend on
+   * @throws IOException If a file can not be read
+   */
+  public void recordModuleRun(String configuration) throws IOException {
+    moduleFingerprint = computeModuleFingerprint(configuration);
+  }
+
+  /**
+   * Forgets the last successful run of the module, so that it is checked XSpec by XSpec.
+   */
+  public void forgetModuleRun() {
+    moduleFingerprint = null;
+  }
+
+  /**
+   * Returns {@code true} if each XSpec has been recorded by {@link #recordRun(File, List, ProcessedFile)}
+   * @param xspecs The XSpec files
+   * @return {@code true} if all XSpec results are known
+   */
+  public boolean hasRecordedRuns(List<File> xspecs) {
+    for (File xspec : xspecs) {
+      if (!lastRuns.containsKey(getKey(xspec))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Hashes the configuration, all files in test directory, and all recorded dependencies.
+   * Files in test directory are listed, so that new XSpecs change the fingerprint.
+   */
+  private String computeModuleFingerprint(String configuration) throws IOException {
+    final SortedSet<String> systemIds = new TreeSet<>();
+    if (Files.isDirectory(testDir)) {
+      try (Stream<Path> files = Files.walk(testDir)) {
+        // report directory may be under test directory, and changes at each run
+        final Path reportDir = historyFile.getAbsoluteFile().getParentFile().toPath().normalize();
+        files.filter(path -> Files.isRegularFile(path) && !path.startsWith(reportDir))
+            .forEach(path -> systemIds.add(path.toUri().toString()));
+      }
+    }
+    systemIds.addAll(getRecordedDependencies());
+    ContentHasher hasher = new ContentHasher().add(configuration);
+    for (String systemId : systemIds) {
+      hasher.add(systemId).add(getDependencyHash(systemId));
+    }
+    return hasher.getHash();
+  }
+
+  private String computeDependenciesHash(List<String> dependencies) throws IOException {
+    ContentHasher hasher = new ContentHasher().add(fingerprint);
+    for (String dependency : dependencies) {
+      hasher.add(dependency).add(getDependencyHash(dependency));
+    }
+    return hasher.getHash();
+  }
+
+  private String getDependencyHash(String dependency) throws IOException {
+    String hash = dependencyHashes.get(dependency);
+    if (hash == null) {
+      hash = new ContentHasher().addSystemId(dependency).getHash();
+      dependencyHashes.put(dependency, hash);
+    }
+    return hash;
+  }
+
+  /**
+   * Sorts XSpec files, longest first. Duration of files that have never been run is
+   * estimated from their size, with the average milliseconds per byte of known files.
+   * @param xspecs The XSpec files
+   * @return A new sorted list
+   */
+  public List<File> sortLongestFirst(List<File> xspecs) {
+    final Map<File, Double> estimates = estimateDurations(xspecs);
+    List<File> ret = new ArrayList<>(xspecs);
+    ret.sort(Comparator.comparing(estimates::get, Comparator.reverseOrder()));
+    return ret;
+  }
+
+  /**
+   * Estimates the duration of each XSpec file. Duration of files that have never been
+   * run is estimated from their size, with the average milliseconds per byte of known files.
+   * @param xspecs The XSpec files
+   * @return Estimated duration of each file, in milliseconds
+   */
+  public Map<File, Double> estimateDurations(List<File> xspecs) {
+    long knownDuration = 0;
+    long knownSize = 0;
+    for (File xspec : xspecs) {
+      Long duration = getDuration(xspec);
+      if (duration != null) {
+        knownDuration += duration;
+        knownSize += xspec.length();
+      }
+    }
+    final double millisPerByte = knownSize > 0 ? (double) knownDuration / knownSize : 1.0;
+    final Map<File, Double> estimates = new HashMap<>();
+    for (File xspec : xspecs) {
+      Long duration = getDuration(xspec);
+      estimates.put(xspec, duration != null ? duration.doubleValue() : xspec.length() * millisPerByte);
+    }
+    return estimates;
+  }
+
+  /**
+   * Returns the key used for a XSpec file : its path relative to test directory,
+   * with {@code /} as separator.
+   */
+  String getKey(File xspec) {
+    Path path = xspec.getAbsoluteFile().toPath().normalize();
+    if (path.startsWith(testDir)) {
+      path = testDir.relativize(path);
+    }
+    return path.toString().replace(File.separatorChar, '/');
+  }
+
+  /**
+   * Results of the last run of an XSpec, and the files it depended on
+   */
+  private static class LastRun {
+    private final int[] results;
+    private final List<String> dependencies;
+    private final String dependenciesHash;
+
+    private LastRun(int[] results, List<String> dependencies, String dependenciesHash) {
+      super();
+      this.results = results;
+      this.dependencies = dependencies;
+      this.dependenciesHash = dependenciesHash;
+    }
+
+    /**
+     * Reads a last run from its properties. Returns {@code null} if one is missing or
+     * corrupted.
+     */
+    private static LastRun parse(String results, String dependencies, String dependenciesHash) {
+      if (results == null || dependencies == null || dependenciesHash == null) {
+        return null;
+      }
+      String[] values = results.split(",");
+      if (values.length != 5) {
+        return null;
+      }
+      int[] counts = new int[values.length];
+      try {
+        for (int i = 0; i < values.length; i++) {
+          counts[i] = Integer.parseInt(values[i]);
+        }
+      } catch (NumberFormatException ex) {
+        return null;
+      }
+      return new LastRun(counts, Arrays.asList(dependencies.split(LIST_SEPARATOR)), dependenciesHash);
+    }
+
+    private void store(Properties props, String key) {
+      StringBuilder sb = new StringBuilder();
+      for (int result : results) {
+        sb.append(sb.length() == 0 ? "" : ",").append(result);
+      }
+      props.setProperty(key + RESULTS_SUFFIX, sb.toString());
+      props.setProperty(key + DEPENDENCIES_SUFFIX, String.join(LIST_SEPARATOR, dependencies));
+      props.setProperty(key + DEPENDENCIES_HASH_SUFFIX, dependenciesHash);
+    }
+  }
+}
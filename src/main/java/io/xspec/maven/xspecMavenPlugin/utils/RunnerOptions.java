@@ -65,6 +65,108 @@ public class RunnerOptions {
     
     public Boolean folding;
     
+    /**
+     * Number of XSpec files run concurrently. {@code 0} means one thread per
+     * available processor.
+     */
+    public Integer threads;
+    
+    /**
+     * Number of forked JVMs used to run XSpec files. {@code 0} means XSpec files
+     * are run in Maven JVM. When greater than 0, {@link #threads} is ignored.
+     */
+    public Integer forkCount;
+    
+    /**
+     * Number of XSpec files a forked JVM runs before being replaced by a new one.
+     * {@code 0} means forked JVMs are never recycled.
+     */
+    public Integer forkRecycleAfter;
+    
+    /**
+     * Additional JVM arguments for forked JVMs, heap and GC settings for example.
+     */
+    public String forkArgLine;
+    
+    /**
+     * Stops running XSpec files as soon as one XSpec file fails. Same as
+     * {@code maxFailures=1}.
+     */
+    public Boolean failFast;
+    
+    /**
+     * Number of failed XSpec files after which no more XSpec file is run.
+     * {@code 0} means all XSpec files are always run.
+     */
+    public Integer maxFailures;
+    
+    /**
+     * Number of shards XSpec files are split into. {@code 1} means all XSpec
+     * files are run.
+     */
+    public Integer shardCount;
+    
+    /**
+     * Index of the shard to run, from {@code 0} to {@code shardCount-1}.
+     */
+    public Integer shardIndex;
+    
+    /**
+     * How XSpec files are distributed across shards : {@code hash} or {@code duration}.
+     * See {@link Sharding}.
+     */
+    public String shardStrategy;
+    
+    /**
+     * Enables the cache of compiled XSpecs, in {@link #cacheDir}.
+     */
+    public Boolean cache;
+    
+    /**
+     * Directory where compiled XSpecs are cached, across builds.
+     */
+    public File cacheDir;
+    
+    /**
+     * Directory where the plugin's own stylesheets are cached as SEF files, shared
+     * by all projects. {@code null} disables this cache.
+     */
+    public File sefCacheDir;
+    
+    /**
+     * Compiles all the plugin's own stylesheets at startup, instead of compiling
+     * the ones that are not always needed on first use.
+     */
+    public Boolean eagerCompilation;
+    
+    /**
+     * Writes compiled XSpecs in {@link #reportDir}, for debugging. Otherwise, they are
+     * only held in memory, and written only to be cached.
+     */
+    public Boolean keepCompiledXSpecs;
+    
+    /**
+     * Runs only XSpecs whose dependencies changed since their last run. Results of
+     * other XSpecs are carried forward from previous run.
+     */
+    public Boolean incremental;
+    
+    /**
+     * In incremental mode, runs all XSpecs, even up to date ones.
+     */
+    public Boolean forceRerun;
+    
+    /**
+     * Runs XSpecs in a background JVM, that keeps Saxon and compiled stylesheets
+     * between builds.
+     */
+    public Boolean daemon;
+    
+    /**
+     * Minutes a daemon waits for a build before exiting.
+     */
+    public Integer daemonIdleTimeout;
+    
 
     
     /**
@@ -81,6 +183,22 @@ public class RunnerOptions {
         surefireReportDir = new File(baseDir, "target/surefire-reports");
         coverage = Boolean.FALSE;
         folding = Boolean.FALSE;
+        threads = 1;
+        forkCount = 0;
+        forkRecycleAfter = 0;
+        failFast = Boolean.FALSE;
+        maxFailures = 0;
+        shardCount = 1;
+        shardIndex = 0;
+        shardStrategy = Sharding.STRATEGY_HASH;
+        cache = Boolean.FALSE;
+        cacheDir = new File(baseDir, "target/xspec-cache");
+        eagerCompilation = Boolean.FALSE;
+        keepCompiledXSpecs = Boolean.FALSE;
+        incremental = Boolean.FALSE;
+        forceRerun = Boolean.FALSE;
+        daemon = Boolean.FALSE;
+        daemonIdleTimeout = 180;
     }
     
     /**
@@ -0,0 +1,145 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.TreeSet;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XsltCompiler;
+import net.sf.saxon.s9api.XsltExecutable;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A cache of the plugin's own stylesheets (XSpec compilers, reporters, ...) exported
+ * as SEF files, shared by all projects that use the plugin.
+ * <p>
+ * Cache is split in versioned directories : a directory is named after a hash of
+ * everything that may change the compiled stylesheets (XSpec, plugin and Saxon versions,
+ * Saxon options). In a directory, each stylesheet is named after a hash of its
+ * system ID and of the content of all its modules.
+ * </p>
+ * <p>
+ * Exporting a stylesheet requires Saxon-EE ; the cache is only used with this edition.
+ * </p>
+ * @author cmarchand
+ */
+public class SefCache {
+  private final File versionDir;
+  private final Log log;
+
+  /**
+   * Creates a cache
+   * @param cacheDir Cache root directory
+   * @param fingerprint Identifies everything compiled stylesheets depend on, but their sources
+   * @param log Log
+   */
+  public SefCache(File cacheDir, String fingerprint, Log log) {
+    super();
+    this.versionDir = new File(cacheDir, new ContentHasher().add(fingerprint).getHash());
+    this.log = log;
+  }
+
+  /**
+   * Returns the SEF file of a stylesheet
+   * @param systemId The stylesheet system ID
+   * @return The SEF file. It may not exist.
+   * @throws IOException If stylesheet can not be read
+   */
+  public File getSefFile(String systemId) throws IOException {
+    return getSefFile(systemId, Collections.singleton(systemId));
+  }
+
+  /**
+   * Returns the SEF file of a stylesheet that includes or imports other modules
+   * @param systemId The stylesheet system ID
+   * @param modules System IDs of the stylesheet and of all its modules
+   * @return The SEF file. It may not exist.
+   * @throws IOException If a module can not be read
+   */
+  public File getSefFile(String systemId, Collection<String> modules) throws IOException {
+    ContentHasher hasher = new ContentHasher().add(systemId);
+    for (String module : new TreeSet<>(modules)) {
+      hasher.add(module);
+      try (InputStream is = new URL(module).openStream()) {
+        hasher.add(is);
+      }
+    }
+    return new File(versionDir, hasher.getHash() + ".sef");
+  }
+
+  /**
+   * Loads a SEF file
+   * @param compiler The compiler used to load it
+   * @param sefFile The SEF file
+   * @return The executable, or {@code null} if file does not exist or can not be loaded
+   */
+  public XsltExecutable load(XsltCompiler compiler, File sefFile) {
+    if (!sefFile.isFile()) {
+      return null;
+    }
+    try {
+      return compiler.loadExecutablePackage(sefFile.toURI()).link();
+    } catch (SaxonApiException | RuntimeException ex) {
+      log.debug("unable to load " + sefFile.getAbsolutePath() + ", it will be compiled again", ex);
+      return null;
+    }
+  }
+
+  /**
+   * Exports an executable to a SEF file. Errors are only logged, as this is only an
+   * optimization.
+   * @param executable The executable to export
+   * @param sefFile The SEF file
+   */
+  public void store(XsltExecutable executable, File sefFile) {
+    try {
+      versionDir.mkdirs();
+      File tmp = File.createTempFile(sefFile.getName(), ".tmp", versionDir);
+      try (OutputStream os = Files.newOutputStream(tmp.toPath())) {
+        executable.export(os);
+      } catch (SaxonApiException | RuntimeException ex) {
+        Files.deleteIfExists(tmp.toPath());
+        throw ex;
+      }
+      Files.move(tmp.toPath(), sefFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException | SaxonApiException | RuntimeException ex) {
+      log.debug("unable to export " + sefFile.getAbsolutePath(), ex);
+    }
+  }
+
+  public File getVersionDir() {
+    return versionDir;
+  }
+}
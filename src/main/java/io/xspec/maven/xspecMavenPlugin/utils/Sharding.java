@@ -0,0 +1,157 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.utils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Selects the XSpec files a shard has to run, when a build is split across
+ * {@code shardCount} CI nodes.
+ * <p>
+ * With {@link #STRATEGY_HASH}, a file belongs to the shard given by a hash of its path
+ * relative to test directory : it never moves when other files are added or removed.
+ * With {@link #STRATEGY_DURATION}, files are distributed so that shards have the same
+ * estimated duration, according to {@link RunHistory} ; each shard writes its own history
+ * file, and reads the ones of all shards in report directory.
+ * </p>
+ * @author cmarchand
+ */
+public class Sharding {
+  public static final String STRATEGY_HASH = "hash";
+  public static final String STRATEGY_DURATION = "duration";
+
+  private Sharding() {
+    super();
+  }
+
+  /**
+   * Checks if options define a sharded run
+   * @param options Runner options
+   * @return {@code true} if {@code shardCount} is greater than 1
+   */
+  public static boolean isSharded(RunnerOptions options) {
+    return options.shardCount != null && options.shardCount > 1;
+  }
+
+  /**
+   * Checks if options define a sharded run balanced on durations
+   * @param options Runner options
+   * @return {@code true} if run is sharded with {@link #STRATEGY_DURATION}
+   */
+  public static boolean isBalancedOnDurations(RunnerOptions options) {
+    return isSharded(options) && STRATEGY_DURATION.equals(options.shardStrategy);
+  }
+
+  /**
+   * Returns the XSpec files of the shard defined in options, in their original order.
+   * @param xspecs All XSpec files
+   * @param options Runner options
+   * @param history Run history, used by {@link #STRATEGY_DURATION}
+   * @return The XSpec files this shard has to run
+   * @throws XSpecPluginException If sharding options are invalid
+   */
+  public static List<File> select(List<File> xspecs, RunnerOptions options, RunHistory history) throws XSpecPluginException {
+    if (!isSharded(options)) {
+      return xspecs;
+    }
+    final int shardCount = options.shardCount;
+    final int shardIndex = options.shardIndex == null ? 0 : options.shardIndex;
+    if (shardIndex < 0 || shardIndex >= shardCount) {
+      throw new XSpecPluginException("shardIndex must be between 0 and " + (shardCount - 1) + ", found " + shardIndex);
+    }
+    final String strategy = options.shardStrategy == null ? STRATEGY_HASH : options.shardStrategy;
+    switch (strategy) {
+      case STRATEGY_HASH:
+        return selectByHash(xspecs, history, shardIndex, shardCount);
+      case STRATEGY_DURATION:
+        return selectByDuration(xspecs, history, shardIndex, shardCount);
+      default:
+        throw new XSpecPluginException("Unsupported shardStrategy: " + strategy
+            + ". Expected " + STRATEGY_HASH + " or " + STRATEGY_DURATION);
+    }
+  }
+
+  static List<File> selectByHash(List<File> xspecs, RunHistory history, int shardIndex, int shardCount) {
+    List<File> ret = new ArrayList<>();
+    for (File xspec : xspecs) {
+      if (getShard(history.getKey(xspec), shardCount) == shardIndex) {
+        ret.add(xspec);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Longest files first, each one to the shard with the lowest estimated duration.
+   * Ties are broken on path and shard index, so all shards compute the same distribution.
+   */
+  static List<File> selectByDuration(List<File> xspecs, RunHistory history, int shardIndex, int shardCount) {
+    final Map<File, Double> estimates = history.estimateDurations(xspecs);
+    List<File> sorted = new ArrayList<>(xspecs);
+    sorted.sort(Comparator.comparing((File f) -> estimates.get(f), Comparator.reverseOrder())
+        .thenComparing(history::getKey));
+    double[] loads = new double[shardCount];
+    Set<File> selected = new HashSet<>();
+    for (File xspec : sorted) {
+      int lightest = 0;
+      for (int i = 1; i < shardCount; i++) {
+        if (loads[i] < loads[lightest]) {
+          lightest = i;
+        }
+      }
+      loads[lightest] += estimates.get(xspec);
+      if (lightest == shardIndex) {
+        selected.add(xspec);
+      }
+    }
+    List<File> ret = new ArrayList<>();
+    for (File xspec : xspecs) {
+      if (selected.contains(xspec)) {
+        ret.add(xspec);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Computes the shard of a relative path. CRC32 is used because it is stable across
+   * JVMs and platforms.
+   */
+  static int getShard(String relativePath, int shardCount) {
+    CRC32 crc = new CRC32();
+    crc.update(relativePath.getBytes(StandardCharsets.UTF_8));
+    return (int) (crc.getValue() % shardCount);
+  }
+}
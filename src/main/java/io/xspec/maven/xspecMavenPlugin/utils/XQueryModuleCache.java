@@ -0,0 +1,261 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XQueryCompiler;
+import net.sf.saxon.s9api.XQueryExecutable;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A cache of compiled XQuery, held by {@link XmlStuff} : it is shared by all XSpecs of
+ * a run, and by all runs of a long-lived engine (daemon, watch mode).
+ * <p>
+ * The XQuery library tested by a XSpec ({@code query-at}) is compiled once, in a
+ * {@link XQueryCompiler} dedicated to this library ; all compiled XSpecs that import
+ * it are compiled with this compiler, and do not compile the library again. Libraries
+ * are identified by the location and content of all their modules, so a change in an
+ * imported module compiles the library again.
+ * </p>
+ * <p>
+ * The number of entries is bounded ; oldest entries are dropped first.
+ * </p>
+ * <p>
+ * Compiled XSpecs are identified by their query, their library, and the location and
+ * content of the other modules the query imports, such as helpers. When several XSpecs
+ * require the same entry concurrently, it is compiled once, other XSpecs wait for it.
+ * </p>
+ * <p>
+ * Saxon can not export compiled XQuery, so there is no disk cache ; generated queries
+ * are kept across runs by {@link CompiledXSpecCache}.
+ * </p>
+ * @author cmarchand
+ */
+public class XQueryModuleCache {
+  /** {@code import module namespace p = "uri" at "location", "location";} */
+  private static final Pattern MODULE_IMPORT = Pattern.compile(
+      "import\\s+module\\s+(?:namespace\\s+[^\\s=]+\\s*=\\s*)?(?:\"[^\"]*\"|'[^']*')\\s+at\\s+([^;]+);");
+  private static final Pattern STRING_LITERAL = Pattern.compile("\"([^\"]*)\"|'([^']*)'");
+  private final XQueryCompiler defaultCompiler;
+  private final Log log;
+  private final ConcurrentHashMap<String, CompletableFuture<XQueryCompiler>> libraryCompilers;
+  private final ConcurrentHashMap<String, CompletableFuture<XQueryExecutable>> executables;
+  private final Queue<String> libraryKeys = new ConcurrentLinkedQueue<>();
+  private final Queue<String> executableKeys = new ConcurrentLinkedQueue<>();
+  static final int MAX_LIBRARIES = 16;
+  static final int MAX_EXECUTABLES = 256;
+
+  /**
+   * Creates a cache
+   * @param defaultCompiler The compiler used for queries that do not import a library
+   * module. Library compilers are created with the same processor and options.
+   * @param log Log
+   */
+  public XQueryModuleCache(XQueryCompiler defaultCompiler, Log log) {
+    super();
+    this.defaultCompiler = defaultCompiler;
+    this.log = log;
+    this.libraryCompilers = new ConcurrentHashMap<>();
+    this.executables = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns a compiled query.
+   * @param query The query to compile
+   * @param library The library module imported by the query, or {@code null}. It is
+   * compiled once for all queries that import it.
+   * @return The compiled query
+   * @throws SaxonApiException If query or library can not be compiled
+   * @throws IOException If library can not be read
+   */
+  public XQueryExecutable get(String query, File library) throws SaxonApiException, IOException {
+    String libraryKey = library == null ? null : getLibraryKey(library);
+    String key = getQueryKey(query, libraryKey);
+    return get(executables, executableKeys, MAX_EXECUTABLES, key, () -> {
+      XQueryCompiler compiler = libraryKey == null ?
+          defaultCompiler :
+          get(libraryCompilers, libraryKeys, MAX_LIBRARIES, libraryKey, () -> compileLibrary(library));
+      return compiler.compile(query);
+    });
+  }
+
+  /**
+   * Computes the key of a library : a hash of the location and content of the library
+   * and of all modules it imports.
+   */
+  private static String getLibraryKey(File library) throws IOException {
+    Set<File> modules = new TreeSet<>();
+    collectModules(library, modules);
+    ContentHasher hasher = new ContentHasher().add(library.getAbsolutePath());
+    for (File module : modules) {
+      hasher.add(module);
+    }
+    return hasher.getHash();
+  }
+
+  /**
+   * Computes the key of a query : a hash of the query, of its library key, and of the
+   * location and content of all local modules it imports, helpers included.
+   */
+  private String getQueryKey(String query, String libraryKey) throws IOException {
+    Set<File> modules = new TreeSet<>();
+    URI baseUri = defaultCompiler.getBaseURI() != null ? defaultCompiler.getBaseURI() : new File("").getAbsoluteFile().toURI();
+    collectImportedModules(query, baseUri, modules);
+    ContentHasher hasher = new ContentHasher().add(libraryKey).add(query);
+    for (File module : modules) {
+      hasher.add(module);
+    }
+    return hasher.getHash();
+  }
+
+  int size() {
+    return executables.size() + libraryCompilers.size();
+  }
+
+  /**
+   * Creates a compiler that contains a compiled library
+   */
+  private XQueryCompiler compileLibrary(File library) throws SaxonApiException, IOException {
+    log.debug("Compiling XQuery library " + library.getAbsolutePath());
+    XQueryCompiler compiler = defaultCompiler.getProcessor().newXQueryCompiler();
+    compiler.setCompileWithTracing(defaultCompiler.isCompileWithTracing());
+    compiler.compileLibrary(library);
+    return compiler;
+  }
+
+  /**
+   * Returns the value of an entry, computing it if it is not already there. A failure
+   * is not kept, next XSpec will try again. When there are more than {@code max}
+   * entries, the oldest ones are dropped.
+   */
+  private static <T> T get(
+      ConcurrentHashMap<String, CompletableFuture<T>> entries,
+      Queue<String> keys,
+      int max,
+      String key,
+      Compilation<T> compilation) throws SaxonApiException, IOException {
+    CompletableFuture<T> entry = new CompletableFuture<>();
+    CompletableFuture<T> existing = entries.putIfAbsent(key, entry);
+    if (existing != null) {
+      return waitFor(existing);
+    }
+    keys.add(key);
+    while (keys.size() > max) {
+      String oldest = keys.poll();
+      if (oldest != null) {
+        entries.remove(oldest);
+      }
+    }
+    try {
+      T ret = compilation.compile();
+      entry.complete(ret);
+      return ret;
+    } catch (SaxonApiException | IOException | RuntimeException ex) {
+      entries.remove(key, entry);
+      entry.completeExceptionally(ex);
+      throw ex;
+    }
+  }
+
+  private static <T> T waitFor(CompletableFuture<T> entry) throws SaxonApiException, IOException {
+    try {
+      return entry.get();
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof SaxonApiException) {
+        throw (SaxonApiException) ex.getCause();
+      }
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException) ex.getCause();
+      }
+      throw new SaxonApiException(ex.getCause());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new SaxonApiException("interrupted while waiting for XQuery compilation", ex);
+    }
+  }
+
+  /**
+   * Collects a XQuery module, and the modules it imports with a location, directly or
+   * not. Modules that are not local files are ignored.
+   * @param module The module
+   * @param modules The modules found
+   * @throws IOException If a module can not be read
+   */
+  public static void collectModules(File module, Set<File> modules) throws IOException {
+    File file = module.getAbsoluteFile();
+    if (!file.isFile() || !modules.add(file)) {
+      return;
+    }
+    String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    collectImportedModules(content, file.toURI(), modules);
+  }
+
+  /**
+   * Collects the modules a query or a module imports with a location, directly or not.
+   * Modules that are not local files are ignored.
+   * @param content The query or module
+   * @param baseUri The URI locations are resolved against
+   * @param modules The modules found
+   * @throws IOException If a module can not be read
+   */
+  static void collectImportedModules(String content, URI baseUri, Set<File> modules) throws IOException {
+    Matcher imports = MODULE_IMPORT.matcher(content);
+    while (imports.find()) {
+      Matcher locations = STRING_LITERAL.matcher(imports.group(1));
+      while (locations.find()) {
+        String location = locations.group(1) != null ? locations.group(1) : locations.group(2);
+        try {
+          URI uri = baseUri.resolve(location);
+          if ("file".equals(uri.getScheme())) {
+            collectModules(new File(uri), modules);
+          }
+        } catch (IllegalArgumentException ex) {
+          // let the query compilation report it
+        }
+      }
+    }
+  }
+
+  @FunctionalInterface
+  private interface Compilation<T> {
+    T compile() throws SaxonApiException, IOException;
+  }
+}
@@ -27,32 +27,29 @@
 package io.xspec.maven.xspecMavenPlugin.utils;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.xml.transform.Source;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamSource;
 
 import io.xspec.maven.xspecMavenPlugin.resolver.XSpecResourceResolver;
+import io.xspec.maven.xspecMavenPlugin.resources.SchematronImplResources;
 import net.sf.saxon.s9api.*;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.maven.plugin.logging.Log;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
 
 /**
  * A class that compiles XSpec files
@@ -64,8 +61,13 @@ public class XSpecCompiler implements LogProvider {
   private final Log log;
   private final RunnerOptions options;
 
-  private final HashMap<File, File> executionReportDirs;
+  private final ConcurrentHashMap<File, File> executionReportDirs;
   private final List<File> filesToDelete;
+  private final CompiledXSpecCache compiledXSpecCache;
+  private final CompiledSchematronCache compiledSchematronCache;
+  private final ConcurrentHashMap<String, String> resolvedCompilerUris;
+  // compiled Schematrons registered in memory, by system ID of the XSpec compiled for them
+  private final ConcurrentHashMap<String, XdmNode> registeredSchematrons;
   // In XSpec 1.3, this has been renamed to stylesheet-uri
   // https://github.com/xspec/xspec/pull/325
   public static final QName QN_STYLESHEET = new QName("stylesheet-uri");
@@ -79,86 +81,382 @@ public class XSpecCompiler implements LogProvider {
     this.xmlStuff = xmlStuff;
     this.log = log;
     this.options = options;
-    executionReportDirs = new HashMap<>();
-    filesToDelete = new ArrayList<>();
+    // XSpecs may be compiled concurrently
+    executionReportDirs = new ConcurrentHashMap<>();
+    filesToDelete = Collections.synchronizedList(new ArrayList<>());
+    resolvedCompilerUris = new ConcurrentHashMap<>();
+    registeredSchematrons = new ConcurrentHashMap<>();
+    compiledXSpecCache = Boolean.TRUE.equals(options.cache) && options.cacheDir != null ?
+        new CompiledXSpecCache(options.cacheDir, getImplementationFingerprint()) :
+        null;
+    // compiled Schematrons are always shared in a run, and kept on disk if cache is enabled
+    compiledSchematronCache = new CompiledSchematronCache(
+        xmlStuff.getProcessor(),
+        compiledXSpecCache != null ? new File(options.cacheDir, "schematron") : null,
+        new File(options.reportDir, "compiled-schematron"),
+        log);
   }
 
   /**
    * Compiles a XSpec file that test a XQuery
-   * @param sourceFile The XSpec file to compile
+   * @param xspecDocument The XSpec document to compile, already parsed
    * @return The compiled XSpec informations
    */
-  public final CompiledXSpec compileXSpecForXQuery(final File sourceFile) {
-    return compileXSpec(sourceFile, xmlStuff.getXspec4xqueryCompiler());
+  public final CompiledXSpec compileXSpecForXQuery(final XdmNode xspecDocument) {
+    try {
+      return compileXSpec(xspecDocument, xmlStuff.getXspec4xqueryCompiler(), xmlStuff.getXSpecResources().getXSpecXQueryCompilerUri());
+    } catch (SaxonApiException ex) {
+      getLog().error(ex.getMessage());
+      getLog().debug(ex);
+      return null;
+    }
   }
 
   /**
    * Compiles a XSpec file that test a XSLT
-   * @param sourceFile The XSpec file to compile
+   * @param xspecDocument The XSpec document to compile, already parsed
    * @return The compiled XSpec informations
    */
-  public final CompiledXSpec compileXSpecForXslt(final File sourceFile) {
-    return compileXSpec(sourceFile, xmlStuff.getXspec4xsltCompiler());
+  public final CompiledXSpec compileXSpecForXslt(final XdmNode xspecDocument) {
+    try {
+      return compileXSpec(xspecDocument, xmlStuff.getXspec4xsltCompiler(), xmlStuff.getXSpecResources().getXSpecXslCompilerUri());
+    } catch (SaxonApiException ex) {
+      getLog().error(ex.getMessage());
+      getLog().debug(ex);
+      return null;
+    }
+  }
+
+  /**
+   * Compiles the query of a XSpec compiled for XQuery. Queries and tested libraries
+   * are compiled once, see {@link XQueryModuleCache}.
+   * @param xspecDocument The XSpec document
+   * @param compiledXSpec The XSpec compiled by {@link #compileXSpecForXQuery(XdmNode)}
+   * @return The query executable
+   * @throws SaxonApiException If query can not be compiled
+   * @throws IOException If compiled XSpec or tested library can not be read
+   */
+  public XQueryExecutable compileXQuery(XdmNode xspecDocument, CompiledXSpec compiledXSpec) throws SaxonApiException, IOException {
+    String query = compiledXSpec.getCompiledTree() != null ?
+        compiledXSpec.getCompiledTree().getStringValue() :
+        new String(Files.readAllBytes(compiledXSpec.getCompiledStylesheet().toPath()), StandardCharsets.UTF_8);
+    return xmlStuff.getXQueryModuleCache().get(query, getXQueryLibrary(xspecDocument));
+  }
+
+  /**
+   * Returns the XQuery library tested by a XSpec, if it is a local file
+   */
+  private File getXQueryLibrary(XdmNode xspecDocument) throws SaxonApiException {
+    XPathSelector xps = xmlStuff.getXpXQueryLibraryLocation().load();
+    xps.setContextItem(xspecDocument);
+    XdmItem queryAt = xps.evaluateSingle();
+    if (queryAt == null) {
+      return null;
+    }
+    try {
+      URI uri = ((XdmNode) queryAt).getBaseURI().resolve(queryAt.getStringValue());
+      File library = "file".equals(uri.getScheme()) ? new File(uri) : null;
+      return library != null && library.isFile() ? library : null;
+    } catch (IllegalArgumentException ex) {
+      // let the query compilation report it
+      return null;
+    }
+  }
+
+  /**
+   * Finds the files a XSpec depends on : the XSpec itself, the XSpecs it imports, the
+   * tested stylesheet, query or schema, helpers, the modules they include or import,
+   * and the documents they reference. Files in jars are ignored.
+   * @param xspecDocument The XSpec document
+   * @return System IDs of the dependencies, sorted
+   * @throws SaxonApiException If dependencies can not be computed
+   */
+  public List<String> findDependencies(XdmNode xspecDocument) throws SaxonApiException {
+    XsltTransformer dependencyScanner = xmlStuff.getXmlDependencyScanner().load();
+    dependencyScanner.setResourceResolver(xmlStuff.getResourceResolver());
+    XdmDestination tree = new XdmDestination();
+    dependencyScanner.setDestination(tree);
+    dependencyScanner.setInitialContextNode(xspecDocument);
+    dependencyScanner.transform();
+    Set<String> ret = new TreeSet<>();
+    ret.add(String.valueOf(xspecDocument.getUnderlyingNode().getSystemId()));
+    XPathSelector xpDependencies = xmlStuff.getXpDependencies().load();
+    xpDependencies.setContextItem(tree.getXdmNode());
+    for (XdmItem dependency : xpDependencies.evaluate()) {
+      ret.add(dependency.getStringValue());
+    }
+    // scanner only follows the tested stylesheet
+    Set<String> modules = new TreeSet<>();
+    try {
+      List<XdmNode> descriptions = new ArrayList<>();
+      descriptions.add(xspecDocument);
+      for (String imported : countTests(xspecDocument).getImportedSystemIds()) {
+        XdmNode description = buildModule(imported, null);
+        if (description == null) {
+          modules.add(imported);
+        } else {
+          modules.add(String.valueOf(description.getUnderlyingNode().getSystemId()));
+          descriptions.add(description);
+        }
+      }
+      for (XdmNode description : descriptions) {
+        collectHelpers(description, modules);
+      }
+      XPathSelector xpSchemaPath = xmlStuff.getXpSchematronLocation().load();
+      xpSchemaPath.setContextItem(xspecDocument);
+      XdmItem schematronPath = xpSchemaPath.evaluateSingle();
+      if (schematronPath != null) {
+        XdmNode schema = buildModule(schematronPath.getStringValue(), xspecDocument.getBaseURI().toString());
+        if (schema != null) {
+          xmlStuff.collectModules(schema, modules);
+        }
+      }
+      File library = getXQueryLibrary(xspecDocument);
+      if (library != null) {
+        collectXQueryModules(library, modules);
+      }
+    } catch (TransformerException | IOException ex) {
+      throw new SaxonApiException(ex);
+    }
+    for (String module : modules) {
+      if (module.startsWith("file:")) {
+        ret.add(module);
+      }
+    }
+    return new ArrayList<>(ret);
+  }
+
+  /**
+   * Collects the stylesheets and XQuery libraries a XSpec loads with {@code x:helper},
+   * and their modules.
+   */
+  private void collectHelpers(XdmNode description, Set<String> modules) throws SaxonApiException, TransformerException, IOException {
+    XPathSelector xpHelpers = xmlStuff.getXpHelperLocations().load();
+    xpHelpers.setContextItem(description);
+    for (XdmItem item : xpHelpers.evaluate()) {
+      XdmNode helper = (XdmNode) item;
+      if ("query-at".equals(helper.getNodeName().getLocalName())) {
+        try {
+          URI uri = helper.getBaseURI().resolve(helper.getStringValue());
+          if ("file".equals(uri.getScheme())) {
+            collectXQueryModules(new File(uri), modules);
+          }
+        } catch (IllegalArgumentException ex) {
+          // let the helper compilation report it
+        }
+      } else {
+        XdmNode stylesheet = buildModule(helper.getStringValue(), helper.getBaseURI().toString());
+        if (stylesheet != null) {
+          xmlStuff.collectModules(stylesheet, modules);
+        }
+      }
+    }
+  }
+
+  private void collectXQueryModules(File library, Set<String> modules) throws IOException {
+    Set<File> files = new TreeSet<>();
+    XQueryModuleCache.collectModules(library, files);
+    for (File file : files) {
+      modules.add(file.toURI().toString());
+    }
+  }
+
+  /**
+   * Parses a module, resolved by resource resolver.
+   * @return The module, or {@code null} if it can not be resolved
+   */
+  private XdmNode buildModule(String href, String baseUri) throws SaxonApiException, TransformerException {
+    Source source = xmlStuff.getResourceResolver().resolve(XSpecResourceResolver.buildRequest(href, baseUri));
+    return source == null ? null : xmlStuff.getDocumentBuilder().build(source);
+  }
+
+  /**
+   * Compiles an XSpec using the provided XSLT XSpec compiler. If compiled XSpec cache
+   * is enabled, and contains this XSpec, compiler is not run.
+   * The XSpec tree is not parsed again : tests are counted by walking it, and it is
+   * the compiler input.
+   * @param compilerUri The URI of {@code compilerExec}, part of the cache key
+   * @return Details of the Compiled XSpec or null if the XSpec could not be
+   * compiled
+   */
+  final CompiledXSpec compileXSpec(final XdmNode xspecDocument, XsltExecutable compilerExec, String compilerUri) {
+    final File sourceFile = new File(xspecDocument.getBaseURI());
+    final File compiledXSpecFile = getCompiledXSpecPath(options.reportDir, sourceFile);
+    final XSpecCounterContentHandler counter;
+    try {
+      counter = countTests(xspecDocument);
+    } catch (final SaxonApiException ex) {
+      getLog().error(ex.getMessage());
+      getLog().debug(ex);
+      return null;
+    }
+    String cacheKey = null;
+    if (compiledXSpecCache != null) {
+      try {
+        // XSpecs on Schematron are only in memory
+        cacheKey = sourceFile.isFile() ?
+            compiledXSpecCache.computeKey(sourceFile, counter.getImportedSystemIds(), resolveCompilerUri(compilerUri)) :
+            compiledXSpecCache.computeKey(sourceFile.toURI().toString(), xspecDocument.toString(), counter.getImportedSystemIds(), resolveCompilerUri(compilerUri));
+        CompiledXSpec cached = compiledXSpecCache.get(cacheKey, compiledXSpecFile);
+        if (cached != null) {
+          log.info("Using cached compiled XSpec: " + compiledXSpecFile);
+          return cached;
+        }
+      } catch (IOException ex) {
+        getLog().warn("Unable to use compiled XSpec cache for " + sourceFile.getAbsolutePath(), ex);
+        cacheKey = null;
+      }
+    }
+    // compiled XSpec is written only if it has to be kept, or cached
+    boolean writeCompiledXSpec = Boolean.TRUE.equals(options.keepCompiledXSpecs) || cacheKey != null;
+    CompiledXSpec ret = compileXSpec(xspecDocument, compilerExec, compiledXSpecFile, counter, writeCompiledXSpec);
+    if (ret != null && cacheKey != null) {
+      try {
+        compiledXSpecCache.put(cacheKey, ret);
+      } catch (IOException ex) {
+        getLog().warn("Unable to store compiled XSpec in cache: " + compiledXSpecFile, ex);
+      }
+    }
+    return ret;
   }
 
   /**
-   * Compiles an XSpec using the provided XSLT XSpec compiler
+   * Runs the XSpec compiler. Compiled XSpec is kept in memory, with {@code compiledXSpec}
+   * as base URI, and is written to {@code compiledXSpec} only if {@code writeCompiledXSpec}
+   * is set.
    * @return Details of the Compiled XSpec or null if the XSpec could not be
    * compiled
    */
-  final CompiledXSpec compileXSpec(final File sourceFile, XsltExecutable compilerExec) {
+  private CompiledXSpec compileXSpec(
+      final XdmNode xspecDocument,
+      XsltExecutable compilerExec,
+      final File compiledXSpec,
+      final XSpecCounterContentHandler counter,
+      final boolean writeCompiledXSpec) {
     XsltTransformer compiler = compilerExec.load();
-    InputStream isXSpec = null;
     try {
-      final File compiledXSpec = getCompiledXSpecPath(options.reportDir, sourceFile);
       log.info("Compiling XSpec to XSLT: " + compiledXSpec);
 
-      isXSpec = new FileInputStream(sourceFile);
-
-      final SAXParser parser = XmlStuff.PARSER_FACTORY.newSAXParser();
-      final XMLReader reader = parser.getXMLReader();
-      final XSpecTestFilter xspecTestFilter = new XSpecTestFilter(
-          reader,
-          // Bug under Windows
-          sourceFile.toURI().toString(),
-          xmlStuff.getResourceResolver(),
-          this,
-          false);
+      compiler.setInitialContextNode(xspecDocument);
 
-      final InputSource inXSpec = new InputSource(isXSpec);
-      inXSpec.setSystemId(sourceFile.toURI().toString());
-
-      compiler.setSource(new SAXSource(xspecTestFilter, inXSpec));
-
-      final Serializer serializer = xmlStuff.getProcessor().newSerializer();
-      serializer.setOutputFile(compiledXSpec);
-      compiler.setDestination(serializer);
+      final XdmDestination compiledTree = XmlStuff.newXdmDestination(compiledXSpec.toURI());
+      compiler.setDestination(toTree(compiledTree, compiledXSpec, writeCompiledXSpec));
 
       compiler.transform();
 
-      return new CompiledXSpec(xspecTestFilter.getTests(), xspecTestFilter.getPendingTests(), compiledXSpec);
+      return new CompiledXSpec(counter.getTests(), counter.getPendingTests(), compiledXSpec, XmlStuff.getXdmNode(compiledTree));
 
     } catch (final SaxonApiException sae) {
       getLog().error(sae.getMessage());
       getLog().debug(sae);
-    } catch (final ParserConfigurationException | FileNotFoundException pce) {
-      getLog().error(pce);
-    } catch (SAXException saxe) {
-      getLog().error(saxe.getMessage());
-      getLog().debug(saxe);
-    } finally {
-      if (isXSpec != null) {
-        try {
-          isXSpec.close();
-        } catch (final IOException ioe) {
-          getLog().warn(ioe);
-        }
-      }
     }
 
     return null;
   }
 
+  /**
+   * Computes the key of a compiled Schematron : a hash of the schema, of the modules it
+   * includes, and of the Schematron implementation.
+   */
+  private String computeSchematronKey(XdmNode schema) throws SaxonApiException, TransformerException, IOException {
+    SchematronImplResources schematronResources = xmlStuff.getSchematronResources();
+    ContentHasher hasher = new ContentHasher()
+        .add(getImplementationFingerprint())
+        .add(xmlStuff.getXSpecResources().getSchematronCompilerUri())
+        .add(schematronResources.getSchStep1Uri())
+        .add(schematronResources.getSchStep2Uri())
+        .add(schematronResources.getSchStep3Uri());
+    Set<String> modules = new TreeSet<>();
+    xmlStuff.collectModules(schema, modules);
+    for (String module : modules) {
+      hasher.addSystemId(module);
+    }
+    return hasher.getHash();
+  }
+
+  /**
+   * Returns a destination that builds {@code tree}, and also writes it to {@code file}
+   * if {@code write} is set. The serializer gets the stylesheet output method, text
+   * for XQuery.
+   */
+  private Destination toTree(XdmDestination tree, File file, boolean write) {
+    if (!write) {
+      return tree;
+    }
+    final Serializer serializer = xmlStuff.newSerializer();
+    serializer.setOutputFile(file);
+    return new TeeDestination(tree, serializer);
+  }
+
+  /**
+   * Counts tests of a XSpec, and finds the XSpecs it imports, by walking its tree.
+   * Imported XSpecs are parsed.
+   * @param xspecDocument The XSpec document
+   * @return The counter, with tests, pending tests and imported XSpecs
+   * @throws SaxonApiException If tree can not be walked
+   */
+  XSpecCounterContentHandler countTests(final XdmNode xspecDocument) throws SaxonApiException {
+    final XSpecCounterContentHandler counter = new XSpecCounterContentHandler(
+        // Bug under Windows
+        new File(xspecDocument.getBaseURI()).toURI().toString(),
+        xmlStuff.getResourceResolver(),
+        this,
+        false);
+    xmlStuff.getProcessor().writeXdmValue(xspecDocument, new SAXDestination(counter));
+    return counter;
+  }
+
+  /**
+   * Resolves the XSpec compiler URI, so that a {@code cp:/} URI is turned into the
+   * location of the jar that contains it. If resolution fails, {@code compilerUri} is
+   * returned.
+   */
+  private String resolveCompilerUri(final String compilerUri) {
+    return resolvedCompilerUris.computeIfAbsent(compilerUri, uri -> {
+      try {
+        Source source = xmlStuff.getResourceResolver().resolve(XSpecResourceResolver.buildRequest(uri, null));
+        if (source instanceof StreamSource && ((StreamSource) source).getInputStream() != null) {
+          ((StreamSource) source).getInputStream().close();
+        }
+        if (source != null && source.getSystemId() != null) {
+          return source.getSystemId();
+        }
+      } catch (TransformerException | IOException ex) {
+        getLog().debug("unable to resolve " + uri, ex);
+      }
+      return uri;
+    });
+  }
+
+  /**
+   * Identifies XSpec implementation and Saxon version, so that compiled XSpecs are not
+   * reused when one of them changes.
+   */
+  private String getImplementationFingerprint() {
+    return "xspec=" + XmlStuff.getArtifactVersion("io.xspec", "xspec")
+        + ";saxon=" + xmlStuff.getProcessor().getSaxonEdition() + "-" + xmlStuff.getProcessor().getSaxonProductVersion();
+  }
+
+  public CompiledXSpecCache getCompiledXSpecCache() {
+    return compiledXSpecCache;
+  }
+
+  public CompiledSchematronCache getCompiledSchematronCache() {
+    return compiledSchematronCache;
+  }
+
+  /**
+   * Unregisters the compiled Schematron a XSpec has been compiled for, once it has been
+   * run, so that long-lived engines do not keep it.
+   * @param compiledSchXSpec The XSpec returned by {@link #prepareSchematronDocument(XdmNode) }
+   */
+  public void releaseSchematronDocument(XdmNode compiledSchXSpec) {
+    XdmNode compiledSchematron = registeredSchematrons.remove(new File(compiledSchXSpec.getBaseURI()).toURI().toString());
+    if (compiledSchematron != null) {
+      xmlStuff.unregisterInMemoryDocument(compiledSchematron);
+    }
+  }
+
   /**
    * Prepare a Schematron XSpec test.
    * There two phases :
@@ -167,6 +465,10 @@ public class XSpecCompiler implements LogProvider {
    * <li>compile the XSpec (that points to the schematron) into a XSpec that
    * points to the XSLT (the compiled at phase 1)</li>
    * </ol>
+   * Both are kept in memory, with the location they would have been written to as
+   * base URI, and written only if {@code keepCompiledXSpecs} is set. The compiled
+   * Schematron is registered in resource resolver, so it is imported from memory, until
+   * {@link #releaseSchematronDocument(XdmNode) } is called.
    *
    * @param xspecDocument the xspec to process
    * @return the schematron doc
@@ -175,19 +477,11 @@ public class XSpecCompiler implements LogProvider {
    * @throws IOException In case of I/O error
    */
   public XdmNode prepareSchematronDocument(XdmNode xspecDocument) throws SaxonApiException, TransformerException, IOException {
-    XsltTransformer schematronCompiler = xmlStuff.getSchematronCompiler().load();
-    schematronCompiler.setParameter(new QName("STEP1-PREPROCESSOR-URI"), new XdmAtomicValue(xmlStuff.getSchematronResources().getSchStep1Uri()));
-    schematronCompiler.setParameter(new QName("STEP2-PREPROCESSOR-URI"), new XdmAtomicValue(xmlStuff.getSchematronResources().getSchStep2Uri()));
-    schematronCompiler.setParameter(new QName("STEP3-PREPROCESSOR-URI"), new XdmAtomicValue(xmlStuff.getSchematronResources().getSchStep3Uri()));
-
     File sourceFile = new File(xspecDocument.getBaseURI());
-    // compiling schematron
-    File compiledSchematronDest = getCompiledSchematronPath(options.reportDir, sourceFile);
-    Serializer serializer = xmlStuff.newSerializer(new FileOutputStream(compiledSchematronDest));
-    schematronCompiler.setDestination(serializer);
+    boolean keepFiles = Boolean.TRUE.equals(options.keepCompiledXSpecs);
 
     // getting from XSpec the schematron location
-    XPathSelector xpSchemaPath = xmlStuff.getXPathCompiler().compile("/*/@schematron").load();
+    XPathSelector xpSchemaPath = xmlStuff.getXpSchematronLocation().load();
     xpSchemaPath.setContextItem(xspecDocument);
     String schematronPath = xpSchemaPath.evaluateSingle().getStringValue();
     Source source = xmlStuff.getResourceResolver().resolve(
@@ -195,25 +489,41 @@ public class XSpecCompiler implements LogProvider {
             schematronPath,
             xspecDocument.getBaseURI().toString())
     );
-    schematronCompiler.setInitialContextNode(xmlStuff.getDocumentBuilder().build(source));
-    schematronCompiler.transform();
-    getLog().debug("Schematron compiled ! " + compiledSchematronDest.getAbsolutePath());
+    XdmNode schema = xmlStuff.getDocumentBuilder().build(source);
+
+    // compiling schematron, in memory, once for all XSpecs that share it
+    XdmNode compiledSchematron = compiledSchematronCache.get(computeSchematronKey(schema), location -> {
+      XsltTransformer schematronCompiler = xmlStuff.getSchematronCompiler().load();
+      schematronCompiler.setParameter(new QName("STEP1-PREPROCESSOR-URI"), new XdmAtomicValue(xmlStuff.getSchematronResources().getSchStep1Uri()));
+      schematronCompiler.setParameter(new QName("STEP2-PREPROCESSOR-URI"), new XdmAtomicValue(xmlStuff.getSchematronResources().getSchStep2Uri()));
+      schematronCompiler.setParameter(new QName("STEP3-PREPROCESSOR-URI"), new XdmAtomicValue(xmlStuff.getSchematronResources().getSchStep3Uri()));
+      XdmDestination destination = XmlStuff.newXdmDestination(location.toURI());
+      schematronCompiler.setDestination(toTree(destination, location, keepFiles && compiledSchematronCache.getCacheDir() == null));
+      schematronCompiler.setInitialContextNode(schema);
+      schematronCompiler.transform();
+      getLog().debug("Schematron compiled ! " + location.getAbsolutePath());
+      return XmlStuff.getXdmNode(destination);
+    });
+    File compiledSchematronDest = new File(compiledSchematron.getBaseURI());
+    // the compiled XSpec imports it from compiledSchematronDest
+    xmlStuff.registerInMemoryDocument(compiledSchematron);
 
     // modifying xspec to point to compiled schematron
     XsltTransformer schut = xmlStuff.getSchematronSchut().load();
     schut.setParameter(QN_STYLESHEET, new XdmAtomicValue(compiledSchematronDest.toURI().toString()));
     schut.setInitialContextNode(xspecDocument);
     File resultFile = getCompiledXspecSchematronPath(options.reportDir, sourceFile);
-    // WARNING : we can't use a XdmDestination, the XdmNode generated does not have
-    // an absolute systemId, which is used in processXsltXSpec(XdmNode xspec)
-    Serializer schutSerializer = xmlStuff.newSerializer(Files.newOutputStream(resultFile.toPath()));
-    schut.setDestination(schutSerializer);
+    // resultFile is the base URI and system ID of the generated XSpec, used in
+    // processXsltXSpec(XdmNode xspec)
+    XdmDestination schutResult = XmlStuff.newXdmDestination(resultFile.toURI());
+    schut.setDestination(toTree(schutResult, resultFile, keepFiles));
     schut.setBaseOutputURI(resultFile.toURI().toString());
     schut.transform();
     getLog().debug("XSpec for schematron compiled: " + resultFile.getAbsolutePath());
-    XdmNode result = xmlStuff.getDocumentBuilder().build(resultFile);
-    if (!resultFile.exists()) {
-      getLog().error(resultFile.getAbsolutePath() + " has not be written");
+    XdmNode result = XmlStuff.getXdmNode(schutResult);
+    XdmNode previous = registeredSchematrons.put(resultFile.toURI().toString(), compiledSchematron);
+    if (previous != null) {
+      xmlStuff.unregisterInMemoryDocument(previous);
     }
 
     // copy resources referenced from XSpec
@@ -267,6 +577,29 @@ public class XSpecCompiler implements LogProvider {
     return getXSpecResultPath(xspecReportDir, xspec, "html");
   }
 
+  /**
+   * Get location of XSpec surefire report. It is computed as {@code surefire-reporter.xsl}
+   * does : {@code TEST-<relative directory, with dots>.<XSpec file name>.xml}
+   *
+   * @param xspec The XSpec file
+   * @return The surefire report, or {@code null} if it can not be computed
+   */
+  public final File getSurefireReportPath(final File xspec) {
+    try {
+      String baseDir = options.testDir.toURI().toURL().toExternalForm();
+      String xspecUri = xspec.toURI().toURL().toExternalForm();
+      String relativePath = xspecUri.startsWith(baseDir) ? xspecUri.substring(baseDir.length()) : "";
+      int lastSlash = relativePath.lastIndexOf('/');
+      String pkg = lastSlash < 0 ? "" : relativePath.substring(0, lastSlash).replace('/', '.');
+      String fileName = relativePath.substring(lastSlash + 1);
+      return new File(new URI(
+          options.surefireReportDir.toURI().toURL().toExternalForm()
+              + "/TEST-" + pkg + (pkg.isEmpty() ? "" : ".") + fileName + ".xml"));
+    } catch (MalformedURLException | URISyntaxException | IllegalArgumentException ex) {
+      return null;
+    }
+  }
+
   /**
    * Get location for Compiled XSpecs
    * @param xspecReportDir The directory to place XSpec reports in
@@ -393,17 +726,15 @@ public class XSpecCompiler implements LogProvider {
   }
 
   private File getExecutionReportDir(File xspecReportDir) {
-    File executionReportDir = executionReportDirs.get(xspecReportDir);
-    if (executionReportDir == null) {
-      executionReportDir = (
+    return executionReportDirs.computeIfAbsent(xspecReportDir, dir -> {
+      File executionReportDir = (
           options.executionId != null && !"default".equals(options.executionId) ?
-              new File(xspecReportDir, options.executionId) :
-              xspecReportDir);
+              new File(dir, options.executionId) :
+              dir);
       executionReportDir.mkdirs();
-      getLog().debug("executionReportDir(" + xspecReportDir.getAbsolutePath() + ")=" + executionReportDir.getAbsolutePath());
-      executionReportDirs.put(xspecReportDir, executionReportDir);
-    }
-    return executionReportDir;
+      getLog().debug("executionReportDir(" + dir.getAbsolutePath() + ")=" + executionReportDir.getAbsolutePath());
+      return executionReportDir;
+    });
   }
 
   private void checkDirExists(final File xspecReportDir) {
@@ -27,7 +27,10 @@
 package io.xspec.maven.xspecMavenPlugin.utils;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Source;
@@ -63,6 +66,7 @@ public class XSpecCounterContentHandler extends DefaultHandler2 {
     private final boolean activateLogs;
     private final String LOG_PREFIX;
     private XSpecCounterContentHandler importedTestFilter;
+    private final List<String> importedSystemIds;
     
     public XSpecCounterContentHandler(final String systemId, final ResourceResolver resourceResolver, final LogProvider logProvider, boolean activateLogs, String... prefix) {
         super();
@@ -76,6 +80,7 @@ public class XSpecCounterContentHandler extends DefaultHandler2 {
         globalCounters = new Counters();
         currentCounters = globalCounters;
         sharedScenarios = new HashMap<>();
+        importedSystemIds = new ArrayList<>();
     }
 
     @Override
@@ -129,6 +134,7 @@ public class XSpecCounterContentHandler extends DefaultHandler2 {
                 logProvider.getLog().error("while resolving "+atts.getValue("href")+" to "+systemId, ex);
             }
             if(importedSystemId!=null) {
+                importedSystemIds.add(importedSystemId);
                 // We must create a new parser, a new filter, and so on...
                 try {
                     if(activateLogs) {
@@ -177,6 +183,7 @@ public class XSpecCounterContentHandler extends DefaultHandler2 {
             }
             this.currentCounters.tests = this.currentCounters.tests + importedTestFilter.getTests();
             this.currentCounters.pendingTests = this.currentCounters.pendingTests + importedTestFilter.getPendingTests();
+            importedSystemIds.addAll(importedTestFilter.getImportedSystemIds());
             importedTestFilter = null;
         }
     }
@@ -206,6 +213,15 @@ public class XSpecCounterContentHandler extends DefaultHandler2 {
         return globalCounters.pendingTests;
     }
 
+    /**
+     * The system IDs of XSpecs imported, directly or not, by the provided XSpec
+     *
+     * @return The imported XSpecs system IDs
+     */
+    public List<String> getImportedSystemIds() {
+        return Collections.unmodifiableList(importedSystemIds);
+    }
+
     public static class Counters {
         private int tests = 0;
         private int pendingTests = 0;
@@ -27,17 +27,24 @@
 package io.xspec.maven.xspecMavenPlugin.utils;
 
 import io.xspec.maven.xspecMavenPlugin.XSpecRunner;
+import net.sf.saxon.s9api.Axis;
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XdmSequenceIterator;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.ext.DefaultHandler2;
 
 /**
- * Extracts test results from the SAX Stream.
+ * Extracts test results from the SAX Stream, or from the result tree.
  * The stream is the result of XSpec execution
  *
  * @author <a href="mailto:adam.retter@googlemail.com">Adam Retter</a>
  */
 public class XSpecResultsHandler extends DefaultHandler2 {
+    private static final QName QN_TEST = new QName(XSpecRunner.XSPEC_NS, "test");
+    private static final QName QN_SUCCESSFUL = new QName("successful");
+    private static final QName QN_PENDING = new QName("pending");
 
     private int tests = 0;
     private int passed = 0;
@@ -52,16 +59,31 @@ public class XSpecResultsHandler extends DefaultHandler2 {
     public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
         super.startElement(uri, localName, qName, attributes);
         if(localName.equals("test") && XSpecRunner.XSPEC_NS.equals(uri)) {
-            tests++;
-            final String successful = attributes.getValue("successful");
-            final String sPending = attributes.getValue("pending");
-            if(successful != null && successful.equals("true")) {
-                passed++;
-            } else if(sPending!=null && sPending.length()>0) {
-                this.pending++;
-            } else {
-                failed++;
-            }
+            count(attributes.getValue("successful"), attributes.getValue("pending"));
+        }
+    }
+
+    /**
+     * Extracts test results from the result tree, reading attributes of tests directly,
+     * without streaming the tree.
+     * @param result The result of XSpec execution
+     */
+    public void readResults(XdmNode result) {
+        XdmSequenceIterator<XdmNode> it = result.axisIterator(Axis.DESCENDANT, QN_TEST);
+        while(it.hasNext()) {
+            XdmNode test = it.next();
+            count(test.getAttributeValue(QN_SUCCESSFUL), test.getAttributeValue(QN_PENDING));
+        }
+    }
+
+    private void count(String successful, String sPending) {
+        tests++;
+        if(successful != null && successful.equals("true")) {
+            passed++;
+        } else if(sPending!=null && sPending.length()>0) {
+            this.pending++;
+        } else {
+            failed++;
         }
     }
 
@@ -34,6 +34,7 @@ import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLFilterImpl;
 
 import javax.xml.transform.URIResolver;
+import java.util.List;
 
 /**
  * Extracts test results from the XSpec Reader
@@ -86,4 +87,13 @@ public class XSpecTestFilter extends XMLFilterImpl implements ContentHandler {
     public int getPendingTests() {
         return innerCH.getTests();
     }
+
+    /**
+     * The system IDs of XSpecs imported, directly or not, by the provided XSpec
+     *
+     * @return The imported XSpecs system IDs
+     */
+    public List<String> getImportedSystemIds() {
+        return innerCH.getImportedSystemIds();
+    }
 }
@@ -26,6 +26,7 @@
  */
 package io.xspec.maven.xspecMavenPlugin.utils;
 
+import io.xspec.maven.xspecMavenPlugin.fork.OptionsCodec;
 import io.xspec.maven.xspecMavenPlugin.resolver.XSpecResourceResolver;
 import io.xspec.maven.xspecMavenPlugin.resources.SchematronImplResources;
 import io.xspec.maven.xspecMavenPlugin.resources.XSpecImplResources;
@@ -49,12 +50,24 @@ import javax.xml.transform.stream.StreamSource;
 import java.io.*;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Enumeration;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class holds all utility variables need to process XSPec (XsltCompiler, XPathCompiler, compiled Xslt, and so on...)
@@ -64,23 +77,31 @@ public class XmlStuff {
   private final Processor processor;
   private final DocumentBuilder documentBuilder;
   private final XsltCompiler xsltCompiler;
+  private final XsltCompiler tracingXsltCompiler;
   private final XQueryCompiler xqueryCompiler;
+  private final XQueryModuleCache xqueryModuleCache;
   private final XPathCompiler xpathCompiler;
-  private final ResourceResolver xspecResourceResolver;
-  private XsltExecutable xspec4xsltCompiler;
-  private XsltExecutable xspec4xqueryCompiler;
-  private XsltExecutable reporter;
+  private final XSpecResourceResolver xspecResourceResolver;
+  private LazyExecutable xspec4xsltCompiler;
+  private LazyExecutable xspec4xqueryCompiler;
+  private LazyExecutable reporter;
   private XsltExecutable junitReporter;
-  private XsltExecutable coverageReporter;
-  private XsltExecutable xeSurefire;
-  private XsltExecutable xmlDependencyScanner;
+  private LazyExecutable coverageReporter;
+  private LazyExecutable xeSurefire;
+  private LazyExecutable xmlDependencyScanner;
   private XPathExecutable xpExecGetXSpecType;
   private XPathExecutable xpFileSearcher;
+  private XPathExecutable xpXSpecOriginalLocation;
+  private XPathExecutable xpSchematronLocation;
+  private XPathExecutable xpSchematronIncludes;
+  private XPathExecutable xpXQueryLibraryLocation;
+  private XPathExecutable xpHelperLocations;
+  private XPathExecutable xpDependencies;
 
   public final static QName QN_REPORT_CSS = new QName("report-css-uri");
   public static final String RESOURCES_TEST_REPORT_CSS = "resources/test-report.css";
-  private XsltExecutable schematronCompiler;
-  private XsltExecutable schSchut;
+  private LazyExecutable schematronCompiler;
+  private LazyExecutable schSchut;
   private final Log log;
   private final XSpecImplResources xspecResources;
   private final XSpecPluginResources pluginResources;
@@ -88,6 +109,8 @@ public class XmlStuff {
   private final File baseDir;
   private final RunnerOptions options;
   private final Properties executionProperties;
+  private SefCache sefCache;
+  private String environmentFingerprint;
   public static final SAXParserFactory PARSER_FACTORY = SAXParserFactory.newInstance();
   private static final Class[] EMPTY_PARAMS = new Class[]{};
 
@@ -128,19 +151,29 @@ public class XmlStuff {
     }
     getLog().debug("URI resolver Ok");
     try {
+      // trace instrumentation slows down execution, it is only used for coverage
       xsltCompiler = processor.newXsltCompiler();
-      xsltCompiler.setCompileWithTracing(true);
       xsltCompiler.setResourceResolver(xspecResourceResolver);
+      tracingXsltCompiler = processor.newXsltCompiler();
+      tracingXsltCompiler.setCompileWithTracing(true);
+      tracingXsltCompiler.setResourceResolver(xspecResourceResolver);
       xpathCompiler = processor.newXPathCompiler();
       xpathCompiler.declareNamespace("x", XSpecMojo.XSPEC_NS);
+      // there is no coverage for XQuery, so queries are never compiled with tracing
       xqueryCompiler = processor.newXQueryCompiler();
-      xqueryCompiler.setCompileWithTracing(true);
+      xqueryModuleCache = new XQueryModuleCache(xqueryCompiler, getLog());
       try {
         doAdditionalConfiguration(saxonOptions);
       } catch (XPathException ex) {
         throw new XSpecPluginException(ex);
       }
       loadAllSaxonExtensionFunctions();
+      environmentFingerprint = computeEnvironmentFingerprint(saxonOptions);
+      // SEF files can only be exported by Saxon-EE, and are specific to an edition
+      if (options.sefCacheDir != null && isSaxonEE()) {
+        sefCache = new SefCache(options.sefCacheDir, environmentFingerprint, getLog());
+        getLog().debug("Using SEF cache " + sefCache.getVersionDir().getAbsolutePath());
+      }
       try {
         createXPathExecutables();
         getLog().debug("XPath executables created");
@@ -223,6 +256,17 @@ public class XmlStuff {
             + "'/', "
             + "/*[local-name() = 'description']/@schematron))"));
     setXpFileSearcher(getXPathCompiler().compile("//file[@dependency-type!='x:description'][not(starts-with(@abs-uri,'jar:file:'))]"));
+    // XPathCompiler is not thread-safe, all XPath used while running XSpecs are compiled here
+    xpXSpecOriginalLocation = getXPathCompiler().compile("/x:description/@xspec-original-location");
+    xpSchematronLocation = getXPathCompiler().compile("/*/@schematron");
+    xpSchematronIncludes = getXPathCompiler().compile(
+        "//(Q{http://purl.oclc.org/dsdl/schematron}include"
+            + "|Q{http://purl.oclc.org/dsdl/schematron}extends"
+            + "|Q{http://www.w3.org/1999/XSL/Transform}include"
+            + "|Q{http://www.w3.org/1999/XSL/Transform}import)/@href");
+    xpXQueryLibraryLocation = getXPathCompiler().compile("/x:description/@query-at");
+    xpHelperLocations = getXPathCompiler().compile("//x:helper/(@stylesheet|@query-at)");
+    xpDependencies = getXPathCompiler().compile("//file/@abs-uri[not(starts-with(., 'jar:'))]");
   }
 
   private void createXsltExecutables() throws XSpecPluginException, SaxonApiException, IOException, URISyntaxException {
@@ -237,38 +281,218 @@ public class XmlStuff {
     getLog().debug("Using XML dependency scanner: " + pluginResources.getDependencyScannerUri());
     String baseUri = baseDir != null ? baseDir.toURI().toURL().toExternalForm() : null;
 
-    // compilers
-    Source srcXsltCompiler = resolveSrc(xspecResources.getXSpecXslCompilerUri(), baseUri, "XSpec XSL Compiler");
-    Source srcXqueryCompiler = resolveSrc(xspecResources.getXSpecXQueryCompilerUri(), baseUri, "XSpec XQuery Compiler");
-    Source srcReporter = resolveSrc(xspecResources.getXSpecReporterUri(options.folding), baseUri, "XSpec Reporter");
-    Source srcCoverageReporter = resolveSrc(xspecResources.getXSpecCoverageReporterUri(), baseUri, "Coverage Reporter");
-
+    // used by all XSpecs, compiled at startup, unless XSpecs are run by a daemon
+    xspec4xsltCompiler = lazyExecutable(xspecResources.getXSpecXslCompilerUri(), baseUri, "XSpec XSL Compiler");
+    reporter = new LazyExecutable("XSpec Reporter", () -> {
+      Source srcReporter = resolveSrc(xspecResources.getXSpecReporterUri(options.folding), baseUri, "XSpec Reporter");
+      return compileCached(srcReporter, () -> compileReporter(srcReporter));
+    });
+    // surefire reporter
+    xeSurefire = new LazyExecutable("Surefire reporter", () -> {
+      URL surefireReporter = getClass().getResource("/surefire-reporter.xsl");
+      Source srcSurefire = new StreamSource(surefireReporter.openStream(), surefireReporter.toExternalForm());
+      return compileCached(srcSurefire, () -> compileXsl(srcSurefire));
+    });
+
+    // only used by some XSpecs, compiled on first use, unless eagerCompilation is set
+    xspec4xqueryCompiler = lazyExecutable(xspecResources.getXSpecXQueryCompilerUri(), baseUri, "XSpec XQuery Compiler");
+    // for code coverage
+    if (isSaxonPEorEE()) {
+      coverageReporter = lazyExecutable(xspecResources.getXSpecCoverageReporterUri(), baseUri, "Coverage Reporter");
+    }
     // Schematron
-    Source srcSchematronCompiler = resolveSrc(xspecResources.getSchematronCompilerUri(), baseUri, "Schematron compiler");
-    Source srcSchSchut = resolveSrc(xspecResources.getSchematronSchutConverterUri(), baseUri, "Schematron unit-test to XSpec converter");
-
+    schematronCompiler = lazyExecutable(xspecResources.getSchematronCompilerUri(), baseUri, "Schematron compiler");
+    schSchut = lazyExecutable(xspecResources.getSchematronSchutConverterUri(), baseUri, "Schematron unit-test to XSpec converter");
     // dependency scanner
-    Source srcXmlDependencyScanner = resolveSrc(pluginResources.getDependencyScannerUri(), baseUri, "Xml dependency scanner");
+    xmlDependencyScanner = lazyExecutable(pluginResources.getDependencyScannerUri(), baseUri, "Xml dependency scanner");
 
-    // for code coverage
-    setXspec4xsltCompiler(compileXsl(srcXsltCompiler));
-    setXspec4xqueryCompiler(compileXsl(srcXqueryCompiler));
-    setReporter(compileReporter(srcReporter));
-    if (isSaxonPEorEE()) {
-      setCoverageReporter(compileXsl(srcCoverageReporter));
+    List<LazyExecutable> startup = new ArrayList<>();
+    if (!Boolean.TRUE.equals(options.daemon)) {
+      startup.addAll(Arrays.asList(xspec4xsltCompiler, reporter, xeSurefire));
+    }
+    if (Boolean.TRUE.equals(options.eagerCompilation)) {
+      startup.addAll(Arrays.asList(xspec4xqueryCompiler, schematronCompiler, schSchut, xmlDependencyScanner));
+      if (coverageReporter != null) {
+        startup.add(coverageReporter);
+      }
+    }
+    compileConcurrently(startup);
+  }
+
+  /**
+   * Compiles stylesheets concurrently, and waits for all of them. Stylesheets are
+   * independent, and XsltCompiler may be shared between threads, so startup lasts as
+   * long as the slowest stylesheet compilation.
+   * @param executables Stylesheets to compile
+   * @throws SaxonApiException If a stylesheet can not be compiled
+   */
+  private void compileConcurrently(List<LazyExecutable> executables) throws SaxonApiException {
+    int poolSize = Math.min(executables.size(), Runtime.getRuntime().availableProcessors());
+    if (poolSize <= 1) {
+      for (LazyExecutable executable : executables) {
+        executable.get();
+      }
+      return;
+    }
+    AtomicInteger threadNumber = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+      Thread thread = new Thread(runnable, "xspec-compiler-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      List<Future<XsltExecutable>> futures = new ArrayList<>();
+      for (LazyExecutable executable : executables) {
+        futures.add(executor.submit(executable::get));
+      }
+      for (Future<XsltExecutable> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof SaxonApiException) {
+        throw (SaxonApiException) ex.getCause();
+      }
+      throw new SaxonApiException(ex.getCause());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new SaxonApiException("Stylesheets compilation has been interrupted", ex);
+    } finally {
+      executor.shutdownNow();
     }
-    setSchematronCompiler(compileXsl(srcSchematronCompiler));
-    setSchematronSchut(compileXsl(srcSchSchut));
-    setXmlDependencyScanner(compileXsl(srcXmlDependencyScanner));
-    setXeSurefire(compileXsl(new StreamSource(getClass().getResourceAsStream("/surefire-reporter.xsl"))));
   }
 
-  private void setSchematronCompiler(XsltExecutable xsltExecutable) {
-    schematronCompiler = xsltExecutable;
+  /**
+   * Creates a holder that resolves and compiles a stylesheet on first use.
+   */
+  private LazyExecutable lazyExecutable(String uri, String baseUri, String desc) {
+    return new LazyExecutable(desc, () -> {
+      Source source = resolveSrc(uri, baseUri, desc);
+      return compileCached(source, () -> compileXsl(source));
+    });
   }
 
-  public XsltExecutable getSchematronCompiler() {
-    return schematronCompiler;
+  /**
+   * Loads a stylesheet from SEF cache, or compiles it with {@code compilation}, and
+   * stores it in SEF cache.
+   * @param source The stylesheet source, used to identify it in cache
+   * @param compilation Compiles the stylesheet
+   * @return The stylesheet executable
+   */
+  private XsltExecutable compileCached(Source source, LazyExecutable.Compilation compilation)
+      throws SaxonApiException, XSpecPluginException, IOException, URISyntaxException {
+    if (sefCache == null || source.getSystemId() == null) {
+      return compilation.compile();
+    }
+    File sefFile;
+    try {
+      // included and imported modules change the compiled stylesheet too
+      Set<String> modules = new TreeSet<>();
+      collectModules(getDocumentBuilder().build(new StreamSource(source.getSystemId())), modules);
+      sefFile = sefCache.getSefFile(source.getSystemId(), modules);
+    } catch (IOException | SaxonApiException | TransformerException ex) {
+      getLog().debug("unable to read " + source.getSystemId() + ", SEF cache is not used", ex);
+      return compilation.compile();
+    }
+    XsltExecutable ret = sefCache.load(getXsltCompiler(), sefFile);
+    if (ret != null) {
+      getLog().debug("Loaded " + source.getSystemId() + " from " + sefFile.getAbsolutePath());
+      if (source instanceof StreamSource && ((StreamSource) source).getInputStream() != null) {
+        ((StreamSource) source).getInputStream().close();
+      }
+      return ret;
+    }
+    ret = compilation.compile();
+    sefCache.store(ret, sefFile);
+    return ret;
+  }
+
+  /**
+   * Collects system IDs of a Schematron or XSLT document and of the modules it includes
+   * or imports, directly or not.
+   * @param document The document
+   * @param modules The system IDs found
+   * @throws SaxonApiException If a module can not be parsed
+   * @throws TransformerException If a module can not be resolved
+   */
+  public void collectModules(XdmNode document, Set<String> modules) throws SaxonApiException, TransformerException {
+    modules.add(String.valueOf(document.getUnderlyingNode().getSystemId()));
+    XPathSelector xpIncludes = getXpSchematronIncludes().load();
+    xpIncludes.setContextItem(document);
+    for (XdmItem href : xpIncludes.evaluate()) {
+      Source source = getResourceResolver().resolve(
+          XSpecResourceResolver.buildRequest(
+              href.getStringValue(),
+              ((XdmNode) href).getBaseURI().toString()));
+      if (source == null) {
+        // compilation will fail
+        modules.add(href.getStringValue());
+      } else if (!modules.contains(source.getSystemId())) {
+        collectModules(getDocumentBuilder().build(source), modules);
+      } else if (source instanceof StreamSource && ((StreamSource) source).getInputStream() != null) {
+        try {
+          ((StreamSource) source).getInputStream().close();
+        } catch (IOException ex) {
+          getLog().debug(ex);
+        }
+      }
+    }
+  }
+
+  /**
+   * Computes what compiled stylesheets and XSpec results depend on, but their sources :
+   * XSpec, plugin and Saxon versions, and Saxon options.
+   */
+  private String computeEnvironmentFingerprint(SaxonOptions saxonOptions) {
+    Properties props = new Properties();
+    OptionsCodec.encode(saxonOptions, props, "");
+    return "xspec=" + getArtifactVersion("io.xspec", "xspec")
+        + ";plugin=" + getArtifactVersion("io.xspec.maven", "xspec-maven-plugin")
+        + ";saxon=" + processor.getSaxonEdition() + "-" + processor.getSaxonProductVersion()
+        + ";options=" + new TreeMap<>(props);
+  }
+
+  /**
+   * Identifies what XSpec results depend on, but XSpecs and tested code : XSpec, plugin
+   * and Saxon versions, and Saxon options.
+   * @return The environment fingerprint
+   */
+  public String getEnvironmentFingerprint() {
+    return environmentFingerprint;
+  }
+
+  /**
+   * Reads the version of an artifact from its {@code pom.properties}, in classpath.
+   * @param groupId Artifact groupId
+   * @param artifactId Artifact artifactId
+   * @return The artifact version, or {@code unknown}
+   */
+  public static String getArtifactVersion(String groupId, String artifactId) {
+    String resource = "/META-INF/maven/" + groupId + "/" + artifactId + "/pom.properties";
+    try (InputStream is = XmlStuff.class.getResourceAsStream(resource)) {
+      if (is != null) {
+        Properties props = new Properties();
+        props.load(is);
+        return props.getProperty("version", "unknown");
+      }
+    } catch (IOException ex) {
+      // version is unknown
+    }
+    return "unknown";
+  }
+
+  public boolean isSaxonEE() {
+    return "com.saxonica.config.EnterpriseConfiguration".equals(
+        processor.getUnderlyingConfiguration().getClass().getName());
+  }
+
+
+  /**
+   * Return Schematron compiler XSL. It is compiled on first call.
+   * @return Schematron compiler XSL
+   * @throws SaxonApiException If compilation fails
+   */
+  public XsltExecutable getSchematronCompiler() throws SaxonApiException {
+    return schematronCompiler.get();
   }
 
   public boolean isSaxonPEorEE() {
@@ -280,7 +504,7 @@ public class XmlStuff {
   private XsltExecutable compileReporter(Source reporterSource) throws SaxonApiException, XSpecPluginException, IOException, URISyntaxException {
     if (reporterSource.getSystemId().contains("fold")) {
       getLog().debug("reporter is folding");
-      XdmNode xslSource = documentBuilder.build(reporterSource);
+      XdmNode xslSource = getDocumentBuilder().build(reporterSource);
       XsltExecutable xslChanger = getXsltCompiler().compile(resolveSrc(pluginResources.getXsltImageChanger(), null, null));
       XsltTransformer tr = xslChanger.load();
       tr.setParameter(new QName("imgDown"), XdmValue.makeValue(encodeBase64(pluginResources.getImageDown())));
@@ -322,51 +546,69 @@ public class XmlStuff {
   }
 
   public XsltExecutable compileXsl(Source source) throws SaxonApiException {
-    getLog().info("Compiling " + source.getSystemId());
-    return getXsltCompiler().compile(source);
+    return compileXsl(source, false);
+  }
+
+  /**
+   * Compiles a stylesheet.
+   * @param source The stylesheet to compile
+   * @param tracing {@code true} to compile with trace instrumentation, required for
+   * coverage. Execution is slower.
+   * @return The compiled stylesheet
+   * @throws SaxonApiException If compilation fails
+   */
+  public XsltExecutable compileXsl(Source source, boolean tracing) throws SaxonApiException {
+    getLog().info("Compiling " + source.getSystemId() + (tracing ? " with tracing" : ""));
+    return (tracing ? getTracingXsltCompiler() : getXsltCompiler()).compile(source);
   }
 
   public Processor getProcessor() {
     return processor;
   }
 
+  /**
+   * Returns a new DocumentBuilder. A DocumentBuilder must not be shared between
+   * threads, so each caller gets its own.
+   * @return A new DocumentBuilder
+   */
   public DocumentBuilder getDocumentBuilder() {
-    return documentBuilder;
+    return processor.newDocumentBuilder();
   }
 
   public XsltCompiler getXsltCompiler() {
     return xsltCompiler;
   }
 
-  public XPathCompiler getXPathCompiler() {
-    return xpathCompiler;
-  }
-
-  public XsltExecutable getXspec4xsltCompiler() {
-    return xspec4xsltCompiler;
-  }
-
-  private void setXspec4xsltCompiler(XsltExecutable xspec4xsltCompiler) {
-    this.xspec4xsltCompiler = xspec4xsltCompiler;
+  /**
+   * Returns the compiler used for stylesheets that are run with coverage
+   * @return A compiler that compiles with tracing
+   */
+  public XsltCompiler getTracingXsltCompiler() {
+    return tracingXsltCompiler;
   }
 
-  public XsltExecutable getXspec4xqueryCompiler() {
-    return xspec4xqueryCompiler;
+  public XPathCompiler getXPathCompiler() {
+    return xpathCompiler;
   }
 
-  private void setXspec4xqueryCompiler(XsltExecutable xspec4xqueryCompiler) {
-    this.xspec4xqueryCompiler = xspec4xqueryCompiler;
+  public XsltExecutable getXspec4xsltCompiler() throws SaxonApiException {
+    return xspec4xsltCompiler.get();
   }
 
-  public XsltExecutable getReporter() {
-    return reporter;
+  /**
+   * Return XSpec for XQuery compiler XSL. It is compiled on first call.
+   * @return XSpec for XQuery compiler XSL
+   * @throws SaxonApiException If compilation fails
+   */
+  public XsltExecutable getXspec4xqueryCompiler() throws SaxonApiException {
+    return xspec4xqueryCompiler.get();
   }
 
-  private void setReporter(XsltExecutable reporter) {
-    this.reporter = reporter;
+  public XsltExecutable getReporter() throws SaxonApiException {
+    return reporter.get();
   }
 
-  public XsltTransformer getXtReporter() {
+  public XsltTransformer getXtReporter() throws SaxonApiException {
     XsltTransformer ret = getReporter().load();
     ret.setParameter(QN_REPORT_CSS, new XdmAtomicValue(RESOURCES_TEST_REPORT_CSS));
     return ret;
@@ -388,12 +630,54 @@ public class XmlStuff {
     return xspecResourceResolver;
   }
 
-  public XsltExecutable getXeSurefire() {
-    return xeSurefire;
+  /**
+   * Registers a document built in memory, so that stylesheets and documents that
+   * reference its system ID read it from memory.
+   * @param document The document, with an absolute system ID
+   * @see #getXdmNode(XdmDestination)
+   */
+  public void registerInMemoryDocument(XdmNode document) {
+    xspecResourceResolver.registerDocument(document);
+  }
+
+  /**
+   * Unregisters a document built in memory, once it is not used anymore.
+   * @param document The document, as registered
+   * @see #registerInMemoryDocument(XdmNode)
+   */
+  public void unregisterInMemoryDocument(XdmNode document) {
+    xspecResourceResolver.unregisterDocument(document);
+  }
+
+  public XsltExecutable getXeSurefire() throws SaxonApiException {
+    return xeSurefire.get();
   }
 
-  private void setXeSurefire(XsltExecutable xeSurefire) {
-    this.xeSurefire = xeSurefire;
+  /**
+   * Creates a destination for an in-memory document, that will have {@code uri} as
+   * base URI. Use {@link #getXdmNode(XdmDestination)} to get the document.
+   * @param uri The document URI, as if it had been parsed from this location
+   * @return The destination
+   */
+  public static XdmDestination newXdmDestination(final URI uri) {
+    XdmDestination ret = new XdmDestination();
+    ret.setBaseURI(uri);
+    return ret;
+  }
+
+  /**
+   * Returns the document written to a destination created by
+   * {@link #newXdmDestination(URI)}. Its system ID is set to its base URI, so it can
+   * be compiled or transformed as if it had been parsed from this location.
+   * @param destination The destination
+   * @return The document
+   */
+  public static XdmNode getXdmNode(final XdmDestination destination) {
+    XdmNode ret = destination.getXdmNode();
+    if (ret != null && destination.getBaseURI() != null) {
+      ret.getUnderlyingNode().setSystemId(destination.getBaseURI().toString());
+    }
+    return ret;
   }
 
   public Serializer newSerializer(final OutputStream os) {
@@ -411,6 +695,7 @@ public class XmlStuff {
   private void doAdditionalConfiguration(SaxonOptions saxonOptions) throws XPathException {
     if (saxonOptions != null) {
       SaxonUtils.configureXsltCompiler(getXsltCompiler(), saxonOptions);
+      SaxonUtils.configureXsltCompiler(getTracingXsltCompiler(), saxonOptions);
     }
   }
 
@@ -442,28 +727,22 @@ public class XmlStuff {
   private void setXpSchGetXSpecFile(XPathExecutable xe) {
   }
 
-  private void setSchematronSchut(XsltExecutable xe) {
-    schSchut = xe;
-  }
-
   /**
-   * Return XSL for {@code schut-to-xspec.xsl}
+   * Return XSL for {@code schut-to-xspec.xsl}. It is compiled on first call.
    * @return schut-to-xspec.xsl XSL
+   * @throws SaxonApiException If compilation fails
    */
-  public XsltExecutable getSchematronSchut() {
-    return schSchut;
+  public XsltExecutable getSchematronSchut() throws SaxonApiException {
+    return schSchut.get();
   }
 
   /**
-   * Returns XSL for dependency scanner
+   * Returns XSL for dependency scanner. It is compiled on first call.
    * @return dependency scanner XSL
+   * @throws SaxonApiException If compilation fails
    */
-  public XsltExecutable getXmlDependencyScanner() {
-    return xmlDependencyScanner;
-  }
-
-  private void setXmlDependencyScanner(XsltExecutable xmlDependencyScanner) {
-    this.xmlDependencyScanner = xmlDependencyScanner;
+  public XsltExecutable getXmlDependencyScanner() throws SaxonApiException {
+    return xmlDependencyScanner.get();
   }
 
   /**
@@ -478,6 +757,63 @@ public class XmlStuff {
     this.xpFileSearcher = xpFileSearcher;
   }
 
+  /**
+   * Return XPath that gets original XSpec location, for XSpec on Schematron
+   * @return {@code /x:description/@xspec-original-location} XPath
+   */
+  public XPathExecutable getXpXSpecOriginalLocation() {
+    return xpXSpecOriginalLocation;
+  }
+
+  /**
+   * Return XPath that gets schematron location from a XSpec
+   * @return The schematron attribute XPath
+   */
+  public XPathExecutable getXpSchematronLocation() {
+    return xpSchematronLocation;
+  }
+
+  /**
+   * Return XPath that gets the modules a Schematron includes
+   * @return The {@code @href} of Schematron and XSL includes XPath
+   */
+  public XPathExecutable getXpSchematronIncludes() {
+    return xpSchematronIncludes;
+  }
+
+  /**
+   * Return XPath that gets the location of the XQuery library tested by a XSpec
+   * @return The {@code /x:description/@query-at} XPath
+   */
+  public XPathExecutable getXpXQueryLibraryLocation() {
+    return xpXQueryLibraryLocation;
+  }
+
+  /**
+   * Return XPath that gets the stylesheets and XQuery libraries a XSpec loads as helpers
+   * @return The {@code x:helper/@stylesheet} and {@code x:helper/@query-at} XPath
+   */
+  public XPathExecutable getXpHelperLocations() {
+    return xpHelperLocations;
+  }
+
+  /**
+   * Return XPath that gets all files of a dependency tree, computed by
+   * {@link #getXmlDependencyScanner()}. Files in jars are ignored.
+   * @return The files {@code @abs-uri} XPath
+   */
+  public XPathExecutable getXpDependencies() {
+    return xpDependencies;
+  }
+
+  /**
+   * Returns the cache of XQuery executables and library modules, shared by all runs
+   * @return The XQuery module cache
+   */
+  public XQueryModuleCache getXQueryModuleCache() {
+    return xqueryModuleCache;
+  }
+
   private boolean extendsClass(Class toCheck, Class inheritor) {
     if (toCheck.equals(inheritor)) {
       return true;
@@ -492,12 +828,13 @@ public class XmlStuff {
     return junitReporter;
   }
 
-  private void setCoverageReporter(XsltExecutable xe) {
-    coverageReporter = xe;
-  }
-
-  public XsltExecutable getCoverageReporter() {
-    return coverageReporter;
+  /**
+   * Return coverage reporter XSL. It is compiled on first call.
+   * @return coverage reporter XSL, or {@code null} if Saxon is neither PE nor EE
+   * @throws SaxonApiException If compilation fails
+   */
+  public XsltExecutable getCoverageReporter() throws SaxonApiException {
+    return coverageReporter == null ? null : coverageReporter.get();
   }
 
   /**
@@ -545,4 +882,8 @@ public class XmlStuff {
   public SchematronImplResources getSchematronResources() {
     return schematronResources;
   }
+
+  public XSpecImplResources getXSpecResources() {
+    return xspecResources;
+  }
 }
\ No newline at end of file
@@ -27,7 +27,11 @@
 package uk.org.adamretter.maven;
 
 import net.sf.saxon.s9api.*;
+import io.xspec.maven.xspecMavenPlugin.XSpecEngine;
+import io.xspec.maven.xspecMavenPlugin.XSpecEngineCache;
 import io.xspec.maven.xspecMavenPlugin.XSpecRunner;
+import io.xspec.maven.xspecMavenPlugin.fork.ForkConfiguration;
+import io.xspec.maven.xspecMavenPlugin.fork.OptionsCodec;
 import io.xspec.maven.xspecMavenPlugin.resources.SchematronImplResources;
 import io.xspec.maven.xspecMavenPlugin.resources.XSpecImplResources;
 import io.xspec.maven.xspecMavenPlugin.resources.XSpecPluginResources;
@@ -49,6 +53,8 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 import java.io.*;
 import java.util.List;
 import java.util.Properties;
+import java.util.TreeMap;
+import net.sf.saxon.Version;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.project.MavenProject;
@@ -304,6 +310,137 @@ public class XSpecMojo extends AbstractMojo implements LogProvider {
     @Parameter(defaultValue = "false")
     private boolean folding;
     
+    /**
+     * Number of XSpec files to run in parallel. Default is 1, XSpec files are
+     * run one after the other. 0 means one thread per available processor.
+     */
+    @Parameter(property = "xspec.threads", defaultValue = "1")
+    public int threads;
+    
+    /**
+     * Number of forked JVMs used to run XSpec files. Default is 0, XSpec files are
+     * run inside Maven JVM. Each forked JVM initializes Saxon once, and runs XSpec
+     * files one after the other. When set, {@code threads} is ignored.
+     */
+    @Parameter(property = "xspec.forkCount", defaultValue = "0")
+    public int forkCount;
+    
+    /**
+     * Number of XSpec files a forked JVM runs before being replaced by a new one.
+     * Default is 0, forked JVMs are never replaced.
+     */
+    @Parameter(property = "xspec.forkRecycleAfter", defaultValue = "0")
+    public int forkRecycleAfter;
+    
+    /**
+     * JVM arguments for forked JVMs, for example {@code -Xmx2g -XX:+UseParallelGC}.
+     */
+    @Parameter(property = "xspec.forkArgLine")
+    public String forkArgLine;
+    
+    /**
+     * Stops running XSpec files after the first failed one. Remaining XSpec
+     * files are reported as not run.
+     */
+    @Parameter(property = "xspec.failFast", defaultValue = "false")
+    public boolean failFast;
+    
+    /**
+     * Number of failed XSpec files after which remaining XSpec files are not
+     * run. Default is 0, all XSpec files are run.
+     */
+    @Parameter(property = "xspec.maxFailures", defaultValue = "0")
+    public int maxFailures;
+    
+    /**
+     * Number of shards XSpec files are split into, when build is distributed
+     * across several CI nodes. Default is 1, all XSpec files are run.
+     */
+    @Parameter(property = "xspec.shardCount", defaultValue = "1")
+    public int shardCount;
+    
+    /**
+     * Index of the shard to run, from 0 to shardCount-1.
+     */
+    @Parameter(property = "xspec.shardIndex", defaultValue = "0")
+    public int shardIndex;
+    
+    /**
+     * How XSpec files are distributed across shards: <tt>hash</tt> of their
+     * relative path, or <tt>duration</tt> recorded in previous runs.
+     */
+    @Parameter(property = "xspec.shardStrategy", defaultValue = "hash")
+    public String shardStrategy;
+    
+    /**
+     * Caches compiled XSpecs across builds. A compiled XSpec is reused as long as
+     * the XSpec file, the XSpec files it imports, XSpec and Saxon versions do not change.
+     * Cached XSpecs are written to disk ; without cache, they are only kept in memory.
+     */
+    @Parameter(property = "xspec.cache", defaultValue = "false")
+    public boolean cache;
+    
+    /**
+     * Directory where compiled XSpecs are cached.
+     */
+    @Parameter(property = "xspec.cacheDir", defaultValue = "${project.build.directory}/xspec-cache")
+    public File cacheDir;
+    
+    /**
+     * Caches the plugin's own stylesheets (XSpec compilers, reporters, ...) as SEF
+     * files in the local repository, so they are not compiled on each execution.
+     * SEF files can only be written by Saxon-EE ; with other editions, this is ignored.
+     */
+    @Parameter(property = "xspec.sefCache", defaultValue = "false")
+    public boolean sefCache;
+    
+    /**
+     * Directory where the plugin's own stylesheets are cached.
+     */
+    @Parameter(property = "xspec.sefCacheDir", defaultValue = "${settings.localRepository}/io/xspec/xspec-maven-plugin/sef-cache")
+    public File sefCacheDir;
+    
+    /**
+     * Compiles all the plugin's own stylesheets at startup. By default, stylesheets
+     * only needed for Schematron, XQuery or coverage are compiled on first use.
+     */
+    @Parameter(property = "xspec.eagerCompilation", defaultValue = "false")
+    public boolean eagerCompilation;
+    
+    /**
+     * Writes compiled XSpecs in report directory, for debugging. Otherwise, compiled
+     * XSpecs are run from memory, and only written when they are cached.
+     */
+    @Parameter(property = "xspec.keepCompiledXSpecs", defaultValue = "false")
+    public boolean keepCompiledXSpecs;
+    
+    /**
+     * Runs only XSpecs whose XSpec file, tested code or imported files changed since
+     * their last run. Results of other XSpecs are carried forward from previous run.
+     */
+    @Parameter(property = "xspec.incremental", defaultValue = "false")
+    public boolean incremental;
+    
+    /**
+     * In incremental mode, runs all XSpecs, even if their results could be reused.
+     */
+    @Parameter(property = "xspec.forceRerun", defaultValue = "false")
+    public boolean forceRerun;
+    
+    /**
+     * Runs XSpecs in a background JVM, that is started by the first build and kept
+     * alive between builds, with Saxon initialized and plugin stylesheets compiled.
+     * A daemon is shared by builds with the same configuration.
+     */
+    @Parameter(property = "xspec.daemon", defaultValue = "false")
+    public boolean daemon;
+    
+    /**
+     * Minutes a daemon waits for a build before exiting.
+     */
+    @Parameter(property = "xspec.daemonIdleTimeout", defaultValue = "180")
+    public int daemonIdleTimeout;
+    
     @Parameter(defaultValue = "${mojoExecution}", readonly = true)
     public MojoExecution execution;
     
@@ -322,29 +459,15 @@ public class XSpecMojo extends AbstractMojo implements LogProvider {
             getLog().info("'skipTests' is set... skipping XSpec tests!");
             return;
         }
-        XSpecImplResources xspecResources = getXSpecResources();
-        SchematronImplResources schResources = getSchematronResources();
-        XSpecPluginResources pluginResources = getXSpecPluginResources();
-        RunnerOptions options = new RunnerOptions(
-                project.getBasedir(), 
-                keepGeneratedCatalog, 
-                catalogFile, 
-                excludes, 
-                testDir,
-                reportDir,
-                execution==null ? null : execution.getExecutionId(),
-                surefireReportDir,
-                coverage,
-                folding);
-        Properties environment = new Properties();
-        environment.putAll(session.getUserProperties());
-        environment.putAll(session.getSystemProperties());
-        XSpecRunner runner = new XSpecRunner(getLog(), project.getBasedir());
-        runner.setResources(xspecResources, schResources, pluginResources);
-        runner.setEnvironment(environment, options);
+        RunnerOptions options = createRunnerOptions();
+        XSpecRunner runner = createRunner(options);
+        if(runner.isModuleUpToDate(getModuleConfiguration(options))) {
+            getLog().info("Nothing changed since last successful run, reports in "+options.reportDir.getAbsolutePath()+" are up to date");
+            return;
+        }
 
         try {
-            runner.init(saxonOptions);
+            runner.init(getEngine(options));
             runner.execute();
         } catch(XSpecPluginException ex) {
             if(!testFailureIgnore) {
@@ -360,6 +483,119 @@ public class XSpecMojo extends AbstractMojo implements LogProvider {
     }
     
 
+    /**
+     * Creates runner options from plugin configuration
+     * @return The options
+     */
+    protected RunnerOptions createRunnerOptions() {
+        RunnerOptions options = new RunnerOptions(
+                project.getBasedir(), 
+                keepGeneratedCatalog, 
+                catalogFile, 
+                excludes, 
+                testDir,
+                reportDir,
+                execution==null ? null : execution.getExecutionId(),
+                surefireReportDir,
+                coverage,
+                folding);
+        options.threads = threads;
+        options.forkCount = forkCount;
+        options.forkRecycleAfter = forkRecycleAfter;
+        options.forkArgLine = forkArgLine;
+        options.failFast = failFast;
+        options.maxFailures = maxFailures;
+        options.shardCount = shardCount;
+        options.shardIndex = shardIndex;
+        options.shardStrategy = shardStrategy;
+        options.cache = cache;
+        options.cacheDir = cacheDir;
+        options.sefCacheDir = sefCache ? sefCacheDir : null;
+        options.eagerCompilation = eagerCompilation;
+        options.keepCompiledXSpecs = keepCompiledXSpecs;
+        options.incremental = incremental;
+        options.forceRerun = forceRerun;
+        options.daemon = daemon;
+        options.daemonIdleTimeout = daemonIdleTimeout;
+        return options;
+    }
+    
+    /**
+     * Creates a runner, not initialized
+     * @param options Runner options
+     * @return The runner
+     */
+    protected XSpecRunner createRunner(RunnerOptions options) {
+        XSpecRunner runner = new XSpecRunner(getLog(), project.getBasedir());
+        runner.setResources(getXSpecResources(), getSchematronResources(), getXSpecPluginResources());
+        runner.setEnvironment(getEnvironment(), options);
+        return runner;
+    }
+    
+    /**
+     * Returns the engine to run XSpecs with. Executions and modules of the build that use
+     * the same Saxon options, implementation resources, catalog and engine options share
+     * the same engine, so XSpec implementation is compiled only once. Engine does not
+     * depend on a module : runner has its own log and project directory.
+     * @param options Runner options
+     * @return The engine
+     * @throws XSpecPluginException If engine can not be built
+     */
+    protected XSpecEngine getEngine(RunnerOptions options) throws XSpecPluginException {
+        return getEngineCache().getEngine(
+                getLog(), 
+                session==null || session.getExecutionRootDirectory()==null ? 
+                        project.getBasedir() : 
+                        new File(session.getExecutionRootDirectory()), 
+                getXSpecResources(), 
+                getSchematronResources(), 
+                getXSpecPluginResources(), 
+                saxonOptions, 
+                getEnvironment(), 
+                options);
+    }
+    
+    /**
+     * Returns the engine cache of the build. The cache class is the key, so a plugin
+     * loaded in another class realm has its own cache.
+     */
+    private XSpecEngineCache getEngineCache() {
+        if(session==null || session.getRepositorySession()==null) {
+            return new XSpecEngineCache();
+        }
+        return (XSpecEngineCache)session.getRepositorySession().getData()
+                .computeIfAbsent(XSpecEngineCache.class, XSpecEngineCache::new);
+    }
+    
+    private Properties getEnvironment() {
+        Properties environment = new Properties();
+        environment.putAll(session.getUserProperties());
+        environment.putAll(session.getSystemProperties());
+        return environment;
+    }
+    
+    /**
+     * Identifies everything XSpec results depend on, but XSpecs and tested files :
+     * plugin configuration, Saxon options, and versions of plugin, XSpec and Saxon.
+     * Computed without initializing anything, to check if module is up to date.
+     */
+    private String getModuleConfiguration(RunnerOptions options) {
+        Properties props = new Properties();
+        OptionsCodec.encode(options, props, "options.");
+        // scheduling options do not change results
+        for(String name: ForkConfiguration.NOT_FINGERPRINTED_OPTIONS) {
+            props.remove("options." + name);
+        }
+        OptionsCodec.encode(saxonOptions, props, "saxon.");
+        OptionsCodec.encode(getXSpecResources(), props, "xspecResources.");
+        OptionsCodec.encode(getSchematronResources(), props, "schResources.");
+        OptionsCodec.encode(getXSpecPluginResources(), props, "pluginResources.");
+        return "xspec="+XmlStuff.getArtifactVersion("io.xspec", "xspec")
+                + ";plugin="+XmlStuff.getArtifactVersion("io.xspec.maven", "xspec-maven-plugin")
+                + ";saxon="+Version.getProductVersion()
+                + ";configuration="+new TreeMap<>(props);
+    }
+
     protected boolean isSkipTests() {
         return skipTests;
     }
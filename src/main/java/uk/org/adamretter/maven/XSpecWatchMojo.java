@@ -0,0 +1,108 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * * Neither the name of the <organization> nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.org.adamretter.maven;
+
+import io.xspec.maven.xspecMavenPlugin.XSpecRunner;
+import io.xspec.maven.xspecMavenPlugin.utils.FileWatcher;
+import io.xspec.maven.xspecMavenPlugin.utils.RunnerOptions;
+import io.xspec.maven.xspecMavenPlugin.utils.XSpecPluginException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+/**
+ * Runs XSpecs, then runs them again each time a file they depend on changes, until
+ * Maven is stopped : <tt>mvn xspec:watch</tt>.
+ * <p>
+ * The runner is initialized once. Test directory and directories of tested files are
+ * watched ; on each change, only XSpecs whose XSpec file, tested code or imported
+ * files have changed are run again, as in incremental mode, and the index is
+ * generated again.
+ * </p>
+ * @author cmarchand
+ */
+@Mojo(name = "watch", requiresDependencyResolution = ResolutionScope.TEST)
+public class XSpecWatchMojo extends XSpecMojo {
+    /**
+     * Delay without change before XSpecs are run, in milliseconds
+     */
+    private static final long QUIET_PERIOD = 300;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        RunnerOptions options = createRunnerOptions();
+        // XSpecs are only run again if one of their dependencies has changed
+        options.incremental = true;
+        options.forceRerun = false;
+        XSpecRunner runner = createRunner(options);
+        try {
+            runner.init(getEngine(options));
+        } catch(XSpecPluginException ex) {
+            throw new MojoExecutionException("Unable to initialize XSpec runner", ex);
+        }
+        try (FileWatcher watcher = new FileWatcher(
+                getLog(), 
+                Arrays.asList(options.reportDir.toPath(), options.surefireReportDir.toPath(), options.cacheDir.toPath()))) {
+            while(true) {
+                runXSpecs(runner);
+                watcher.watchTree(options.testDir.toPath());
+                watcher.watch(runner.getDependencyDirectories());
+                getLog().info("Watching "+options.testDir.getAbsolutePath()+" and tested files, press Ctrl+C to stop");
+                Set<Path> changes = watcher.waitForChanges(QUIET_PERIOD);
+                for(Path change: changes) {
+                    getLog().info("Changed: "+change);
+                }
+            }
+        } catch(IOException ex) {
+            throw new MojoExecutionException("Unable to watch files", ex);
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Runs XSpecs, and generates the index. Failures are logged, watching goes on.
+     */
+    private void runXSpecs(XSpecRunner runner) {
+        try {
+            runner.execute();
+        } catch(XSpecPluginException ex) {
+            getLog().warn("Some XSpec tests failed or were missed!");
+        } finally {
+            try {
+                runner.generateIndex();
+            } catch(XSpecPluginException ex) {
+                getLog().warn("Unable to generate index", ex);
+            }
+        }
+    }
+}
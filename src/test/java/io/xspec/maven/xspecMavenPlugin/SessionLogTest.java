@@ -0,0 +1,71 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author cmarchand
+ */
+public class SessionLogTest {
+
+    @Test
+    public void bindTest() throws Exception {
+        List<String> engineEntries = new ArrayList<>();
+        List<String> sessionEntries = new ArrayList<>();
+        SessionLog log = new SessionLog(new RecordingLog(engineEntries));
+        log.info("startup");
+        Thread session = new Thread(() -> {
+            log.bind(new RecordingLog(sessionEntries));
+            log.info("session");
+        });
+        session.start();
+        session.join();
+        log.info("other thread");
+        assertEquals("wrong engine entries", 2, engineEntries.size());
+        assertEquals("wrong session entries", 1, sessionEntries.size());
+        assertEquals("session", sessionEntries.get(0));
+    }
+
+    private static class RecordingLog extends SystemStreamLog {
+        private final List<String> entries;
+
+        RecordingLog(List<String> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public void info(CharSequence content) {
+            entries.add(content.toString());
+        }
+    }
+}
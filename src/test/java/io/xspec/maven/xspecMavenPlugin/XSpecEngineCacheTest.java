@@ -0,0 +1,97 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin;
+
+import io.xspec.maven.xspecMavenPlugin.resources.impl.DefaultSchematronImplResources;
+import io.xspec.maven.xspecMavenPlugin.resources.impl.DefaultXSpecImplResources;
+import io.xspec.maven.xspecMavenPlugin.resources.impl.DefaultXSpecPluginResources;
+import io.xspec.maven.xspecMavenPlugin.utils.RunnerOptions;
+import java.io.File;
+import java.util.Properties;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import top.marchand.maven.saxon.utils.SaxonOptions;
+
+/**
+ *
+ * @author cmarchand
+ */
+public class XSpecEngineCacheTest extends TestUtils {
+
+    @Test
+    public void keyTest() throws Exception {
+        RunnerOptions options = new RunnerOptions(getBaseDirectory());
+        String key = getKey(new SaxonOptions(), options);
+        // another module, with its own directories
+        RunnerOptions otherModule = new RunnerOptions(new File(getBaseDirectory(), "other"));
+        otherModule.threads = 4;
+        assertEquals("modules should share engine", key, getKey(new SaxonOptions(), otherModule));
+        RunnerOptions folding = new RunnerOptions(getBaseDirectory());
+        folding.folding = Boolean.TRUE;
+        assertNotEquals("report folding requires another engine", key, getKey(new SaxonOptions(), folding));
+        RunnerOptions catalog = new RunnerOptions(getBaseDirectory());
+        catalog.catalogFile = "${project.basedir}/catalog.xml";
+        assertNotEquals("catalog requires another engine", key, getKey(new SaxonOptions(), catalog));
+        RunnerOptions eager = new RunnerOptions(getBaseDirectory());
+        eager.eagerCompilation = Boolean.TRUE;
+        assertNotEquals("eager compilation requires another engine", key, getKey(new SaxonOptions(), eager));
+        RunnerOptions keepCatalog = new RunnerOptions(getBaseDirectory());
+        keepCatalog.keepGeneratedCatalog = Boolean.TRUE;
+        assertNotEquals("keeping generated catalog requires another engine", key, getKey(new SaxonOptions(), keepCatalog));
+    }
+
+    @Test
+    public void sharedEngineTest() throws Exception {
+        XSpecEngineCache cache = new XSpecEngineCache();
+        XSpecEngine first = getEngine(cache, new RunnerOptions(getBaseDirectory()));
+        XSpecEngine second = getEngine(cache, new RunnerOptions(new File(getBaseDirectory(), "other")));
+        assertTrue("engine has not been reused", first==second);
+        assertEquals("wrong number of engines built", 1, cache.getMisses());
+        assertEquals("wrong number of engines reused", 1, cache.getHits());
+    }
+
+    private String getKey(SaxonOptions saxonOptions, RunnerOptions options) {
+        return XSpecEngineCache.getKey(
+                new DefaultXSpecImplResources(), 
+                new DefaultSchematronImplResources(), 
+                new DefaultXSpecPluginResources(), 
+                saxonOptions, 
+                options);
+    }
+
+    private XSpecEngine getEngine(XSpecEngineCache cache, RunnerOptions options) throws Exception {
+        return cache.getEngine(
+                getLog(), 
+                getBaseDirectory(), 
+                new DefaultXSpecImplResources(), 
+                new DefaultSchematronImplResources(), 
+                new DefaultXSpecPluginResources(), 
+                new SaxonOptions(), 
+                new Properties(), 
+                options);
+    }
+}
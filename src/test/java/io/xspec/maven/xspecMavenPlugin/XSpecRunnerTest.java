@@ -29,13 +29,22 @@ package io.xspec.maven.xspecMavenPlugin;
 import io.xspec.maven.xspecMavenPlugin.resources.impl.DefaultSchematronImplResources;
 import io.xspec.maven.xspecMavenPlugin.resources.impl.DefaultXSpecImplResources;
 import io.xspec.maven.xspecMavenPlugin.resources.impl.DefaultXSpecPluginResources;
+import io.xspec.maven.xspecMavenPlugin.utils.ProcessedFile;
 import io.xspec.maven.xspecMavenPlugin.utils.RunnerOptions;
 import io.xspec.maven.xspecMavenPlugin.utils.XSpecPluginException;
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.stream.Stream;
 import net.sf.saxon.s9api.XdmNode;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -124,6 +133,147 @@ public class XSpecRunnerTest extends TestUtils {
         assertTrue("index file "+indexFile.getAbsolutePath()+" is not a file", indexFile.isFile());
     }
     
+    @Test
+    public void executeInParallelTest() throws Exception {
+        RunnerOptions options = new RunnerOptions(getBaseDirectory());
+        options.testDir = getTestDirectory();
+        options.reportDir = new File(getBaseDirectory(), "target/xspec-reports-parallel");
+        options.threads = 4;
+        XSpecRunner runner = getNewRunner(new SaxonOptions(), options);
+        List<File> xspecs = runner.findAllXSpecs();
+        try {
+            runner.execute();
+        } catch(XSpecPluginException ex) {
+            // some XSpecs in test directory are expected to fail
+        }
+        runner.generateIndex();
+        File indexFile = new File(options.reportDir,"index.html");
+        assertTrue("index file "+indexFile.getAbsolutePath()+" does not exist", indexFile.exists());
+        List<ProcessedFile> processedFiles = runner.getProcessedFiles();
+        assertFalse("no XSpec processed", processedFiles.isEmpty());
+        List<Path> xspecPaths = new ArrayList<>();
+        for(File xspec: xspecs) {
+            xspecPaths.add(xspec.getAbsoluteFile().toPath().normalize());
+        }
+        int previous = -1;
+        for(ProcessedFile pf: processedFiles) {
+            int current = xspecPaths.indexOf(pf.getSourceFile().normalize());
+            assertTrue(pf.getSourceFile()+" is not in XSpec order", current > previous);
+            previous = current;
+        }
+    }
+    
+    @Test
+    public void executeInForksTest() throws Exception {
+        List<String> inJvm = getResults("target/xspec-reports-in-jvm", 0);
+        List<String> forked = getResults("target/xspec-reports-forked", 2);
+        assertFalse("no XSpec processed", inJvm.isEmpty());
+        assertEquals("forked results differ from in JVM results", inJvm, forked);
+    }
+    
+    /**
+     * Runs test directory, and returns results of each XSpec : counts, and paths
+     * relative to report directory
+     */
+    private List<String> getResults(String reportDir, int forkCount) throws Exception {
+        RunnerOptions options = new RunnerOptions(getBaseDirectory());
+        options.testDir = getTestDirectory();
+        options.reportDir = new File(getBaseDirectory(), reportDir);
+        options.forkCount = forkCount;
+        // each XSpec runs in a fresh worker
+        options.forkRecycleAfter = 1;
+        XSpecRunner runner = getNewRunner(new SaxonOptions(), options);
+        try {
+            runner.execute();
+        } catch(XSpecPluginException ex) {
+            // some XSpecs in test directory are expected to fail
+        }
+        List<String> ret = new ArrayList<>();
+        for(ProcessedFile pf: runner.getProcessedFiles()) {
+            ret.add(pf.getRelativeSourcePath() 
+                    + " " + options.reportDir.toPath().relativize(pf.getReportFile())
+                    + " " + pf.getPassed() + "/" + pf.getPending() + "/" + pf.getFailed() 
+                    + "/" + pf.getMissed() + "/" + pf.getTotal());
+        }
+        return ret;
+    }
+    
+    @Test
+    public void concurrentCoverageTest() throws Exception {
+        File testDir = new File(getBaseDirectory(), "target/coverage-concurrent");
+        testDir.mkdirs();
+        File xsltTestCase = new File(getProjectDirectory(), "src/test/resources/filesToTest/xsltTestCase");
+        Files.copy(new File(xsltTestCase, "xsl1.xsl").toPath(), new File(testDir, "xsl1.xsl").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        for(String name: Arrays.asList("a.xspec", "b.xspec")) {
+            Files.copy(new File(xsltTestCase, "xsl1.xspec").toPath(), new File(testDir, name).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        RunnerOptions options = new RunnerOptions(getBaseDirectory());
+        options.testDir = testDir;
+        options.reportDir = new File(getBaseDirectory(), "target/xspec-reports-coverage-concurrent");
+        options.coverage = true;
+        options.threads = 2;
+        XSpecRunner runner = getNewRunner(new SaxonOptions(), options);
+        runner.execute();
+        assertEquals("both XSpecs should be run", 2, runner.getProcessedFiles().size());
+        checkCoverageFile(options.reportDir, "a", "b");
+        checkCoverageFile(options.reportDir, "b", "a");
+    }
+    
+    /**
+     * Checks the coverage file of an XSpec names this XSpec, and not the other one
+     */
+    private static void checkCoverageFile(File reportDir, String xspec, String other) throws IOException {
+        Path coverageFile;
+        try (Stream<Path> files = Files.walk(reportDir.toPath())) {
+            coverageFile = files
+                    .filter(path -> path.getFileName().toString().equals("coverage-" + xspec + ".xml"))
+                    .findFirst()
+                    .orElse(null);
+        }
+        assertNotNull("no coverage file for " + xspec, coverageFile);
+        String content = new String(Files.readAllBytes(coverageFile), StandardCharsets.UTF_8);
+        assertTrue("coverage file of " + xspec + " does not name it", content.contains(xspec + ".xspec"));
+        assertFalse("coverage file of " + xspec + " names " + other, content.contains(other + ".xspec"));
+    }
+    
+    @Test
+    public void getThreadCountTest() throws Exception {
+        RunnerOptions options = new RunnerOptions(getBaseDirectory());
+        XSpecRunner runner = getNewRunner(new SaxonOptions(), options);
+        assertEquals("default should be sequential", 1, runner.getThreadCount(10));
+        options.threads = 4;
+        assertEquals("threads option not used", 4, runner.getThreadCount(10));
+        assertEquals("more threads than XSpecs", 2, runner.getThreadCount(2));
+        options.threads = 0;
+        assertEquals(
+                "0 should use available processors", 
+                Math.min(10, Runtime.getRuntime().availableProcessors()), 
+                runner.getThreadCount(10));
+    }
+    
+    @Test
+    public void getMaxFailuresTest() throws Exception {
+        RunnerOptions options = new RunnerOptions(getBaseDirectory());
+        XSpecRunner runner = getNewRunner(new SaxonOptions(), options);
+        assertEquals("default should run all XSpecs", 0, runner.getMaxFailures());
+        options.maxFailures = 3;
+        assertEquals("maxFailures option not used", 3, runner.getMaxFailures());
+        options.failFast = true;
+        assertEquals("failFast should stop at first failure", 1, runner.getMaxFailures());
+        options.failFast = false;
+        options.maxFailures = -1;
+        assertEquals("negative maxFailures should run all XSpecs", 0, runner.getMaxFailures());
+    }
+
+    @Test
+    public void isModuleUpToDateUnsetOptionsTest() throws Exception {
+        RunnerOptions options = new RunnerOptions(getBaseDirectory());
+        options.incremental = null;
+        options.forceRerun = null;
+        XSpecRunner runner = getNewRunner(new SaxonOptions(), options);
+        assertFalse("module should not be up to date when incremental is unset", runner.isModuleUpToDate("conf"));
+    }
+
     @Test
     public void findAllXSpecsTests() throws Exception {
         RunnerOptions runnerOptions = new RunnerOptions(getProjectDirectory());
@@ -152,6 +302,102 @@ public class XSpecRunnerTest extends TestUtils {
         assertEquals("wrong number of XSpecFiles found", 0, xspecFiles.size());
     }
 
+    @Test
+    public void incrementalImportedXSpecTest() throws Exception {
+        File testDir = new File(getBaseDirectory(), "target/incremental-imported");
+        testDir.mkdirs();
+        Files.copy(
+                new File(getProjectDirectory(), "src/test/resources/filesToTest/xsltTestCase/xsl1.xsl").toPath(), 
+                new File(testDir, "xsl1.xsl").toPath(), 
+                StandardCopyOption.REPLACE_EXISTING);
+        write(new File(testDir, "main.xspec"), 
+                "<x:description xmlns:x=\"http://www.jenitennison.com/xslt/xspec\" stylesheet=\"xsl1.xsl\">"
+                + "<x:import href=\"common/imported.xspec\"/>"
+                + "</x:description>");
+        File imported = new File(testDir, "common/imported.xspec");
+        imported.getParentFile().mkdirs();
+        write(imported, getImportedXSpec("5"));
+        RunnerOptions options = new RunnerOptions(getBaseDirectory());
+        options.testDir = testDir;
+        options.excludes = Arrays.asList("common/**");
+        options.reportDir = new File(getBaseDirectory(), "target/xspec-reports-incremental-imported");
+        options.incremental = true;
+        XSpecRunner runner = getNewRunner(new SaxonOptions(), options);
+        runner.execute();
+        runner.execute();
+        assertEquals("XSpec should be up to date", 1, runner.getUpToDateCount());
+        // only the imported XSpec changes
+        write(imported, getImportedXSpec("6"));
+        try {
+            runner.execute();
+        } catch(XSpecPluginException ex) {
+            // expected, imported scenario now fails
+        }
+        assertEquals("XSpec should run again when an imported XSpec changes", 0, runner.getUpToDateCount());
+    }
+
+    @Test
+    public void nonIncrementalRunForgetsResultsTest() throws Exception {
+        RunnerOptions options = new RunnerOptions(getBaseDirectory());
+        options.testDir = new File(getProjectDirectory(), "src/test/resources/filesToTest/xsltTestCase");
+        options.reportDir = new File(getBaseDirectory(), "target/xspec-reports-incremental-forget");
+        options.incremental = true;
+        XSpecRunner runner = getNewRunner(new SaxonOptions(), options);
+        runner.execute();
+        options.incremental = false;
+        runner.execute();
+        // reports have been rewritten by the non incremental run
+        options.incremental = true;
+        runner.execute();
+        assertEquals("results of a non incremental run should not be restored", 0, runner.getUpToDateCount());
+    }
+
+    private static String getImportedXSpec(String expected) {
+        return "<x:description xmlns:x=\"http://www.jenitennison.com/xslt/xspec\" "
+                + "xmlns:private=\"io:xspec:xspec-maven-plugin:tests\" xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" stylesheet=\"../xsl1.xsl\">"
+                + "<x:scenario label=\"imported\"><x:call function=\"private:add\">"
+                + "<x:param as=\"xs:integer\" select=\"1\"/><x:param as=\"xs:integer\" select=\"4\"/>"
+                + "</x:call><x:expect label=\"sum\" select=\""+expected+"\"/></x:scenario>"
+                + "</x:description>";
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void sessionsShareEngineTest() throws Exception {
+        RunnerOptions options = new RunnerOptions(getBaseDirectory());
+        options.testDir = new File(getProjectDirectory(), "src/test/resources/filesToTest/xsltTestCase");
+        options.reportDir = new File(getBaseDirectory(), "target/xspec-reports-session1");
+        XSpecEngine engine = getNewRunner(new SaxonOptions(), options).getEngine();
+        XSpecRunner first = engine.newSession(getLog(), options);
+        RunnerOptions secondOptions = new RunnerOptions(getBaseDirectory());
+        secondOptions.testDir = options.testDir;
+        secondOptions.reportDir = new File(getBaseDirectory(), "target/xspec-reports-session2");
+        XSpecRunner second = engine.newSession(getLog(), secondOptions);
+        assertTrue("sessions do not share XmlStuff", first.getXmlStuff()==second.getXmlStuff());
+        first.execute();
+        first.generateIndex();
+        second.execute();
+        second.generateIndex();
+        // a session may run again
+        first.execute();
+        assertEquals("processed files are not reset", 1, first.getProcessedFiles().size());
+        assertTrue("first session index does not exist", new File(options.reportDir, "index.html").isFile());
+        assertTrue("second session index does not exist", new File(secondOptions.reportDir, "index.html").isFile());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void incompatibleSessionTest() throws Exception {
+        RunnerOptions options = new RunnerOptions(getBaseDirectory());
+        XSpecEngine engine = getNewRunner(new SaxonOptions(), options).getEngine();
+        RunnerOptions sessionOptions = new RunnerOptions(getBaseDirectory());
+        sessionOptions.folding = Boolean.TRUE;
+        engine.newSession(getLog(), sessionOptions);
+        fail("a session with another report folding shouldn't run with this engine");
+    }
+
     private XSpecRunner getNewRunner(SaxonOptions saxonOptions, RunnerOptions runnerOptions) throws IllegalStateException, XSpecPluginException, MalformedURLException, URISyntaxException {
         XSpecRunner runner = new XSpecRunner(getLog(), getBaseDirectory());
         runner.setResources(
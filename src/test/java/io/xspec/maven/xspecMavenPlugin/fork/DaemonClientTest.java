@@ -0,0 +1,112 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.fork;
+
+import io.xspec.maven.xspecMavenPlugin.TestUtils;
+import io.xspec.maven.xspecMavenPlugin.resources.impl.DefaultXSpecImplResources;
+import io.xspec.maven.xspecMavenPlugin.resources.impl.DefaultXSpecPluginResources;
+import io.xspec.maven.xspecMavenPlugin.utils.ProcessedFile;
+import io.xspec.maven.xspecMavenPlugin.utils.RunnerOptions;
+import io.xspec.maven.xspecMavenPlugin.utils.XSpecPluginException;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import top.marchand.maven.saxon.utils.SaxonOptions;
+
+/**
+ *
+ * @author cmarchand
+ */
+public class DaemonClientTest extends TestUtils {
+    private File daemonDir;
+    private RunnerOptions options;
+    private File xspec;
+    
+    @Before
+    public void before() throws Exception {
+        File dir = new File(getBaseDirectory(), "daemon-client");
+        FileUtils.deleteDirectory(dir);
+        daemonDir = new File(dir, "daemons");
+        options = new RunnerOptions(getBaseDirectory());
+        options.testDir = new File(getProjectDirectory(), "src/test/resources/filesToTest/xsltTestCase");
+        options.reportDir = new File(dir, "reports");
+        // daemon started by this test exits one minute after last build
+        options.daemonIdleTimeout = 1;
+        xspec = new File(options.testDir, "xsl1.xspec");
+    }
+    
+    @Test
+    public void roundTripTest() throws Exception {
+        List<ProcessedFile> results = new ArrayList<>();
+        assertTrue("XSpec failed in daemon", newClient().run(Arrays.asList(xspec), 
+                (file, pf, succeed, millis) -> results.add(pf)));
+        assertEquals("wrong result count", 1, results.size());
+        checkResult(results.get(0));
+        assertNotNull("daemon state not written", XSpecDaemon.readState(getStateFile()));
+        // next build connects to the running daemon
+        results.clear();
+        assertTrue("XSpec failed in running daemon", newClient().run(Arrays.asList(xspec), 
+                (file, pf, succeed, millis) -> results.add(pf)));
+        assertEquals("wrong result count in running daemon", 1, results.size());
+        checkResult(results.get(0));
+    }
+    
+    @Test(expected = XSpecPluginException.class)
+    public void daemonDiesTest() throws Exception {
+        // daemon JVM can not start : build falls back to Maven JVM
+        options.forkArgLine = "-XX:+ThisOptionDoesNotExist";
+        newClient().run(Arrays.asList(xspec), (file, pf, succeed, millis) -> fail("no XSpec should be run"));
+    }
+    
+    private void checkResult(ProcessedFile pf) {
+        assertNotNull("XSpec has not been run", pf);
+        assertEquals("wrong passed count", 1, pf.getPassed());
+        assertEquals("wrong failed count", 0, pf.getFailed());
+        assertEquals("wrong total count", 1, pf.getTotal());
+        assertEquals("wrong source file", xspec.toPath().normalize(), pf.getSourceFile().normalize());
+    }
+    
+    private File getStateFile() throws Exception {
+        return new File(daemonDir, getConfiguration().getFingerprint(ForkPool.getWorkerClasspath()) + ".state");
+    }
+    
+    private DaemonClient newClient() throws Exception {
+        return new DaemonClient(getLog(), options, getConfiguration(), daemonDir);
+    }
+    
+    private ForkConfiguration getConfiguration() throws Exception {
+        return ForkConfiguration.create(
+                getBaseDirectory(), options, new SaxonOptions(), new DefaultXSpecImplResources(), 
+                new DefaultXSpecPluginResources(), new Properties(), false);
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.fork;
+
+import io.xspec.maven.xspecMavenPlugin.resources.impl.DefaultXSpecImplResources;
+import io.xspec.maven.xspecMavenPlugin.resources.impl.DefaultXSpecPluginResources;
+import io.xspec.maven.xspecMavenPlugin.utils.RunnerOptions;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Properties;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import top.marchand.maven.saxon.utils.SaxonOptions;
+
+/**
+ *
+ * @author cmarchand
+ */
+public class ForkConfigurationTest {
+    
+    @Test
+    public void storeAndLoadTest() throws Exception {
+        File baseDir = new File("target/fork-configuration").getAbsoluteFile();
+        baseDir.mkdirs();
+        RunnerOptions options = new RunnerOptions(
+                baseDir, Boolean.TRUE, "catalog.xml", Arrays.asList("-TI.xspec", "-IT.xspec"), 
+                null, null, "exec", null, Boolean.TRUE, null);
+        options.forkArgLine = "-Xmx1g";
+        DefaultXSpecImplResources xspecResources = new DefaultXSpecImplResources();
+        xspecResources.setXSpecReporter("cp:/my-reporter.xsl");
+        Properties env = new Properties();
+        env.setProperty("catalog.dir", "/tmp/catalogs");
+        
+        File file = new File(baseDir, "worker.properties");
+        ForkConfiguration.create(
+                baseDir, options, new SaxonOptions(), xspecResources, 
+                new DefaultXSpecPluginResources(), env, true).store(file);
+        ForkConfiguration read = ForkConfiguration.load(file);
+        
+        assertEquals("wrong baseDir", baseDir, read.getBaseDir());
+        assertTrue("debug not read", read.isDebug());
+        RunnerOptions readOptions = read.getRunnerOptions();
+        assertTrue("keepGeneratedCatalog not read", readOptions.keepGeneratedCatalog);
+        assertEquals("catalogFile not read", "catalog.xml", readOptions.catalogFile);
+        assertEquals("excludes not read", options.excludes, readOptions.excludes);
+        assertEquals("testDir not read", options.testDir.getAbsoluteFile(), readOptions.testDir);
+        assertEquals("executionId not read", "exec", readOptions.executionId);
+        assertTrue("coverage not read", readOptions.coverage);
+        assertEquals("forkArgLine not read", "-Xmx1g", readOptions.forkArgLine);
+        assertEquals("reporter not read", "cp:/my-reporter.xsl", read.getXSpecResources().getXSpecReporterUri(false));
+        assertEquals("environment not read", "/tmp/catalogs", read.getEnvironment().getProperty("catalog.dir"));
+        assertNotNull("saxon options not read", read.getSaxonOptions());
+    }
+    
+    @Test
+    public void fingerprintTest() throws Exception {
+        File baseDir = new File("target/fork-configuration").getAbsoluteFile();
+        RunnerOptions options = new RunnerOptions(baseDir);
+        Properties env = new Properties();
+        String fingerprint = ForkConfiguration.create(
+                baseDir, options, new SaxonOptions(), new DefaultXSpecImplResources(), 
+                new DefaultXSpecPluginResources(), env, false).getFingerprint(Arrays.asList("a.jar"));
+        
+        options.threads = 4;
+        options.forceRerun = true;
+        env.setProperty("user.dir", "/tmp");
+        assertEquals("fingerprint should not depend on threads, forceRerun and environment", fingerprint, 
+                ForkConfiguration.create(
+                        baseDir, options, new SaxonOptions(), new DefaultXSpecImplResources(), 
+                        new DefaultXSpecPluginResources(), env, false).getFingerprint(Arrays.asList("a.jar")));
+        options.coverage = true;
+        assertNotEquals("fingerprint should depend on coverage", fingerprint, 
+                ForkConfiguration.create(
+                        baseDir, options, new SaxonOptions(), new DefaultXSpecImplResources(), 
+                        new DefaultXSpecPluginResources(), env, false).getFingerprint(Arrays.asList("a.jar")));
+        options.coverage = false;
+        assertNotEquals("fingerprint should depend on classpath", fingerprint, 
+                ForkConfiguration.create(
+                        baseDir, options, new SaxonOptions(), new DefaultXSpecImplResources(), 
+                        new DefaultXSpecPluginResources(), env, false).getFingerprint(Arrays.asList("b.jar")));
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.fork;
+
+import io.xspec.maven.xspecMavenPlugin.TestUtils;
+import io.xspec.maven.xspecMavenPlugin.resources.impl.DefaultXSpecImplResources;
+import io.xspec.maven.xspecMavenPlugin.resources.impl.DefaultXSpecPluginResources;
+import io.xspec.maven.xspecMavenPlugin.utils.RunnerOptions;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import top.marchand.maven.saxon.utils.SaxonOptions;
+
+/**
+ *
+ * @author cmarchand
+ */
+public class ForkPoolTest extends TestUtils {
+    
+    @Test
+    public void cancelTest() throws Exception {
+        RunnerOptions options = new RunnerOptions(getBaseDirectory());
+        options.testDir = new File(getProjectDirectory(), "src/test/resources/filesToTest/xsltTestCase");
+        options.reportDir = new File(getBaseDirectory(), "target/xspec-reports-fork-cancel");
+        options.forkCount = 1;
+        File forkDir = new File(options.reportDir, "fork");
+        forkDir.mkdirs();
+        File configurationFile = new File(forkDir, "worker.properties");
+        ForkConfiguration.create(
+                getBaseDirectory(), options, new SaxonOptions(), new DefaultXSpecImplResources(), 
+                new DefaultXSpecPluginResources(), new Properties(), false).store(configurationFile);
+        ForkPool pool = new ForkPool(getLog(), options, configurationFile, new File(forkDir, "worker.args"));
+        File xspec = new File(options.testDir, "xsl1.xspec");
+        List<File> processed = new ArrayList<>();
+        List<String> threads = new ArrayList<>();
+        pool.run(Collections.nCopies(3, xspec), (file, pf, succeed, millis) -> {
+            processed.add(file);
+            threads.add(Thread.currentThread().getName());
+            pool.cancel();
+        });
+        assertEquals("no XSpec should be run after cancel", 1, processed.size());
+        assertEquals("pool thread should be named after its slot", "xspec-fork-pool-1", threads.get(0));
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.fork;
+
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author cmarchand
+ */
+public class ForkProtocolTest {
+    
+    @Test
+    public void lineRoundTripTest() {
+        String message = "first line\n\tsecond line with \\ and \r";
+        String line = ForkProtocol.line(ForkProtocol.LOG, ForkProtocol.LEVEL_ERROR, message);
+        assertTrue("not a protocol line", ForkProtocol.isProtocolLine(line));
+        assertFalse("line contains a line feed", line.contains("\n"));
+        String[] parsed = ForkProtocol.parse(line);
+        assertEquals("wrong field count", 3, parsed.length);
+        assertEquals("wrong type", ForkProtocol.LOG, parsed[0]);
+        assertEquals("wrong level", ForkProtocol.LEVEL_ERROR, parsed[1]);
+        assertEquals("wrong message", message, parsed[2]);
+    }
+    
+    @Test
+    public void emptyFieldTest() {
+        String line = ForkProtocol.line(ForkProtocol.RESULT, "a", "", null, "b");
+        String[] parsed = ForkProtocol.parse(line);
+        assertEquals("wrong fields", Arrays.asList(ForkProtocol.RESULT, "a", "", "", "b"), Arrays.asList(parsed));
+    }
+    
+    @Test
+    public void otherLinesAreNotProtocolLinesTest() {
+        assertFalse("plain output is a protocol line", ForkProtocol.isProtocolLine("Compiling stylesheet"));
+    }
+    
+    @Test
+    public void splitArgLineTest() {
+        assertEquals(
+                "wrong arguments", 
+                Arrays.asList("-Xmx1g", "-Dpath=/a dir/b", "-XX:+UseParallelGC"), 
+                ForkPool.splitArgLine(" -Xmx1g \"-Dpath=/a dir/b\"  -XX:+UseParallelGC"));
+        assertTrue("null arg line", ForkPool.splitArgLine(null).isEmpty());
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.fork;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Properties;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author cmarchand
+ */
+public class XSpecDaemonTest {
+    
+    @Test
+    public void stateFileTest() throws Exception {
+        File dir = new File("target/xspec-daemon/daemons").getAbsoluteFile();
+        FileUtils.deleteDirectory(dir.getParentFile());
+        File stateFile = new File(dir, "fingerprint.state");
+        XSpecDaemon.writeState(stateFile, 1234, "secret");
+        Properties state = XSpecDaemon.readState(stateFile);
+        assertNotNull("state not read", state);
+        assertEquals("wrong port", "1234", state.getProperty(XSpecDaemon.KEY_PORT));
+        assertEquals("wrong token", "secret", state.getProperty(XSpecDaemon.KEY_TOKEN));
+        assumeTrue("POSIX permissions are not supported", FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        assertEquals("daemon directory should be private", "rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(dir.toPath())));
+        assertEquals("state file should be private", "rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(stateFile.toPath())));
+    }
+    
+    @Test
+    public void existingDirectoryTest() throws Exception {
+        assumeTrue("POSIX permissions are not supported", FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        File dir = new File("target/xspec-daemon/existing").getAbsoluteFile();
+        FileUtils.deleteDirectory(dir);
+        dir.mkdirs();
+        Files.setPosixFilePermissions(dir.toPath(), PosixFilePermissions.fromString("rwxrwxrwx"));
+        XSpecDaemon.createPrivateDirectory(dir);
+        assertEquals("existing directory should be made private", "rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(dir.toPath())));
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.transform.stream.StreamSource;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XdmDestination;
+import net.sf.saxon.s9api.XdmNode;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author cmarchand
+ */
+public class CompiledSchematronCacheTest {
+    private final Processor processor = new Processor(false);
+    private File cacheDir;
+    private File memoryDir;
+    
+    @Before
+    public void before() throws IOException {
+        File baseDir = new File("target/compiled-schematron-cache").getAbsoluteFile();
+        FileUtils.deleteDirectory(baseDir);
+        cacheDir = new File(baseDir, "cache");
+        memoryDir = new File(baseDir, "memory");
+    }
+    
+    @Test
+    public void compiledOnceTest() throws Exception {
+        CompiledSchematronCache cache = new CompiledSchematronCache(processor, null, memoryDir, new SystemStreamLog());
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<XdmNode>> futures = new ArrayList<>();
+            for(int i=0; i<8; i++) {
+                futures.add(executor.submit(() -> cache.get("key", location -> {
+                    count.incrementAndGet();
+                    return compile(location);
+                })));
+            }
+            XdmNode first = futures.get(0).get();
+            for(Future<XdmNode> future: futures) {
+                assertEquals("same compiled Schematron should be shared", first, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("Schematron should be compiled once", 1, count.get());
+        assertEquals("wrong location", cache.getLocation("key").toURI(), cache.get("key", location -> null).getBaseURI());
+        assertFalse("nothing should be written without cache dir", memoryDir.exists());
+    }
+    
+    @Test
+    public void diskCacheTest() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        CompiledSchematronCache.Compilation compilation = location -> {
+            count.incrementAndGet();
+            return compile(location);
+        };
+        new CompiledSchematronCache(processor, cacheDir, memoryDir, new SystemStreamLog()).get("key", compilation);
+        assertTrue("compiled Schematron not written", new File(cacheDir, "key.xslt").isFile());
+        XdmNode read = new CompiledSchematronCache(processor, cacheDir, memoryDir, new SystemStreamLog()).get("key", compilation);
+        assertEquals("Schematron should not be compiled again", 1, count.get());
+        assertEquals("wrong location", new File(cacheDir, "key.xslt").toURI(), read.getBaseURI());
+    }
+    
+    @Test
+    public void boundedTest() throws Exception {
+        CompiledSchematronCache cache = new CompiledSchematronCache(processor, null, memoryDir, new SystemStreamLog());
+        for(int i=0; i<CompiledSchematronCache.MAX_ENTRIES+10; i++) {
+            cache.get("key" + i, this::compile);
+        }
+        assertEquals("cache should be bounded", CompiledSchematronCache.MAX_ENTRIES, cache.size());
+    }
+    
+    @Test
+    public void failureIsNotKeptTest() throws Exception {
+        CompiledSchematronCache cache = new CompiledSchematronCache(processor, null, memoryDir, new SystemStreamLog());
+        try {
+            cache.get("key", location -> {
+                throw new SaxonApiException("compilation failed");
+            });
+            fail("an exception should have been thrown");
+        } catch(SaxonApiException ex) {
+            // expected
+        }
+        assertNotNull("Schematron should be compiled again", cache.get("key", this::compile));
+    }
+    
+    private XdmNode compile(File location) throws SaxonApiException {
+        XdmDestination destination = XmlStuff.newXdmDestination(location.toURI());
+        processor.writeXdmValue(
+                processor.newDocumentBuilder().build(new StreamSource(new StringReader("<xsl:stylesheet xmlns:xsl='http://www.w3.org/1999/XSL/Transform' version='3.0'/>"))),
+                destination);
+        return XmlStuff.getXdmNode(destination);
+    }
+}
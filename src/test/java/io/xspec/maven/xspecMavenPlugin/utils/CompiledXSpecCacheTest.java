@@ -0,0 +1,98 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author cmarchand
+ */
+public class CompiledXSpecCacheTest {
+    private File baseDir;
+    private File xspec;
+    private File imported;
+    private CompiledXSpecCache cache;
+    
+    @Before
+    public void before() throws IOException {
+        baseDir = new File("target/compiled-xspec-cache").getAbsoluteFile();
+        FileUtils.deleteDirectory(baseDir);
+        baseDir.mkdirs();
+        xspec = write("test.xspec", "<x:description/>");
+        imported = write("imported.xspec", "<x:description/>");
+        cache = new CompiledXSpecCache(new File(baseDir, "cache"), "xspec=1;saxon=HE-12");
+    }
+    
+    @Test
+    public void keyTest() throws IOException {
+        String key = cache.computeKey(xspec, Arrays.asList(imported.toURI().toString()), "compiler.xsl");
+        assertEquals("key is not stable", key, cache.computeKey(xspec, Arrays.asList(imported.toURI().toString()), "compiler.xsl"));
+        assertNotEquals("compiler is not in key", key, cache.computeKey(xspec, Arrays.asList(imported.toURI().toString()), "other.xsl"));
+        assertNotEquals("imports are not in key", key, cache.computeKey(xspec, Collections.emptyList(), "compiler.xsl"));
+        write("imported.xspec", "<x:description><x:scenario/></x:description>");
+        assertNotEquals("imported content is not in key", key, cache.computeKey(xspec, Arrays.asList(imported.toURI().toString()), "compiler.xsl"));
+        CompiledXSpecCache otherVersion = new CompiledXSpecCache(new File(baseDir, "cache"), "xspec=2;saxon=HE-12");
+        assertNotEquals(
+                "implementation is not in key", 
+                cache.computeKey(xspec, Collections.emptyList(), "compiler.xsl"), 
+                otherVersion.computeKey(xspec, Collections.emptyList(), "compiler.xsl"));
+    }
+    
+    @Test
+    public void putAndGetTest() throws IOException {
+        String key = cache.computeKey(xspec, Collections.emptyList(), "compiler.xsl");
+        File target = new File(baseDir, "compiled/test.xspec.xslt");
+        assertNull("cache should be empty", cache.get(key, target));
+        File compiled = write("test.xspec.xslt", "<xsl:stylesheet/>");
+        cache.put(key, new CompiledXSpec(5, 2, compiled));
+        CompiledXSpec ret = cache.get(key, target);
+        assertNotNull("entry not found", ret);
+        assertEquals("wrong tests count", 5, ret.getTests());
+        assertEquals("wrong pending tests count", 2, ret.getPendingTests());
+        assertEquals("wrong compiled stylesheet", target, ret.getCompiledStylesheet());
+        assertEquals(
+                "wrong compiled stylesheet content", 
+                "<xsl:stylesheet/>", 
+                new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8));
+    }
+    
+    private File write(String name, String content) throws IOException {
+        File ret = new File(baseDir, name);
+        Files.write(ret.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return ret;
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.utils;
+
+import io.xspec.maven.xspecMavenPlugin.XSpecRunner;
+import java.io.File;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ *
+ * @author cmarchand
+ */
+public class CoverageTraceListenerTest {
+    
+    @After
+    public void after() {
+        System.clearProperty(XSpecRunner.TRACE_SYS_PROP_IGNORE_DIR);
+        System.clearProperty(XSpecRunner.TRACE_SYS_PROP_XSPEC_FILE);
+        System.clearProperty(XSpecRunner.TRACE_SYS_PROP_COVERAGE_FILE);
+    }
+    
+    @Test
+    public void constructorDoesNotSetSystemPropertiesTest() {
+        File dir = new File("target/coverage").getAbsoluteFile();
+        CoverageTraceListener listener = new CoverageTraceListener(
+                dir, 
+                new File(dir, "test.xspec"), 
+                new File(dir, "coverage-test.xml"));
+        assertNull("ignore dir has been set", System.getProperty(XSpecRunner.TRACE_SYS_PROP_IGNORE_DIR));
+        assertNull("xspec file has been set", System.getProperty(XSpecRunner.TRACE_SYS_PROP_XSPEC_FILE));
+        assertNull("coverage file has been set", System.getProperty(XSpecRunner.TRACE_SYS_PROP_COVERAGE_FILE));
+        assertEquals("wrong coverage file", new File(dir, "coverage-test.xml"), listener.getCoverageFile());
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author cmarchand
+ */
+public class FileWatcherTest {
+    private File baseDir;
+    
+    @Before
+    public void before() throws IOException {
+        baseDir = new File("target/file-watcher").getAbsoluteFile();
+        FileUtils.deleteDirectory(baseDir);
+        baseDir.mkdirs();
+    }
+    
+    @Test
+    public void changesAreReportedTest() throws Exception {
+        Path testDir = new File(baseDir, "test/sub").toPath();
+        Path reportDir = new File(baseDir, "test/reports").toPath();
+        Files.createDirectories(testDir);
+        Files.createDirectories(reportDir);
+        try (FileWatcher watcher = new FileWatcher(new SystemStreamLog(), Arrays.asList(reportDir))) {
+            watcher.watchTree(testDir.getParent());
+            Path xspec = testDir.resolve("test.xspec");
+            Files.write(reportDir.resolve("index.html"), "ignored".getBytes(StandardCharsets.UTF_8));
+            Files.write(xspec, "changed".getBytes(StandardCharsets.UTF_8));
+            Set<Path> changes = watcher.waitForChanges(100);
+            assertTrue("change in sub-directory not reported", changes.contains(xspec.toAbsolutePath().normalize()));
+            assertFalse("change in ignored directory reported", 
+                    changes.contains(reportDir.resolve("index.html").toAbsolutePath().normalize()));
+        }
+    }
+    
+    @Test
+    public void newDirectoriesAreWatchedTest() throws Exception {
+        Path testDir = new File(baseDir, "test").toPath();
+        Files.createDirectories(testDir);
+        try (FileWatcher watcher = new FileWatcher(new SystemStreamLog(), Arrays.asList())) {
+            watcher.watchTree(testDir);
+            Path newDir = testDir.resolve("new");
+            Files.createDirectories(newDir);
+            watcher.waitForChanges(100);
+            Path xspec = newDir.resolve("test.xspec");
+            Files.write(xspec, "created".getBytes(StandardCharsets.UTF_8));
+            assertTrue("change in new directory not reported", 
+                    watcher.waitForChanges(100).contains(xspec.toAbsolutePath().normalize()));
+        }
+    }
+}
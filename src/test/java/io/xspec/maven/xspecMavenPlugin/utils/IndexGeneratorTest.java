@@ -88,7 +88,7 @@ public class IndexGeneratorTest extends TestUtils {
         assertTrue("index file not generated", expected.exists());
         assertTrue("index file is not a file", expected.isFile());
         // WARNING: with Saxon 9.8, there are only 38 lines
-        long nbLines = 41;
+        long nbLines = 42;
         if (isDoctypeAndHtmlTagOnSameLine) {
             // Saxon 10 and 11 have DOCTYPE on same line as <html> tag
             nbLines--;
@@ -108,7 +108,7 @@ public class IndexGeneratorTest extends TestUtils {
         gen.generateIndex();
         File expected = new File(options.reportDir, "index.html");
         // WARNING : with Saxon 9.8, there are only 39 lines
-        long nbLines = 42 + 3 + 8;
+        long nbLines = 43 + 3 + 8;
         if (isDoctypeAndHtmlTagOnSameLine) {
             // Saxon 10 and 11 have DOCTYPE on same line as <html> tag
             nbLines--;
@@ -116,4 +116,20 @@ public class IndexGeneratorTest extends TestUtils {
         assertEquals("index should have "+nbLines+" lines", nbLines, Files.lines(expected.toPath()).count());
         assertEquals("table should contain 1 red row", 1, Files.lines(expected.toPath()).filter(l -> l.contains("class=\"error\"")).count());
     }
+    
+    @Test
+    public void notRunRowTest() throws Exception {
+        ProcessedFile pf = new ProcessedFile(
+                options.testDir, 
+                new File(options.testDir, "titi.xspec"),
+                options.reportDir, 
+                new File(options.reportDir, "titi.xspec.html"));
+        pf.setNotRun(true);
+        IndexGenerator gen = new IndexGenerator(options, Arrays.asList(pf), xmlStuff);
+        gen.generateIndex();
+        File expected = new File(options.reportDir, "index.html");
+        assertEquals("table should contain 1 not run row", 1, Files.lines(expected.toPath()).filter(l -> l.contains("class=\"not-run\"")).count());
+        assertEquals("table should not contain any red row", 0, Files.lines(expected.toPath()).filter(l -> l.contains("class=\"error\"")).count());
+        assertEquals("not run row should not link to report", 0, Files.lines(expected.toPath()).filter(l -> l.contains("titi.xspec.html")).count());
+    }
 }
@@ -0,0 +1,81 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.utils;
+
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.transform.stream.StreamSource;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XsltExecutable;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author cmarchand
+ */
+public class LazyExecutableTest {
+    private static final String XSL =
+            "<xsl:stylesheet xmlns:xsl='http://www.w3.org/1999/XSL/Transform' version='3.0'/>";
+    private final Processor processor = new Processor(false);
+    
+    @Test
+    public void compiledOnceOnFirstUseTest() throws SaxonApiException {
+        AtomicInteger count = new AtomicInteger();
+        LazyExecutable lazy = new LazyExecutable("test", () -> {
+            count.incrementAndGet();
+            return processor.newXsltCompiler().compile(new StreamSource(new StringReader(XSL)));
+        });
+        assertFalse("should not be compiled before first use", lazy.isCompiled());
+        assertEquals("should not be compiled before first use", 0, count.get());
+        XsltExecutable first = lazy.get();
+        assertNotNull("stylesheet not compiled", first);
+        assertTrue("should be compiled", lazy.isCompiled());
+        assertEquals("same executable should be returned", first, lazy.get());
+        assertEquals("should be compiled only once", 1, count.get());
+    }
+    
+    @Test
+    public void failureIsNotKeptTest() {
+        AtomicInteger count = new AtomicInteger();
+        LazyExecutable lazy = new LazyExecutable("test", () -> {
+            count.incrementAndGet();
+            throw new XSpecPluginException("compilation failed");
+        });
+        for(int i=0; i<2; i++) {
+            try {
+                lazy.get();
+                fail("an exception should have been thrown");
+            } catch(SaxonApiException ex) {
+                assertTrue("cause should be kept", ex.getCause() instanceof XSpecPluginException);
+            }
+        }
+        assertFalse("should not be compiled", lazy.isCompiled());
+        assertEquals("compilation should be tried again", 2, count.get());
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author cmarchand
+ */
+public class RunHistoryTest {
+    private File baseDir;
+    private RunnerOptions options;
+    
+    @Before
+    public void before() throws IOException {
+        baseDir = new File("target/run-history").getAbsoluteFile();
+        FileUtils.deleteDirectory(baseDir);
+        options = new RunnerOptions(baseDir);
+        options.testDir.mkdirs();
+    }
+    
+    @Test
+    public void saveAndLoadTest() throws IOException {
+        File xspec = new File(options.testDir, "dir/test.xspec");
+        RunHistory history = RunHistory.load(options);
+        assertNull("duration should be unknown", history.getDuration(xspec));
+        history.recordDuration(xspec, 1234L);
+        history.save();
+        assertTrue("history file not written", RunHistory.getHistoryFile(options).isFile());
+        
+        RunHistory read = RunHistory.load(options);
+        assertEquals("duration not read", Long.valueOf(1234L), read.getDuration(xspec));
+        assertEquals("wrong key", "dir/test.xspec", read.getKey(xspec));
+    }
+    
+    @Test
+    public void shardHistoryTest() throws IOException {
+        File first = new File(options.testDir, "first.xspec");
+        File second = new File(options.testDir, "second.xspec");
+        options.shardCount = 2;
+        options.shardIndex = 0;
+        File firstFile = RunHistory.getHistoryFile(options);
+        RunHistory shard0 = RunHistory.load(options);
+        shard0.recordDuration(first, 100L);
+        shard0.save();
+        options.shardIndex = 1;
+        File secondFile = RunHistory.getHistoryFile(options);
+        assertNotEquals("shards should not share history file", firstFile, secondFile);
+        assertEquals("wrong history file name", "xspec-history-" + options.executionId + "-shard1.properties", secondFile.getName());
+        RunHistory shard1 = RunHistory.load(options);
+        assertEquals("shard 0 duration not read", Long.valueOf(100L), shard1.getDuration(first));
+        shard1.recordDuration(second, 200L);
+        shard1.save();
+        assertTrue("shard 0 history overwritten", firstFile.isFile());
+        options.shardIndex = 0;
+        RunHistory read = RunHistory.load(options);
+        assertEquals("shard 1 duration not read", Long.valueOf(200L), read.getDuration(second));
+        assertEquals("wrong known durations", 2, read.countKnownDurations(Arrays.asList(first, second)));
+        String content = new String(Files.readAllBytes(firstFile.toPath()), StandardCharsets.UTF_8);
+        assertFalse("shard 1 duration should not be saved by shard 0", content.contains("second.xspec"));
+    }
+    
+    @Test
+    public void sortLongestFirstTest() throws IOException {
+        File shortOne = createXSpec("short.xspec", 100);
+        File longOne = createXSpec("long.xspec", 100);
+        File unknownSmall = createXSpec("unknown-small.xspec", 10);
+        File unknownBig = createXSpec("unknown-big.xspec", 1000);
+        RunHistory history = RunHistory.load(options);
+        history.recordDuration(shortOne, 100L);
+        history.recordDuration(longOne, 10000L);
+        // 10100 ms for 200 bytes : unknown-big is estimated to 50500 ms, unknown-small to 505 ms
+        List<File> sorted = history.sortLongestFirst(Arrays.asList(shortOne, unknownSmall, longOne, unknownBig));
+        assertEquals("wrong order", Arrays.asList(unknownBig, longOne, unknownSmall, shortOne), sorted);
+    }
+    
+    @Test
+    public void restoreResultsTest() throws IOException {
+        File xspec = createXSpec("test.xspec", 10);
+        File sut = createXSpec("sut.xsl", 10);
+        List<String> dependencies = Arrays.asList(xspec.toURI().toString(), sut.toURI().toString());
+        ProcessedFile pf = new ProcessedFile(options.testDir, xspec, options.reportDir, new File(options.reportDir, "test.html"));
+        pf.setResults(3, 1, 0, 0, 4);
+        RunHistory history = RunHistory.load(options);
+        ProcessedFile restored = new ProcessedFile(options.testDir, xspec, options.reportDir, new File(options.reportDir, "test.html"));
+        assertFalse("XSpec has never been run", history.restoreResults(xspec, restored));
+        history.recordRun(xspec, dependencies, pf);
+        history.save();
+        
+        assertTrue("XSpec should be up to date", RunHistory.load(options).restoreResults(xspec, restored));
+        assertEquals("passed not restored", 3, restored.getPassed());
+        assertEquals("pending not restored", 1, restored.getPending());
+        assertEquals("total not restored", 4, restored.getTotal());
+        assertEquals("dependencies not restored", dependencies, restored.getDependencies());
+        
+        createXSpec("sut.xsl", 11);
+        assertFalse("SUT has changed", RunHistory.load(options).restoreResults(xspec, restored));
+        
+        history.forgetRun(xspec);
+        history.save();
+        createXSpec("sut.xsl", 10);
+        assertFalse("run has been forgotten", RunHistory.load(options).restoreResults(xspec, restored));
+    }
+    
+    @Test
+    public void moduleUpToDateTest() throws IOException {
+        File xspec = createXSpec("test.xspec", 10);
+        File sut = new File(baseDir, "src/main/xsl/sut.xsl");
+        sut.getParentFile().mkdirs();
+        Files.write(sut.toPath(), "sut".getBytes(StandardCharsets.UTF_8));
+        ProcessedFile pf = new ProcessedFile(options.testDir, xspec, options.reportDir, new File(options.reportDir, "test.html"));
+        pf.setResults(1, 0, 0, 0, 1);
+        RunHistory history = RunHistory.load(options);
+        assertFalse("module has never been run", history.isModuleUpToDate("conf"));
+        history.recordRun(xspec, Arrays.asList(xspec.toURI().toString(), sut.toURI().toString()), pf);
+        assertTrue("XSpec has been recorded", history.hasRecordedRuns(Arrays.asList(xspec)));
+        history.recordModuleRun("conf");
+        history.save();
+        
+        assertTrue("module should be up to date", RunHistory.load(options).isModuleUpToDate("conf"));
+        assertFalse("configuration has changed", RunHistory.load(options).isModuleUpToDate("other conf"));
+        
+        Files.write(sut.toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+        assertFalse("SUT has changed", RunHistory.load(options).isModuleUpToDate("conf"));
+        Files.write(sut.toPath(), "sut".getBytes(StandardCharsets.UTF_8));
+        
+        File newXSpec = createXSpec("new.xspec", 10);
+        assertFalse("a XSpec has been added", RunHistory.load(options).isModuleUpToDate("conf"));
+        assertFalse("new XSpec has not been recorded", history.hasRecordedRuns(Arrays.asList(xspec, newXSpec)));
+        newXSpec.delete();
+        
+        history.forgetModuleRun();
+        history.save();
+        assertFalse("module run has been forgotten", RunHistory.load(options).isModuleUpToDate("conf"));
+    }
+    
+    private File createXSpec(String name, int size) throws IOException {
+        File ret = new File(options.testDir, name);
+        char[] content = new char[size];
+        Arrays.fill(content, ' ');
+        Files.write(ret.toPath(), new String(content).getBytes(StandardCharsets.UTF_8));
+        return ret;
+    }
+}
@@ -56,6 +56,23 @@ public class RunnerOptionsTest {
         assertEquals("executionId is not default", "default", options.executionId);
         assertTrue("excludes is not empty", options.excludes.isEmpty());
         assertFalse("folding is not false", options.folding);
+        assertEquals("threads is not 1", Integer.valueOf(1), options.threads);
+        assertEquals("forkCount is not 0", Integer.valueOf(0), options.forkCount);
+        assertEquals("forkRecycleAfter is not 0", Integer.valueOf(0), options.forkRecycleAfter);
+        assertNull("forkArgLine is not null", options.forkArgLine);
+        assertFalse("failFast is not false", options.failFast);
+        assertEquals("maxFailures is not 0", 0, options.maxFailures.intValue());
+        assertEquals("shardCount is not 1", 1, options.shardCount.intValue());
+        assertEquals("shardIndex is not 0", 0, options.shardIndex.intValue());
+        assertEquals("shardStrategy is not hash", "hash", options.shardStrategy);
+        assertFalse("cache is not false", options.cache);
+        assertEquals("cacheDir is not target/xspec-cache", new File(source, "target/xspec-cache"), options.cacheDir);
+        assertFalse("eagerCompilation is not false", options.eagerCompilation);
+        assertFalse("keepCompiledXSpecs is not false", options.keepCompiledXSpecs);
+        assertFalse("incremental is not false", options.incremental);
+        assertFalse("forceRerun is not false", options.forceRerun);
+        assertFalse("daemon is not false", options.daemon);
+        assertEquals("daemonIdleTimeout is not 180", Integer.valueOf(180), options.daemonIdleTimeout);
     }
     
     @Test
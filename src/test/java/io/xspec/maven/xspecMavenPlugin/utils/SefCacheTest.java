@@ -0,0 +1,98 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.utils;
+
+import io.xspec.maven.xspecMavenPlugin.TestUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import net.sf.saxon.s9api.Processor;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author cmarchand
+ */
+public class SefCacheTest extends TestUtils {
+    private File baseDir;
+    private File xsl;
+    
+    @Before
+    public void before() throws IOException {
+        baseDir = new File("target/sef-cache").getAbsoluteFile();
+        FileUtils.deleteDirectory(baseDir);
+        baseDir.mkdirs();
+        xsl = write("test.xsl", "<xsl:stylesheet xmlns:xsl='http://www.w3.org/1999/XSL/Transform' version='3.0'/>");
+    }
+    
+    @Test
+    public void sefFileTest() throws IOException {
+        SefCache cache = new SefCache(new File(baseDir, "cache"), "xspec=1", getLog());
+        File sef = cache.getSefFile(xsl.toURI().toString());
+        assertEquals("SEF file is not stable", sef, cache.getSefFile(xsl.toURI().toString()));
+        assertEquals("SEF file is not in version dir", cache.getVersionDir(), sef.getParentFile());
+        write("test.xsl", "<xsl:stylesheet xmlns:xsl='http://www.w3.org/1999/XSL/Transform' version='2.0'/>");
+        assertNotEquals("stylesheet content is not in key", sef, cache.getSefFile(xsl.toURI().toString()));
+        SefCache otherVersion = new SefCache(new File(baseDir, "cache"), "xspec=2", getLog());
+        assertNotEquals("fingerprint is not in key", cache.getVersionDir(), otherVersion.getVersionDir());
+    }
+    
+    @Test
+    public void moduleTest() throws IOException {
+        SefCache cache = new SefCache(new File(baseDir, "cache"), "xspec=1", getLog());
+        File module = write("module.xsl", "<xsl:stylesheet xmlns:xsl='http://www.w3.org/1999/XSL/Transform' version='3.0'/>");
+        List<String> modules = Arrays.asList(xsl.toURI().toString(), module.toURI().toString());
+        File sef = cache.getSefFile(xsl.toURI().toString(), modules);
+        assertEquals("SEF file is not stable", sef, cache.getSefFile(xsl.toURI().toString(), modules));
+        // only the included module changes
+        write("module.xsl", "<xsl:stylesheet xmlns:xsl='http://www.w3.org/1999/XSL/Transform' version='2.0'/>");
+        assertNotEquals("module content is not in key", sef, cache.getSefFile(xsl.toURI().toString(), modules));
+    }
+    
+    @Test
+    public void loadInvalidSefTest() throws IOException {
+        SefCache cache = new SefCache(new File(baseDir, "cache"), "xspec=1", getLog());
+        File sef = cache.getSefFile(xsl.toURI().toString());
+        Processor proc = new Processor(false);
+        assertNull("missing SEF should not be loaded", cache.load(proc.newXsltCompiler(), sef));
+        sef.getParentFile().mkdirs();
+        Files.write(sef.toPath(), "not a SEF".getBytes(StandardCharsets.UTF_8));
+        assertNull("invalid SEF should not be loaded", cache.load(proc.newXsltCompiler(), sef));
+    }
+    
+    private File write(String name, String content) throws IOException {
+        File ret = new File(baseDir, name);
+        Files.write(ret.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return ret;
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author cmarchand
+ */
+public class ShardingTest {
+    private RunnerOptions options;
+    private List<File> xspecs;
+    
+    @Before
+    public void before() throws IOException {
+        File baseDir = new File("target/sharding").getAbsoluteFile();
+        FileUtils.deleteDirectory(baseDir);
+        options = new RunnerOptions(baseDir);
+        xspecs = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            xspecs.add(new File(options.testDir, "dir" + (i % 3) + "/test" + i + ".xspec"));
+        }
+    }
+    
+    @Test
+    public void notShardedTest() throws XSpecPluginException {
+        RunHistory history = RunHistory.load(options);
+        assertEquals("all XSpecs should be run", xspecs, Sharding.select(xspecs, options, history));
+        assertEquals("index name should not change", "index.html", IndexGenerator.getIndexFileName(options));
+    }
+    
+    @Test
+    public void hashShardsTest() throws XSpecPluginException {
+        checkPartition(Sharding.STRATEGY_HASH);
+        options.shardIndex = 2;
+        List<File> shard = Sharding.select(xspecs, options, RunHistory.load(options));
+        assertEquals("hash sharding is not stable", shard, Sharding.select(xspecs, options, RunHistory.load(options)));
+        List<File> reversed = new ArrayList<>(xspecs);
+        Collections.reverse(reversed);
+        assertEquals(
+                "hash sharding should not depend on order",
+                new HashSet<>(shard), 
+                new HashSet<>(Sharding.select(reversed, options, RunHistory.load(options))));
+        assertEquals("wrong index name", "index-shard-2.html", IndexGenerator.getIndexFileName(options));
+    }
+    
+    @Test
+    public void durationShardsTest() throws XSpecPluginException {
+        checkPartition(Sharding.STRATEGY_DURATION);
+        RunHistory history = RunHistory.load(options);
+        history.recordDuration(xspecs.get(0), 1000L);
+        history.recordDuration(xspecs.get(1), 600L);
+        history.recordDuration(xspecs.get(2), 500L);
+        history.recordDuration(xspecs.get(3), 100L);
+        options.shardCount = 2;
+        options.shardStrategy = Sharding.STRATEGY_DURATION;
+        // 1000 -> 0, 600 -> 1, 500 -> 1, 100 -> 0
+        List<File> four = xspecs.subList(0, 4);
+        options.shardIndex = 0;
+        assertEquals("wrong shard 0", Arrays.asList(xspecs.get(0), xspecs.get(3)), Sharding.select(four, options, history));
+        options.shardIndex = 1;
+        assertEquals("wrong shard 1", Arrays.asList(xspecs.get(1), xspecs.get(2)), Sharding.select(four, options, history));
+    }
+    
+    @Test(expected = XSpecPluginException.class)
+    public void invalidShardIndexTest() throws XSpecPluginException {
+        options.shardCount = 4;
+        options.shardIndex = 4;
+        Sharding.select(xspecs, options, RunHistory.load(options));
+    }
+    
+    @Test(expected = XSpecPluginException.class)
+    public void invalidStrategyTest() throws XSpecPluginException {
+        options.shardCount = 4;
+        options.shardStrategy = "random";
+        Sharding.select(xspecs, options, RunHistory.load(options));
+    }
+    
+    /**
+     * Checks each XSpec belongs to exactly one of 4 shards
+     */
+    private void checkPartition(String strategy) throws XSpecPluginException {
+        options.shardCount = 4;
+        options.shardStrategy = strategy;
+        Set<File> seen = new HashSet<>();
+        int total = 0;
+        for (int i = 0; i < 4; i++) {
+            options.shardIndex = i;
+            List<File> shard = Sharding.select(xspecs, options, RunHistory.load(options));
+            seen.addAll(shard);
+            total += shard.size();
+        }
+        assertEquals("an XSpec is in several shards", xspecs.size(), total);
+        assertEquals("an XSpec is in no shard", new HashSet<>(xspecs), seen);
+    }
+}
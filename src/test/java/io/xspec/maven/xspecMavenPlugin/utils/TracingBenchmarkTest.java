@@ -0,0 +1,116 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.utils;
+
+import io.xspec.maven.xspecMavenPlugin.TestUtils;
+import java.io.StringReader;
+import javax.xml.transform.stream.StreamSource;
+import net.sf.saxon.s9api.NullDestination;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XsltCompiler;
+import net.sf.saxon.s9api.XsltExecutable;
+import net.sf.saxon.s9api.XsltTransformer;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Test;
+
+/**
+ * Compares execution time of a stylesheet compiled with and without tracing.
+ * It is only run when {@code xspec.benchmark} system property is {@code true}:
+ * <tt>mvn test -Dtest=TracingBenchmarkTest -Dxspec.benchmark=true</tt>
+ * Results are logged at info level.
+ * @author cmarchand
+ */
+public class TracingBenchmarkTest extends TestUtils {
+    private static final int WARMUP = 20;
+    private static final int RUNS = 50;
+    /**
+     * A SUT made of many small templates and functions, as tested code usually is
+     */
+    private static final String SUT =
+            "<xsl:stylesheet xmlns:xsl='http://www.w3.org/1999/XSL/Transform' "
+            + "xmlns:xs='http://www.w3.org/2001/XMLSchema' xmlns:f='urn:f' version='3.0'>"
+            + "<xsl:template name='main'>"
+            + "  <xsl:variable name='items' as='element(item)*'>"
+            + "    <xsl:for-each select='1 to 20000'><item n='{.}'/></xsl:for-each>"
+            + "  </xsl:variable>"
+            + "  <result><xsl:apply-templates select='$items'/></result>"
+            + "</xsl:template>"
+            + "<xsl:template match='item[xs:integer(@n) mod 3 = 0]'>"
+            + "  <fizz><xsl:value-of select='f:square(xs:integer(@n))'/></fizz>"
+            + "</xsl:template>"
+            + "<xsl:template match='item'>"
+            + "  <xsl:if test='f:square(xs:integer(@n)) mod 2 = 0'><even/></xsl:if>"
+            + "</xsl:template>"
+            + "<xsl:function name='f:square' as='xs:integer'>"
+            + "  <xsl:param name='i' as='xs:integer'/>"
+            + "  <xsl:sequence select='$i * $i'/>"
+            + "</xsl:function>"
+            + "</xsl:stylesheet>";
+
+    @Test
+    public void tracingBenchmark() throws Exception {
+        assumeTrue("benchmark is only run with -Dxspec.benchmark=true", Boolean.getBoolean("xspec.benchmark"));
+        Processor processor = new Processor(false);
+        long withoutTracing = measure(compile(processor, false));
+        long withTracing = measure(compile(processor, true));
+        getLog().info(String.format(
+                "%d runs: without tracing %d ms, with tracing %d ms (%+.1f%%)",
+                RUNS,
+                withoutTracing / 1_000_000,
+                withTracing / 1_000_000,
+                (withTracing - withoutTracing) * 100.0 / withoutTracing));
+    }
+
+    private XsltExecutable compile(Processor processor, boolean tracing) throws SaxonApiException {
+        XsltCompiler compiler = processor.newXsltCompiler();
+        compiler.setCompileWithTracing(tracing);
+        return compiler.compile(new StreamSource(new StringReader(SUT)));
+    }
+
+    /**
+     * Returns the execution time of {@link #RUNS} runs, in nanoseconds
+     */
+    private long measure(XsltExecutable executable) throws SaxonApiException {
+        for(int i=0; i<WARMUP; i++) {
+            run(executable);
+        }
+        long start = System.nanoTime();
+        for(int i=0; i<RUNS; i++) {
+            run(executable);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private void run(XsltExecutable executable) throws SaxonApiException {
+        XsltTransformer transformer = executable.load();
+        transformer.setInitialTemplate(new QName("main"));
+        transformer.setDestination(new NullDestination());
+        transformer.transform();
+    }
+}
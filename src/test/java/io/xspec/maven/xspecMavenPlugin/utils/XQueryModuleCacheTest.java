@@ -0,0 +1,131 @@
+/**
+ * Copyright © 2018, Christophe Marchand, XSpec organization
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.xspec.maven.xspecMavenPlugin.utils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.XQueryCompiler;
+import net.sf.saxon.s9api.XQueryExecutable;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author cmarchand
+ */
+public class XQueryModuleCacheTest {
+    private static final String QUERY = "import module namespace lib = 'urn:lib' at '%s'; lib:f()";
+    private XQueryModuleCache cache;
+    private File library;
+    
+    @Before
+    public void before() throws Exception {
+        File dir = new File("target/xquery-module-cache").getAbsoluteFile();
+        FileUtils.deleteDirectory(dir);
+        dir.mkdirs();
+        library = new File(dir, "lib.xqm");
+        writeLibrary("1");
+        XQueryCompiler compiler = new Processor(false).newXQueryCompiler();
+        cache = new XQueryModuleCache(compiler, new SystemStreamLog());
+    }
+    
+    @Test
+    public void sameQueryTest() throws Exception {
+        XQueryExecutable first = cache.get("1+1", null);
+        assertTrue("query should be compiled once", first == cache.get("1+1", null));
+        assertFalse("other query should be compiled", first == cache.get("1+2", null));
+    }
+    
+    @Test
+    public void libraryTest() throws Exception {
+        String query = String.format(QUERY, library.toURI());
+        XQueryExecutable first = cache.get(query, library);
+        assertEquals("1", first.load().evaluate().toString());
+        assertTrue("query should be compiled once", first == cache.get(query, library));
+        writeLibrary("2");
+        XQueryExecutable changed = cache.get(query, library);
+        assertFalse("changed library should be compiled again", first == changed);
+        assertEquals("2", changed.load().evaluate().toString());
+    }
+    
+    @Test
+    public void importedModuleTest() throws Exception {
+        File module = new File(library.getParentFile(), "sub.xqm");
+        writeModule(module, "1");
+        Files.write(
+                library.toPath(), 
+                "module namespace lib = 'urn:lib'; import module namespace sub = 'urn:sub' at 'sub.xqm'; declare function lib:f() { sub:f() };".getBytes(StandardCharsets.UTF_8));
+        String query = String.format(QUERY, library.toURI());
+        XQueryExecutable first = cache.get(query, library);
+        assertEquals("1", first.load().evaluate().toString());
+        // only the imported module changes
+        writeModule(module, "2");
+        XQueryExecutable changed = cache.get(query, library);
+        assertFalse("library should be compiled again when an imported module changes", first == changed);
+        assertEquals("2", changed.load().evaluate().toString());
+    }
+    
+    @Test
+    public void helperModuleTest() throws Exception {
+        File helper = new File(library.getParentFile(), "helper.xqm");
+        writeModule(helper, "1");
+        String query = "import module namespace sub = 'urn:sub' at '" + helper.toURI() + "'; "
+                + String.format(QUERY, library.toURI()) + " + sub:f()";
+        XQueryExecutable first = cache.get(query, library);
+        assertEquals("2", first.load().evaluate().toString());
+        // only the helper imported by the query changes
+        writeModule(helper, "2");
+        XQueryExecutable changed = cache.get(query, library);
+        assertFalse("query should be compiled again when a helper changes", first == changed);
+        assertEquals("3", changed.load().evaluate().toString());
+    }
+    
+    @Test
+    public void boundedTest() throws Exception {
+        for(int i=0; i<XQueryModuleCache.MAX_EXECUTABLES+10; i++) {
+            cache.get(Integer.toString(i), null);
+        }
+        assertEquals("cache should be bounded", XQueryModuleCache.MAX_EXECUTABLES, cache.size());
+    }
+    
+    private void writeModule(File module, String value) throws Exception {
+        Files.write(
+                module.toPath(), 
+                ("module namespace sub = 'urn:sub'; declare function sub:f() { " + value + " };").getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private void writeLibrary(String value) throws Exception {
+        Files.write(
+                library.toPath(), 
+                ("module namespace lib = 'urn:lib'; declare function lib:f() { " + value + " };").getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -46,6 +46,7 @@ import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.util.List;
 import java.util.Properties;
+import javax.xml.parsers.SAXParserFactory;
 
 import static org.junit.Assert.*;
 
@@ -126,6 +127,15 @@ public class XSpecCompilerTest extends TestUtils {
         assertEquals(expected.getAbsolutePath(),ret.getAbsolutePath());
     }
     
+    @Test
+    public void getSurefireReportPathTest() {
+        XSpecCompiler compiler = new XSpecCompiler(stuff,runnerOptions,getLog());
+        File xspec = new File(runnerOptions.testDir, "schematronTestCase/schematron1.xspec");
+        File ret = compiler.getSurefireReportPath(xspec);
+        File expected = new File(runnerOptions.surefireReportDir, "TEST-schematronTestCase.schematron1.xspec.xml");
+        assertEquals(expected.getAbsolutePath(),ret.getAbsolutePath());
+    }
+    
     @Test
     public void copyFileTest() throws Exception {
         XSpecCompiler compiler = new XSpecCompiler(stuff,runnerOptions,getLog());
@@ -152,19 +162,17 @@ public class XSpecCompilerTest extends TestUtils {
     
     @Test @Ignore("Should be rewritten with 2.1.4 XSpec implementation")
     public void prepareSchematronDocumentTest() throws Exception {
+        runnerOptions.keepCompiledXSpecs = true;
         XdmNode xspecDoc = stuff.getDocumentBuilder().build(new File(getTestDirectory(), "schematronTestCase/schematron2.xspec"));
         XSpecCompiler compiler = new XSpecCompiler(stuff, runnerOptions, getLog());
         XdmNode ret = compiler.prepareSchematronDocument(xspecDoc);
         Assertions.assertThat(ret).isNotNull();
         // Vérification des fichiers créés
         File workDir = new File(runnerOptions.reportDir, "schematronTestCase/schematron2.xspec");
-        File schCompiledAsXsl = new File(workDir, "schematron/schematron2.xspec.xslt");
         File compiledXspec = new File(workDir, "schematron2/schematron2.xspec-compiled.xspec");
         SoftAssertions softAssertions = new SoftAssertions();
         softAssertions.assertThat(workDir).as(workDir.getAbsolutePath()+" does not exists").exists();
         softAssertions.assertThat(workDir).as(workDir.getAbsolutePath()+" is not a directory").isDirectory();
-        softAssertions.assertThat(schCompiledAsXsl).as(schCompiledAsXsl.getAbsolutePath()+" does not exist").exists();
-        softAssertions.assertThat(schCompiledAsXsl).as(schCompiledAsXsl.getAbsolutePath()+" is not a regular file").isFile();
         softAssertions.assertThat(compiledXspec).as(compiledXspec.getAbsolutePath()+" does not exist").exists();
         softAssertions.assertThat(compiledXspec).as(compiledXspec.getAbsolutePath()+" is not a regular file").isFile();
         softAssertions.assertAll();
@@ -176,9 +184,58 @@ public class XSpecCompilerTest extends TestUtils {
         URI uri = new URI(fileUri);
         getLog().debug("uri: "+uri);
         File referencedFile = new File(uri);
+        // compiled schematron is shared, in cache
+        File schCompiledAsXsl = referencedFile;
+        Assertions.assertThat(schCompiledAsXsl).as(schCompiledAsXsl.getAbsolutePath()+" is not a regular file").isFile();
         Assertions
-                .assertThat(Files.isSameFile(schCompiledAsXsl.toPath(), referencedFile.toPath()))
-                .as("generated XSpec does not reference generated XSLT")
+                .assertThat(Files.isSameFile(compiler.getCompiledSchematronCache().getCacheDir().toPath(), referencedFile.getParentFile().toPath()))
+                .as("generated XSpec does not reference cached XSLT")
                 .isTrue();
     }
+
+    @Test
+    public void countTestsTest() throws Exception {
+        File xspec = new File(getTestDirectory(), "xsltTestCase/xsl1.xspec");
+        XSpecCompiler compiler = new XSpecCompiler(stuff, runnerOptions, getLog());
+        XSpecCounterContentHandler fromTree = compiler.countTests(stuff.getDocumentBuilder().build(xspec));
+        XSpecCounterContentHandler fromParser = new XSpecCounterContentHandler(
+                xspec.toURI().toString(), 
+                stuff.getResourceResolver(), 
+                compiler, 
+                false);
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.newSAXParser().parse(xspec, fromParser);
+        assertTrue("no test counted", fromTree.getTests() > 0);
+        assertEquals("tests count differs from parsing", fromParser.getTests(), fromTree.getTests());
+        assertEquals("pending tests count differs from parsing", fromParser.getPendingTests(), fromTree.getPendingTests());
+    }
+
+    @Test
+    public void compileInMemoryTest() throws Exception {
+        runnerOptions.cache = false;
+        XSpecCompiler compiler = new XSpecCompiler(stuff, runnerOptions, getLog());
+        File xspec = new File(getTestDirectory(), "xsltTestCase/xsl1.xspec");
+        File compiledFile = compiler.getCompiledXSpecPath(runnerOptions.reportDir, xspec);
+        Files.deleteIfExists(compiledFile.toPath());
+        CompiledXSpec compiled = compiler.compileXSpecForXslt(stuff.getDocumentBuilder().build(xspec));
+        assertNotNull("XSpec not compiled", compiled);
+        assertNotNull("compiled XSpec is not in memory", compiled.getCompiledTree());
+        assertEquals("wrong base URI", compiledFile.toURI(), compiled.getCompiledTree().getBaseURI());
+        assertFalse("compiled XSpec should not be written", compiledFile.exists());
+        assertNotNull("compiled XSpec can not be compiled", stuff.compileXsl(compiled.getCompiledSource()));
+    }
+    
+    @Test
+    public void keepCompiledXSpecsTest() throws Exception {
+        runnerOptions.cache = false;
+        runnerOptions.keepCompiledXSpecs = true;
+        XSpecCompiler compiler = new XSpecCompiler(stuff, runnerOptions, getLog());
+        File xspec = new File(getTestDirectory(), "xsltTestCase/xsl1.xspec");
+        File compiledFile = compiler.getCompiledXSpecPath(runnerOptions.reportDir, xspec);
+        Files.deleteIfExists(compiledFile.toPath());
+        CompiledXSpec compiled = compiler.compileXSpecForXslt(stuff.getDocumentBuilder().build(xspec));
+        assertNotNull("XSpec not compiled", compiled);
+        assertTrue("compiled XSpec should be written", compiledFile.isFile());
+    }
 }
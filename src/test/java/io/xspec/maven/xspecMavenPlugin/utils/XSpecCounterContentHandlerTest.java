@@ -194,6 +194,8 @@ public class XSpecCounterContentHandlerTest {
     counter.endElement(XSpecCounterContentHandler.XSPEC_NS, "description", "x:description");
     counter.endDocument();
     assertEquals(1, counter.getTests());
+    assertEquals(1, counter.getImportedSystemIds().size());
+    assertTrue(counter.getImportedSystemIds().get(0).endsWith("imported.xspec"));
   }
 
   @Test
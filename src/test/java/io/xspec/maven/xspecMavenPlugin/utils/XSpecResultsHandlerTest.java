@@ -27,6 +27,10 @@
 package io.xspec.maven.xspecMavenPlugin.utils;
 
 import io.xspec.maven.xspecMavenPlugin.XSpecRunner;
+import java.io.StringReader;
+import javax.xml.transform.stream.StreamSource;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.XdmNode;
 import static org.junit.Assert.*;
 import org.junit.Test;
 import org.xml.sax.Attributes;
@@ -148,4 +152,19 @@ public class XSpecResultsHandlerTest {
         assertEquals(1, handler.getTests());
         assertEquals(handler.getTests(), handler.getFailed()+handler.getPassed()+handler.getPending());
     }
+
+    @Test
+    public void testResultTree() throws Exception {
+        XdmNode result = new Processor(false).newDocumentBuilder().build(new StreamSource(new StringReader(
+                "<x:report xmlns:x='" + XSpecRunner.XSPEC_NS + "'>"
+                + "<x:scenario><x:test successful='true'/><x:test successful='false'/></x:scenario>"
+                + "<x:scenario><x:test pending='not yet'/><other:test xmlns:other='urn:other' successful='true'/></x:scenario>"
+                + "</x:report>")));
+        XSpecResultsHandler handler = new XSpecResultsHandler();
+        handler.readResults(result);
+        assertEquals(1, handler.getFailed());
+        assertEquals(1, handler.getPassed());
+        assertEquals(1, handler.getPending());
+        assertEquals(3, handler.getTests());
+    }
 }
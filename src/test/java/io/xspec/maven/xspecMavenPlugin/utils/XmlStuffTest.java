@@ -27,11 +27,14 @@
 package io.xspec.maven.xspecMavenPlugin.utils;
 
 import io.xspec.maven.xspecMavenPlugin.TestUtils;
+import io.xspec.maven.xspecMavenPlugin.resolver.XSpecResourceResolver;
 import io.xspec.maven.xspecMavenPlugin.resources.impl.DefaultSchematronImplResources;
 import io.xspec.maven.xspecMavenPlugin.resources.impl.DefaultXSpecImplResources;
 import io.xspec.maven.xspecMavenPlugin.resources.impl.DefaultXSpecPluginResources;
 import net.sf.saxon.Configuration;
 import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.XdmDestination;
+import net.sf.saxon.s9api.XdmNode;
 import net.sf.saxon.s9api.XsltExecutable;
 import net.sf.saxon.s9api.XsltTransformer;
 import org.apache.maven.plugin.logging.Log;
@@ -41,12 +44,18 @@ import org.junit.Test;
 import top.marchand.maven.saxon.utils.SaxonOptions;
 
 import java.io.File;
+import java.io.StringReader;
 import java.net.URISyntaxException;
 import java.util.Properties;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
 
 import static io.xspec.maven.xspecMavenPlugin.TestUtils.getBaseDirectory;
 import static io.xspec.maven.xspecMavenPlugin.TestUtils.getProjectDirectory;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -122,4 +131,91 @@ public class XmlStuffTest {
         assertNotNull(ret);
     }
 
+    @Test
+    public void tracingCompilersTest() throws Exception {
+        XmlStuff stuff = new XmlStuff(
+                saxonOptions,
+                getLog(),
+                xspecResources,
+                pluginResources,
+                schematronResources,
+                baseDirectory,
+                runnerOptions,
+                new Properties());
+        assertFalse("XSL compiler should not trace", stuff.getXsltCompiler().isCompileWithTracing());
+        assertTrue("coverage XSL compiler should trace", stuff.getTracingXsltCompiler().isCompileWithTracing());
+        assertFalse("XQuery compiler should not trace", stuff.getXqueryCompiler().isCompileWithTracing());
+    }
+
+    @Test
+    public void eagerCompilationTest() throws Exception {
+        runnerOptions.eagerCompilation = true;
+        XmlStuff stuff = new XmlStuff(
+                saxonOptions,
+                getLog(),
+                xspecResources,
+                pluginResources,
+                schematronResources,
+                baseDirectory,
+                runnerOptions,
+                new Properties());
+        assertNotNull("XSL compiler not compiled", stuff.getXspec4xsltCompiler());
+        assertNotNull("XQuery compiler not compiled", stuff.getXspec4xqueryCompiler());
+        assertNotNull("Schematron compiler not compiled", stuff.getSchematronCompiler());
+        assertNotNull("schut not compiled", stuff.getSchematronSchut());
+        assertNotNull("dependency scanner not compiled", stuff.getXmlDependencyScanner());
+    }
+
+    @Test
+    public void inMemoryDocumentTest() throws Exception {
+        XmlStuff stuff = new XmlStuff(
+                saxonOptions,
+                getLog(),
+                xspecResources,
+                pluginResources,
+                schematronResources,
+                baseDirectory,
+                runnerOptions,
+                new Properties());
+        File notWritten = new File(runnerOptions.reportDir, "in-memory/not-written.xml");
+        XdmDestination destination = XmlStuff.newXdmDestination(notWritten.toURI());
+        stuff.getProcessor().writeXdmValue(
+                stuff.getDocumentBuilder().build(new StreamSource(new StringReader("<doc/>"))),
+                destination);
+        XdmNode document = XmlStuff.getXdmNode(destination);
+        assertEquals("wrong base URI", notWritten.toURI(), document.getBaseURI());
+        stuff.registerInMemoryDocument(document);
+        Source resolved = stuff.getResourceResolver().resolve(XSpecResourceResolver.buildRequest(
+                "not-written.xml",
+                new File(runnerOptions.reportDir, "in-memory/other.xml").toURI().toString()));
+        assertNotNull("in-memory document not resolved", resolved);
+        assertFalse("in-memory document should not be written", notWritten.exists());
+    }
+
+    @Test
+    public void unregisterInMemoryDocumentTest() throws Exception {
+        XmlStuff stuff = new XmlStuff(
+                saxonOptions,
+                getLog(),
+                xspecResources,
+                pluginResources,
+                schematronResources,
+                baseDirectory,
+                runnerOptions,
+                new Properties());
+        XdmDestination destination = XmlStuff.newXdmDestination(new File(runnerOptions.reportDir, "in-memory/shared.xml").toURI());
+        stuff.getProcessor().writeXdmValue(
+                stuff.getDocumentBuilder().build(new StreamSource(new StringReader("<doc/>"))),
+                destination);
+        XdmNode document = XmlStuff.getXdmNode(destination);
+        XSpecResourceResolver resolver = (XSpecResourceResolver)stuff.getResourceResolver();
+        // two XSpecs share the same compiled Schematron
+        stuff.registerInMemoryDocument(document);
+        stuff.registerInMemoryDocument(document);
+        stuff.unregisterInMemoryDocument(document);
+        assertEquals("document is still used", 1, resolver.getDocumentCount());
+        stuff.unregisterInMemoryDocument(document);
+        assertEquals("document should be unregistered", 0, resolver.getDocumentCount());
+    }
+
 }